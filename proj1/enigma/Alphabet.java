@@ -1,5 +1,7 @@
 package enigma;
 
+import java.util.Arrays;
+
 import static enigma.EnigmaException.*;
 
 /** An alphabet of encodable characters.  Provides a mapping from characters
@@ -13,17 +15,23 @@ class Alphabet {
 
     Alphabet(String chars) {
         str = chars;
-        int len = chars.length();
-        if (len == 0 || chars.contains("\\s") || chars.contains("*")) {
+        length = chars.length();
+        if (length == 0) {
             throw error("Invalid Alphabet");
         }
-        for (int i = 0; i < chars.length(); ++i) {
-            for (int j = i + 1; j < chars.length(); ++j) {
-                if (chars.charAt(j) == chars.charAt(i)) {
-                    throw error("Duplicate Alphabet Values");
-                }
+        char lo = chars.charAt(0), hi = lo;
+        for (int i = 0; i < length; ++i) {
+            char ch = chars.charAt(i);
+            if (Character.isWhitespace(ch) || ch == '*') {
+                throw error("Invalid Alphabet");
             }
-            ++length;
+            lo = (char) Math.min(lo, ch);
+            hi = (char) Math.max(hi, ch);
+        }
+        if (hi - lo < DENSE_SLACK * length + DENSE_MIN) {
+            buildDense(lo, hi);
+        } else {
+            buildHashed();
         }
     }
 
@@ -32,6 +40,70 @@ class Alphabet {
         this("ABCDEFGHIJKLMNOPQRSTUVWXYZ");
     }
 
+    /** The alphabet of the SIZE characters whose codes are 0 .. SIZE - 1,
+     *  which, unlike the alphabets of text, includes whitespace. */
+    private Alphabet(int size) {
+        char[] chars = new char[size];
+        for (int i = 0; i < size; ++i) {
+            chars[i] = (char) i;
+        }
+        str = new String(chars);
+        length = size;
+        byteValued = true;
+        buildDense((char) 0, (char) (size - 1));
+    }
+
+    /** Return the alphabet of all 256 byte values, in which character K
+     *  has index K.  In configuration files and settings, its characters
+     *  are written as pairs of hex digits (see decode). */
+    static Alphabet bytes() {
+        return BYTES;
+    }
+
+    /** Return the alphabet named NAME at the start of a configuration
+     *  file: the byte alphabet if NAME is BYTES_NAME, and otherwise the
+     *  alphabet of the characters of NAME. */
+    static Alphabet named(String name) {
+        return name.equals(BYTES_NAME) ? BYTES : new Alphabet(name);
+    }
+
+    /** Return true iff I am the byte alphabet. */
+    boolean isBytes() {
+        return byteValued;
+    }
+
+    /** Return the characters written as TOKEN in a configuration file or
+     *  settings line: TOKEN itself, or for the byte alphabet, the bytes
+     *  whose values TOKEN gives as pairs of hex digits. */
+    String decode(String token) {
+        if (!byteValued) {
+            return token;
+        }
+        if (token.length() % 2 != 0) {
+            throw error("bytes must be written as pairs of hex digits");
+        }
+        char[] chars = new char[token.length() / 2];
+        for (int i = 0; i < chars.length; ++i) {
+            int hi = Character.digit(token.charAt(2 * i), HEX);
+            int lo = Character.digit(token.charAt(2 * i + 1), HEX);
+            if (hi < 0 || lo < 0) {
+                throw error("bytes must be written as pairs of hex digits");
+            }
+            chars[i] = (char) (hi * HEX + lo);
+        }
+        return new String(chars);
+    }
+
+    /** Return character number INDEX as it is written in configuration
+     *  files and settings lines (the inverse of decode). */
+    String encode(int index) {
+        char ch = toChar(index);
+        if (!byteValued) {
+            return String.valueOf(ch);
+        }
+        return String.format("%02x", (int) ch);
+    }
+
     /** Returns the size of this alphabet. */
     int size() {
         return length;
@@ -39,12 +111,29 @@ class Alphabet {
 
     /** Returns true if CH is in this alphabet. */
     boolean contains(char ch) {
-        for (int i = 0; i < length; ++i) {
-            if (str.charAt(i) == ch) {
-                return true;
+        return index(ch) >= 0;
+    }
+
+    /** Return true iff CH is passed over, unconverted, in messages in
+     *  this alphabet: whitespace that is not in it.  Whitespace in the
+     *  byte alphabet is converted like any other byte. */
+    boolean skips(char ch) {
+        return Character.isWhitespace(ch) && !contains(ch);
+    }
+
+    /** Return the indices of the characters of TEXT that I do not skip,
+     *  in order. */
+    int[] indices(String text) {
+        int[] result = new int[text.length()];
+        int len = 0;
+        for (int i = 0; i < text.length(); ++i) {
+            char ch = text.charAt(i);
+            if (!skips(ch)) {
+                result[len] = toInt(ch);
+                len += 1;
             }
         }
-        return false;
+        return Arrays.copyOf(result, len);
     }
 
     /** Returns character number INDEX in the alphabet, where
@@ -59,20 +148,117 @@ class Alphabet {
     /** Returns the index of character CH which must be in
      *  the alphabet. This is the inverse of toChar(). */
     int toInt(char ch) {
+        int i = index(ch);
+        if (i < 0) {
+            throw error("Character not in Alphabet");
+        }
+        return i;
+    }
+
+    /** Returns the index of CH, or -1 if CH is not in this alphabet. */
+    private int index(char ch) {
+        if (dense != null) {
+            int k = ch - base;
+            if (k < 0 || k >= dense.length) {
+                return -1;
+            }
+            return dense[k];
+        }
+        int h = hash(ch);
+        while (keys[h] >= 0) {
+            if (keys[h] == ch) {
+                return slots[h];
+            }
+            h = (h + 1) & (keys.length - 1);
+        }
+        return -1;
+    }
+
+    /** Fill in a direct-indexed table covering the characters LO..HI,
+     *  checking for duplicates as I go. */
+    private void buildDense(char lo, char hi) {
+        base = lo;
+        dense = new int[hi - lo + 1];
+        Arrays.fill(dense, -1);
         for (int i = 0; i < length; ++i) {
-            if (str.charAt(i) == ch) {
-                return i;
+            int k = str.charAt(i) - base;
+            if (dense[k] >= 0) {
+                throw error("Duplicate Alphabet Values");
             }
+            dense[k] = i;
         }
-        throw error("Character not in Alphabet");
     }
 
+    /** Fill in an open-addressed hash table for an alphabet whose
+     *  characters are too spread out for a direct table, checking for
+     *  duplicates as I go. */
+    private void buildHashed() {
+        int cap = Integer.highestOneBit(length * 2 - 1) << 1;
+        shift = Integer.SIZE - Integer.numberOfTrailingZeros(cap);
+        keys = new int[cap];
+        slots = new int[cap];
+        Arrays.fill(keys, -1);
+        for (int i = 0; i < length; ++i) {
+            char ch = str.charAt(i);
+            int h = hash(ch);
+            while (keys[h] >= 0) {
+                if (keys[h] == ch) {
+                    throw error("Duplicate Alphabet Values");
+                }
+                h = (h + 1) & (cap - 1);
+            }
+            keys[h] = ch;
+            slots[h] = i;
+        }
+    }
+
+    /** Returns the home bucket of CH in keys. */
+    private int hash(char ch) {
+        return ch * HASH_MULTIPLIER >>> shift;
+    }
+
+    /** The name of the byte alphabet in configuration files.  No
+     *  alphabet of characters can be written so, since '*' is not allowed
+     *  in one. */
+    static final String BYTES_NAME = "*BYTES";
+
+    /** Radix of the digits in which bytes are written. */
+    private static final int HEX = 16;
+
+    /** The alphabet of all byte values. */
+    private static final Alphabet BYTES = new Alphabet(256);
+
+    /** A direct table is used when the characters span fewer than
+     *  DENSE_SLACK * size() + DENSE_MIN code units. */
+    private static final int DENSE_SLACK = 8, DENSE_MIN = 256;
+
+    /** Multiplier used to spread characters over the hash table. */
+    private static final int HASH_MULTIPLIER = 0x9E3779B1;
+
     /** String object for storing this Alphabet's string origin. */
     private String str;
 
     /** Length of this Alphabet. */
     private int length;
 
+    /** True iff this is the byte alphabet. */
+    private boolean byteValued;
+
+    /** Index of each character C at dense[C - base], or -1, when this
+     *  alphabet uses a direct table; otherwise null. */
+    private int[] dense;
+
+    /** Smallest character of a direct-table alphabet. */
+    private char base;
+
+    /** Characters of a hashed alphabet, with -1 marking empty buckets. */
+    private int[] keys;
+
+    /** Index of the character in the corresponding bucket of keys. */
+    private int[] slots;
 
+    /** Number of low-order bits of a hash product to discard, so that
+     *  what remains indexes keys. */
+    private int shift;
 
 }
@@ -63,4 +63,64 @@ public class AlphabetTest {
         assertEquals("Character not in Alphabet", al.toInt('@'));
         assertEquals("Character not in Alphabet", standard.toInt('$'));
     }
+
+    @Test
+    public void sparseAlphabetTests() {
+        StringBuilder chars = new StringBuilder();
+        for (int c = 0x21; c < 0xFFFF; c += 97) {
+            if (c != '*') {
+                chars.append((char) c);
+            }
+        }
+        Alphabet sparse = new Alphabet(chars.toString());
+        assertEquals(chars.length(), sparse.size());
+        for (int i = 0; i < chars.length(); ++i) {
+            assertEquals(i, sparse.toInt(chars.charAt(i)));
+            assertTrue(sparse.contains(chars.charAt(i)));
+        }
+        assertFalse(sparse.contains('#'));
+        assertFalse(sparse.contains((char) 0xFFFE));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void sparseDuplicateTest() {
+        new Alphabet("A\u4E00\uFF00B\u4E00");
+    }
+
+    @Test
+    public void bytesTests() {
+        Alphabet bytes = Alphabet.bytes();
+        assertTrue(bytes.isBytes());
+        assertFalse(standard.isBytes());
+        assertEquals(256, bytes.size());
+        for (int k = 0; k < 256; ++k) {
+            assertEquals(k, bytes.toInt((char) k));
+            assertEquals((char) k, bytes.toChar(k));
+        }
+        assertTrue(bytes.contains(' '));
+        assertFalse(bytes.contains((char) 256));
+        assertSame(bytes, Alphabet.named(Alphabet.BYTES_NAME));
+        assertEquals(26, Alphabet.named("ABCDEFGHIJKLMNOPQRSTUVWXYZ").size());
+        assertEquals("\u0000 \u00ff", bytes.decode("0020Ff"));
+        assertEquals("0a", bytes.encode(10));
+        assertEquals("0020", standard.decode("0020"));
+        assertEquals("C", standard.encode(2));
+    }
+
+    @Test
+    public void skipsTests() {
+        assertTrue(standard.skips(' '));
+        assertTrue(standard.skips('\n'));
+        assertFalse(standard.skips('A'));
+        assertFalse(standard.skips('!'));
+        assertFalse(Alphabet.bytes().skips(' '));
+        assertArrayEquals(new int[] {1, 0, 2}, standard.indices(" B A\tC\n"));
+        assertArrayEquals(new int[] {' ', 'B', '\n'},
+                          Alphabet.bytes().indices(" B\n"));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void badHexTest() {
+        Alphabet.bytes().decode("0g");
+    }
 }
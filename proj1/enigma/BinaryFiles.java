@@ -0,0 +1,35 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/** What the binary files of this package (n-gram tables and
+ *  configuration snapshots) have in common: each starts with an integer
+ *  saying what kind of file it is, and each is written over any file of
+ *  the same name.
+ *  @author Karl Meissner
+ */
+class BinaryFiles {
+
+    /** Options for writing a binary file, replacing any existing one. */
+    static final StandardOpenOption[] WRITE_NEW = {
+        StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING
+    };
+
+    /** Return true iff the file named FILE starts with the integer
+     *  MAGIC. */
+    static boolean startsWith(Path file, int magic) throws IOException {
+        try (FileChannel in = FileChannel.open(file)) {
+            ByteBuffer first = ByteBuffer.allocate(Integer.BYTES);
+            while (first.hasRemaining() && in.read(first) >= 0) {
+                continue;
+            }
+            return !first.hasRemaining() && first.getInt(0) == magic;
+        }
+    }
+
+}
@@ -0,0 +1,508 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+
+import static enigma.EnigmaException.*;
+
+/** A search for the rotors and positions of a machine, given a crib: a
+ *  piece of plaintext known to encrypt to part of a ciphertext.  As in
+ *  the Turing-Welchman bombe, the crib and ciphertext form a "menu", a
+ *  graph whose nodes are letters and which has an edge between the
+ *  plaintext and ciphertext letters at each position of the crib.  The
+ *  plugboard is unknown, so for each choice of rotors and positions
+ *  (a "stop"), each possible plugboard partner of the letter with the
+ *  most edges is tried in turn, and its consequences are propagated
+ *  along the edges.  A hypothesis that leads to a letter having two
+ *  different partners is rejected; the stops with a hypothesis that
+ *  survives are reported, with the plugboard pairs it implies.
+ *
+ *  Both the menu and the rule that no letter encrypts to itself rely on
+ *  every reflector swapping each letter with a different one (being an
+ *  involution without fixed points), so that the rotors at each position
+ *  of the crib swap letters in pairs too.  A Bombe rejects a machine
+ *  with any other reflector.
+ *  @author Karl Meissner
+ */
+class Bombe {
+
+    /** A rotor order, positions and plugboard found by a search. */
+    static class Stop {
+        /** A stop with rotors named ROTORS, whose slots 1 and above are at
+         *  POSITIONS (as for Machine.setRotors), and whose plugboard,
+         *  as far as the menu determines it, is PLUGBOARD (as for
+         *  Permutation). */
+        Stop(String[] rotors, String positions, String plugboard) {
+            _rotors = rotors.clone();
+            _positions = positions;
+            _plugboard = plugboard;
+        }
+
+        /** Return the names of my rotors, reflector first. */
+        String[] rotors() {
+            return _rotors.clone();
+        }
+
+        /** Return my rotor positions. */
+        String positions() {
+            return _positions;
+        }
+
+        /** Return the plugboard pairs I imply. */
+        String plugboard() {
+            return _plugboard;
+        }
+
+        /** Return me as a settings line, as Main reads them. */
+        @Override
+        public String toString() {
+            String line = "* " + String.join(" ", _rotors) + " " + _positions;
+            return _plugboard.isEmpty() ? line : line + " " + _plugboard;
+        }
+
+        /** Names of my rotors. */
+        private final String[] _rotors;
+        /** Positions of my rotors. */
+        private final String _positions;
+        /** My plugboard pairs. */
+        private final String _plugboard;
+    }
+
+    /** Search for the stops of the machine described by the configuration
+     *  file named ARGS[0] under which the crib ARGS[2] encrypts to the
+     *  ciphertext ARGS[1] starting at position ARGS[3] (0 if absent),
+     *  printing each as a settings line as it is found.  Exits normally
+     *  if there are no errors; otherwise with code 1. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 3 || args.length > 4) {
+                throw error("Usage: java enigma.Bombe CONFIG CIPHERTEXT CRIB"
+                            + " [OFFSET]");
+            }
+            int offset;
+            try {
+                offset = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+            } catch (NumberFormatException excp) {
+                throw error("bad offset: %s", args[3]);
+            }
+            Bombe bombe = new Bombe(Main.readMachine(args[0]), args[1],
+                                    args[2], offset);
+            ForkJoinPool pool = new ForkJoinPool();
+            try {
+                bombe.search(pool, System.out::println);
+            } finally {
+                pool.shutdown();
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A search using the rotors available to MACHINE (whose own rotors,
+     *  settings and plugboard are ignored) for the stops under which CRIB
+     *  encrypts to the characters of CIPHERTEXT starting at position
+     *  OFFSET.  Whitespace in CIPHERTEXT that the machine skips (see
+     *  Alphabet.skips) is ignored. */
+    Bombe(Machine machine, String ciphertext, String crib, int offset) {
+        _machine = machine;
+        _alphabet = machine.alphabet();
+        _size = _alphabet.size();
+        _numRotors = machine.numRotors();
+        _pawls = machine.numPawls();
+        for (Rotor r : machine.availableRotors()) {
+            if (r.reflecting()) {
+                checkReflector(r);
+            }
+        }
+        int[] text = _alphabet.indices(ciphertext);
+        if (offset < 0 || offset + crib.length() > text.length
+            || crib.isEmpty()) {
+            throw error("crib does not fit in ciphertext");
+        }
+        _offset = offset;
+        _plain = new int[crib.length()];
+        _cipher = new int[crib.length()];
+        for (int i = 0; i < crib.length(); ++i) {
+            _plain[i] = _alphabet.toInt(crib.charAt(i));
+            _cipher[i] = text[offset + i];
+            if (_plain[i] == _cipher[i]) {
+                throw error("no letter encrypts to itself");
+            }
+        }
+        buildMenu();
+        _tables = new HashMap<>();
+        for (Rotor r : machine.availableRotors()) {
+            _tables.put(r.name(), new Tables(r));
+        }
+    }
+
+    /** Return every choice of rotors (reflector first) that can fill the
+     *  slots of the machine. */
+    List<String[]> orders() {
+        return _machine.rotorOrders();
+    }
+
+    /** Search all stops of all rotor orders on POOL, passing each stop
+     *  found to FOUND as it is found. */
+    void search(ForkJoinPool pool, Consumer<Stop> found) {
+        search(orders(), pool, found);
+    }
+
+    /** Search all stops of each of ORDERS on POOL, passing each stop
+     *  found to FOUND as it is found.  FOUND is called by one thread at a
+     *  time.  Returns when the search is complete. */
+    void search(List<String[]> orders, ForkJoinPool pool,
+                Consumer<Stop> found) {
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (String[] order : orders) {
+            check(order);
+            long count = stopsPerOrder() / _size;
+            for (int p = 0; p < _size; ++p) {
+                long from = p * count;
+                tasks.add(pool.submit(() ->
+                    new Worker(order).search(from, from + count, found)));
+            }
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+    }
+
+    /** Search the stops of ORDER numbered FROM (inclusive) to TO
+     *  (exclusive) on the calling thread, passing each stop found to
+     *  FOUND.  Stops are numbered from 0 to stopsPerOrder() - 1 by
+     *  reading their positions in slots 1 and above as the digits of a
+     *  number, slot 1 most significant. */
+    void search(String[] order, long from, long to, Consumer<Stop> found) {
+        check(order);
+        if (from < 0 || from > to || to > stopsPerOrder()) {
+            throw error("stop range out of bounds");
+        }
+        new Worker(order).search(from, to, found);
+    }
+
+    /** Return the number of stops in each rotor order. */
+    long stopsPerOrder() {
+        long result = 1;
+        for (int i = 1; i < _numRotors; ++i) {
+            result *= _size;
+        }
+        return result;
+    }
+
+    /** Check that REFLECTOR swaps each letter with a different one, as
+     *  the menu and the conversions cached by Worker.scramble assume. */
+    private static void checkReflector(Rotor reflector) {
+        Permutation perm = reflector.permutation();
+        for (int c = 0; c < perm.size(); ++c) {
+            int d = perm.permute(c);
+            if (d == c || perm.permute(d) != c) {
+                throw error("reflector %s does not swap every letter with"
+                            + " another", reflector.name());
+            }
+        }
+    }
+
+    /** Record the edges of the menu in _edges. */
+    private void buildMenu() {
+        int[] degree = new int[_size];
+        for (int i = 0; i < _plain.length; ++i) {
+            degree[_plain[i]] += 1;
+            degree[_cipher[i]] += 1;
+        }
+        _edges = new int[_size][];
+        _test = 0;
+        for (int a = 0; a < _size; ++a) {
+            _edges[a] = new int[degree[a]];
+            if (degree[a] > degree[_test]) {
+                _test = a;
+            }
+        }
+        int[] filled = new int[_size];
+        for (int i = 0; i < _plain.length; ++i) {
+            _edges[_plain[i]][filled[_plain[i]]++] = i;
+            _edges[_cipher[i]][filled[_cipher[i]]++] = i;
+        }
+    }
+
+    /** Check that ORDER names rotors that can fill my slots. */
+    private void check(String[] order) {
+        if (order.length != _numRotors) {
+            throw error("wrong number of rotors");
+        }
+        for (int k = 0; k < order.length; ++k) {
+            Tables tables = _tables.get(order[k]);
+            if (tables == null || !_machine.fits(tables.rotor, k)) {
+                throw error("bad rotor order");
+            }
+            for (int i = 0; i < k; ++i) {
+                if (order[i].equals(order[k])) {
+                    throw error("bad rotor order");
+                }
+            }
+        }
+    }
+
+    /** The tables of one rotor, as for Rotor.tabulate. */
+    private class Tables {
+        /** The tables of ROTOR. */
+        Tables(Rotor rotor) {
+            this.rotor = rotor;
+            forward = new int[_size * _size];
+            backward = new int[_size * _size];
+            notches = new boolean[_size];
+            rotor.tabulate(forward, backward, notches, 0);
+        }
+
+        /** The rotor tabulated. */
+        private final Rotor rotor;
+        /** Its forward conversions. */
+        private final int[] forward;
+        /** Its backward conversions. */
+        private final int[] backward;
+        /** Its notches. */
+        private final boolean[] notches;
+    }
+
+    /** The search of the stops of one rotor order, by one thread. */
+    private class Worker {
+
+        /** A Worker for the rotors named ORDER. */
+        Worker(String[] order) {
+            _order = order;
+            _forward = new int[_numRotors][];
+            _backward = new int[_numRotors][];
+            _notches = new boolean[_numRotors][];
+            for (int i = 0; i < _numRotors; ++i) {
+                Tables tables = _tables.get(order[i]);
+                _forward[i] = tables.forward;
+                _backward[i] = tables.backward;
+                _notches[i] = tables.notches;
+            }
+            _pos = new int[_numRotors];
+            _start = new int[_numRotors - 1];
+            _skipper = new Machine(_alphabet, _numRotors, _pawls,
+                                   _machine.availableRotors());
+            _skipper.insertRotors(order);
+            _posAt = new int[_plain.length][_numRotors];
+            _scramblers = new int[_plain.length][_size];
+            _known = new int[_plain.length][_size];
+            _partner = new int[_size];
+            _queue = new int[_size];
+        }
+
+        /** Try the stops numbered FROM (inclusive) to TO (exclusive),
+         *  passing each one that survives to FOUND.  Stops are numbered
+         *  by reading their positions in slots 1 and above as the digits
+         *  of a number, slot 1 most significant. */
+        void search(long from, long to, Consumer<Stop> found) {
+            int[] start = new int[_numRotors];
+            long n = from;
+            for (int i = _numRotors - 1; i > 0; --i) {
+                start[i] = (int) (n % _size);
+                n /= _size;
+            }
+            for (n = from; n < to; ++n) {
+                _stop += 1;
+                tabulate(start);
+                for (int y = 0; y < _size; ++y) {
+                    if (propagate(y)) {
+                        report(start, found);
+                    }
+                }
+                for (int i = _numRotors - 1; i > 0; --i) {
+                    start[i] += 1;
+                    if (start[i] < _size) {
+                        break;
+                    }
+                    start[i] = 0;
+                }
+            }
+        }
+
+        /** Fill _posAt with the positions of the rotors at each position
+         *  of the crib, starting with the rotors at START.  The rotors are
+         *  taken to the start of the crib with Machine.advanceBy, so that
+         *  the cost does not grow with its offset. */
+        private void tabulate(int[] start) {
+            System.arraycopy(start, 0, _pos, 0, _numRotors);
+            if (_offset > 0) {
+                System.arraycopy(start, 1, _start, 0, _start.length);
+                _skipper.restorePositions(_start);
+                _skipper.advanceBy(_offset);
+                System.arraycopy(_skipper.positions(), 0, _pos, 1,
+                                 _start.length);
+            }
+            for (int[] posns : _posAt) {
+                step();
+                System.arraycopy(_pos, 0, posns, 0, _numRotors);
+            }
+        }
+
+        /** Return the conversion of C by the rotors (without a plugboard)
+         *  at position I of the crib.  Conversions are remembered until the
+         *  next stop, since most hypotheses are rejected after only a few
+         *  are needed. */
+        private int scramble(int i, int c) {
+            if (_known[i][c] == _stop) {
+                return _scramblers[i][c];
+            }
+            int[] posns = _posAt[i];
+            int x = c;
+            for (int k = _numRotors - 1; k >= 0; --k) {
+                x = _forward[k][posns[k] * _size + x];
+            }
+            for (int k = 1; k < _numRotors; ++k) {
+                x = _backward[k][posns[k] * _size + x];
+            }
+            _scramblers[i][c] = x;
+            /* The rotors swap C and X, since the reflector was checked to
+             * be an involution without fixed points. */
+            _scramblers[i][x] = c;
+            _known[i][c] = _known[i][x] = _stop;
+            return x;
+        }
+
+        /** Advance _pos as Machine.convert(int) does before converting a
+         *  character. */
+        private void step() {
+            Machine.stepPositions(_pos, 0, _notches, _numRotors - _pawls,
+                                  _size);
+        }
+
+        /** Return true iff the hypothesis that the plugboard pairs the test
+         *  letter with Y is consistent with the menu under the rotors at
+         *  _posAt,
+         *  leaving the plugboard it implies in _partner. */
+        private boolean propagate(int y) {
+            Arrays.fill(_partner, -1);
+            int head = 0, tail = 0;
+            if (!pair(_test, y)) {
+                return false;
+            }
+            _queue[tail++] = _test;
+            if (y != _test) {
+                _queue[tail++] = y;
+            }
+            while (head < tail) {
+                int a = _queue[head++];
+                int b = _partner[a];
+                for (int i : _edges[a]) {
+                    int d = _plain[i] == a ? _cipher[i] : _plain[i];
+                    int e = scramble(i, b);
+                    if (_partner[d] == -1) {
+                        if (!pair(d, e)) {
+                            return false;
+                        }
+                        _queue[tail++] = d;
+                        if (e != d) {
+                            _queue[tail++] = e;
+                        }
+                    } else if (_partner[d] != e) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /** Record that the plugboard pairs A with B, returning false if
+         *  either already has a different partner. */
+        private boolean pair(int a, int b) {
+            if (_partner[a] != -1 || _partner[b] != -1) {
+                return _partner[a] == b;
+            }
+            _partner[a] = b;
+            _partner[b] = a;
+            return true;
+        }
+
+        /** Pass the stop with slots at START and plugboard _partner to
+         *  FOUND. */
+        private void report(int[] start, Consumer<Stop> found) {
+            StringBuilder positions = new StringBuilder();
+            for (int i = 1; i < _numRotors; ++i) {
+                positions.append(_alphabet.toChar(start[i]));
+            }
+            StringBuilder plugs = new StringBuilder();
+            for (int a = 0; a < _size; ++a) {
+                if (_partner[a] > a) {
+                    if (plugs.length() > 0) {
+                        plugs.append(' ');
+                    }
+                    plugs.append('(').append(_alphabet.toChar(a))
+                        .append(_alphabet.toChar(_partner[a])).append(')');
+                }
+            }
+            Stop stop = new Stop(_order, positions.toString(),
+                                 plugs.toString());
+            synchronized (found) {
+                found.accept(stop);
+            }
+        }
+
+        /** Names of my rotors. */
+        private final String[] _order;
+        /** Forward tables of my rotors, as for Rotor.tabulate. */
+        private final int[][] _forward;
+        /** Backward tables of my rotors, as for Rotor.tabulate. */
+        private final int[][] _backward;
+        /** Notches of my rotors, as for Rotor.tabulate. */
+        private final boolean[][] _notches;
+        /** Current positions of my rotors. */
+        private final int[] _pos;
+        /** Positions of my rotors in slots 1 and above at a stop. */
+        private final int[] _start;
+        /** A machine with my rotors, which tabulate advances from a stop
+         *  to the start of the crib. */
+        private final Machine _skipper;
+        /** _posAt[I] holds the positions of my rotors at position I of the
+         *  crib. */
+        private final int[][] _posAt;
+        /** _scramblers[I][C] is the conversion of C by my rotors at
+         *  position I of the crib, if _known[I][C] is _stop. */
+        private final int[][] _scramblers;
+        /** _known[I][C] is the number of the stop for which
+         *  _scramblers[I][C] was last computed. */
+        private final int[][] _known;
+        /** Number of the stop being tried.  Starts above the initial
+         *  contents of _known. */
+        private int _stop;
+        /** _partner[A] is the plugboard partner of A under the current
+         *  hypothesis, or -1 if unknown. */
+        private final int[] _partner;
+        /** Letters whose partners are to be propagated. */
+        private final int[] _queue;
+    }
+
+    /** The machine whose rotors are searched. */
+    private final Machine _machine;
+    /** The alphabet. */
+    private final Alphabet _alphabet;
+    /** Size of the alphabet. */
+    private final int _size;
+    /** Number of slots. */
+    private final int _numRotors;
+    /** Number of pawls. */
+    private final int _pawls;
+    /** Tables of each available rotor, by name. */
+    private final HashMap<String, Tables> _tables;
+    /** Position of the crib in the ciphertext. */
+    private final int _offset;
+    /** The crib, as alphabet indices. */
+    private final int[] _plain;
+    /** The ciphertext under the crib, as alphabet indices. */
+    private final int[] _cipher;
+    /** _edges[A] lists the positions of the crib at which A is the
+     *  plaintext or ciphertext letter. */
+    private int[][] _edges;
+    /** The letter of the menu with the most edges. */
+    private int _test;
+}
@@ -0,0 +1,121 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Bombe class.
+ *  @author Karl Meissner
+ */
+public class BombeTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void ordersTest() {
+        Bombe bombe = new Bombe(threeRotorMachine(), "BCD", "ABC", 0);
+        assertEquals(6, bombe.orders().size());
+        for (String[] order : bombe.orders()) {
+            assertEquals("Loren", order[0]);
+        }
+        assertEquals(26 * 26, bombe.stopsPerOrder());
+    }
+
+    @Test
+    public void searchTest() {
+        Machine machine = threeRotorMachine();
+        machine.insertRotors(new String[] {"Loren", "Karl", "Anthony"});
+        machine.setPlugboard(new Permutation("(AQ) (EP) (HT) (LM) (RX)",
+                                             new Alphabet()));
+        machine.setRotors("XP");
+        String plain = "WEATHERREPORTNOTHINGTOREPORTFROMTHEFRONT";
+        String cipher = machine.convert(plain);
+        Bombe bombe = new Bombe(machine, cipher, plain.substring(3, 30), 3);
+        List<Bombe.Stop> found = new ArrayList<>();
+        ForkJoinPool pool = new ForkJoinPool(3);
+        bombe.search(pool, found::add);
+        pool.shutdown();
+        boolean seen = false;
+        for (Bombe.Stop stop : found) {
+            if (stop.toString().startsWith("* Loren Karl Anthony XP ")) {
+                assertEquals("(AQ) (EP) (HT) (LM) (RX)", stop.plugboard());
+                seen = true;
+            }
+        }
+        assertTrue(seen);
+        assertTrue(found.size() < 10);
+    }
+
+    @Test
+    public void distantCribTest() {
+        Machine machine = threeRotorMachine();
+        machine.insertRotors(new String[] {"Loren", "Karl", "Anthony"});
+        machine.setPlugboard(new Permutation("(AQ) (EP) (HT) (LM) (RX)",
+                                             new Alphabet()));
+        machine.setRotors("XP");
+        StringBuilder plain = new StringBuilder();
+        for (int i = 0; i < 200000; ++i) {
+            plain.append((char) ('A' + (i * 7 + i / 31) % 26));
+        }
+        int offset = plain.length();
+        String crib = "WEATHERREPORTNOTHINGTOREPORT";
+        plain.append(crib);
+        String cipher = machine.convert(plain.toString());
+        Bombe bombe = new Bombe(machine, cipher, crib, offset);
+        List<Bombe.Stop> found = new ArrayList<>();
+        ForkJoinPool pool = new ForkJoinPool(3);
+        bombe.search(pool, found::add);
+        pool.shutdown();
+        boolean seen = false;
+        for (Bombe.Stop stop : found) {
+            seen |= stop.toString().startsWith("* Loren Karl Anthony XP ");
+        }
+        assertTrue(seen);
+    }
+
+    @Test
+    public void badReflectorTest() {
+        for (String cycles : new String[] {"(ABC) (DE)", "(AB) (CD) (Z)"}) {
+            Machine good = threeRotorMachine();
+            List<Rotor> rotors = new ArrayList<>();
+            for (Rotor r : good.availableRotors()) {
+                if (!r.reflecting()) {
+                    rotors.add(r);
+                }
+            }
+            rotors.add(new Reflector("Loren",
+                                     new Permutation(cycles, new Alphabet())));
+            Machine bad = new Machine(good.alphabet(), good.numRotors(),
+                                      good.numPawls(), rotors);
+            try {
+                new Bombe(bad, "BCD", "ABC", 0);
+                fail("accepted reflector " + cycles);
+            } catch (EnigmaException excp) {
+                assertEquals("reflector Loren does not swap every letter"
+                             + " with another", excp.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void cribTest() {
+        try {
+            new Bombe(threeRotorMachine(), "ABC", "XBZ", 0);
+            fail("letter encrypted to itself");
+        } catch (EnigmaException excp) {
+            return;
+        }
+    }
+
+}
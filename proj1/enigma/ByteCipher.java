@@ -0,0 +1,80 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static enigma.EnigmaException.*;
+
+/** Encryption of arbitrary files by machines whose alphabet is the byte
+ *  alphabet (see Alphabet.bytes).  Input and output are mapped into
+ *  memory and converted a window at a time, with no decoding of
+ *  characters and no copying through Strings.
+ *  @author Karl Meissner
+ */
+class ByteCipher {
+
+    /** Most bytes mapped from each file at once. */
+    static final int WINDOW = 1 << 26;
+
+    /** Convert the contents of the file INPUT with M, writing the result,
+     *  which is the same length, to the file OUTPUT.  M's alphabet must be
+     *  the byte alphabet, and M advances as it converts. */
+    static void convert(Machine m, Path input, Path output) {
+        if (!m.alphabet().isBytes()) {
+            throw error("only a machine with the byte alphabet converts"
+                        + " files");
+        }
+        try {
+            if (Files.exists(output) && Files.isSameFile(input, output)) {
+                throw error("input and output are the same file");
+            }
+        } catch (IOException excp) {
+            throw error("could not open %s", input);
+        }
+        try (FileChannel in = FileChannel.open(input, READ);
+             FileChannel out = FileChannel.open(output, READ, WRITE, CREATE,
+                                                TRUNCATE_EXISTING)) {
+            long size = in.size();
+            for (long pos = 0; pos < size; pos += WINDOW) {
+                long len = Math.min(WINDOW, size - pos);
+                MappedByteBuffer src =
+                    in.map(FileChannel.MapMode.READ_ONLY, pos, len);
+                MappedByteBuffer dst =
+                    out.map(FileChannel.MapMode.READ_WRITE, pos, len);
+                m.convert(src, dst);
+            }
+        } catch (IOException excp) {
+            throw error("could not convert %s to %s", input, output);
+        }
+    }
+
+    /** Encrypt or decrypt a file, as given by ARGS CONFIG SETTINGS INPUT
+     *  OUTPUT.  CONFIG is a configuration file whose alphabet is
+     *  Alphabet.BYTES_NAME, SETTINGS a settings line as Main reads them
+     *  (with rotor positions and plugboard in hex), and INPUT and OUTPUT
+     *  the files to read and write. */
+    public static void main(String... args) {
+        try {
+            if (args.length != 4) {
+                throw error("Usage: java enigma.ByteCipher CONFIG SETTINGS"
+                            + " INPUT OUTPUT");
+            }
+            Machine m = Main.readMachine(args[0]);
+            Main.applySettings(m, args[1]);
+            convert(m, Paths.get(args[2]), Paths.get(args[3]));
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+}
@@ -0,0 +1,194 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the ByteCipher class.
+ *  @author Karl Meissner
+ */
+public class ByteCipherTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the cycles of a random permutation of the byte alphabet
+     *  chosen by RANDOM, which is an involution without fixed points if
+     *  REFLECT. */
+    private String randomCycles(Random random, boolean reflect) {
+        int[] table = new int[256];
+        int[] shuffled = new int[256];
+        for (int k = 0; k < 256; ++k) {
+            shuffled[k] = k;
+        }
+        for (int k = 255; k > 0; --k) {
+            int j = random.nextInt(k + 1);
+            int t = shuffled[k];
+            shuffled[k] = shuffled[j];
+            shuffled[j] = t;
+        }
+        for (int k = 0; k < 256; ++k) {
+            if (reflect) {
+                table[shuffled[k]] = shuffled[k ^ 1];
+            } else {
+                table[k] = shuffled[k];
+            }
+        }
+        return new Permutation(table, Alphabet.bytes()).cycles();
+    }
+
+    /** Write a configuration file for a machine with the byte alphabet,
+     *  four slots and three pawls to CONFIG. */
+    private void writeConfig(Path config) throws IOException {
+        Random random = new Random(61);
+        String text = Alphabet.BYTES_NAME + "\n 4 3\n"
+            + " Refl R " + randomCycles(random, true) + "\n"
+            + " One M00 " + randomCycles(random, false) + "\n"
+            + " Two M20ff " + randomCycles(random, false) + "\n"
+            + " Three M0a " + randomCycles(random, false) + "\n";
+        Files.write(config, text.getBytes());
+    }
+
+    /** Settings line for the test machine. */
+    private static final String SETTINGS =
+        "* Refl One Two Three 1f0905 (0a20) (0d41)";
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void roundTripTest() throws IOException {
+        Path config = Files.createTempFile("bytes", ".conf");
+        Path plain = Files.createTempFile("plain", ".bin");
+        Path cipher = Files.createTempFile("cipher", ".bin");
+        Path back = Files.createTempFile("back", ".bin");
+        try {
+            writeConfig(config);
+            byte[] data = new byte[100_000];
+            new Random(7).nextBytes(data);
+            for (int k = 0; k < 256; ++k) {
+                data[k] = (byte) k;
+            }
+            Files.write(plain, data);
+
+            Machine m = Main.readMachine(config.toString());
+            Main.applySettings(m, SETTINGS);
+            ByteCipher.convert(m, plain, cipher);
+            byte[] encrypted = Files.readAllBytes(cipher);
+            assertEquals(data.length, encrypted.length);
+            assertFalse(Arrays.equals(data, encrypted));
+
+            Machine check = Main.readMachine(config.toString());
+            Main.applySettings(check, SETTINGS);
+            for (int k = 0; k < 1000; ++k) {
+                assertEquals(encrypted[k] & 0xff,
+                             check.convert(data[k] & 0xff));
+            }
+
+            Machine n = Main.readMachine(config.toString());
+            Main.applySettings(n, SETTINGS);
+            ByteCipher.convert(n, cipher, back);
+            assertArrayEquals(data, Files.readAllBytes(back));
+        } finally {
+            Files.delete(config);
+            Files.delete(plain);
+            Files.delete(cipher);
+            Files.delete(back);
+        }
+    }
+
+    @Test
+    public void bufferTest() throws IOException {
+        Path config = Files.createTempFile("bytes", ".conf");
+        try {
+            writeConfig(config);
+            Machine m = Main.readMachine(config.toString());
+            Main.applySettings(m, SETTINGS);
+            Machine n = m.copy();
+            byte[] data = "  \n\t text with whitespace \r\n".getBytes();
+            ByteBuffer out = ByteBuffer.allocate(data.length);
+            m.convert(ByteBuffer.wrap(data), out);
+            assertEquals(data.length, out.position());
+            ByteBuffer back = ByteBuffer.allocate(data.length);
+            n.convert(ByteBuffer.wrap(out.array()), back);
+            assertArrayEquals(data, back.array());
+        } finally {
+            Files.delete(config);
+        }
+    }
+
+    @Test
+    public void defaultPlugboardTest() throws IOException {
+        Path config = Files.createTempFile("bytes", ".conf");
+        try {
+            writeConfig(config);
+            Machine m = Main.readMachine(config.toString());
+            m.insertRotors(new String[] {"Refl", "One", "Two", "Three"});
+            Machine n = m.copy();
+            n.setPlugboard(new Permutation("", Alphabet.bytes()));
+            for (int c = 0; c < 256; ++c) {
+                assertEquals(n.convert(c), m.convert(c));
+            }
+        } finally {
+            Files.delete(config);
+        }
+    }
+
+    @Test
+    public void searchWhitespaceTest() throws IOException {
+        Path config = Files.createTempFile("bytes", ".conf");
+        try {
+            writeConfig(config);
+            Machine m = Main.readMachine(config.toString());
+            Main.applySettings(m, SETTINGS);
+            String plain = "ATTACK AT\nDAWN ON THE\tEAST FRONT\r\nHOLD";
+            String cipher = m.copy().convert(plain);
+            assertEquals(plain.length(), cipher.length());
+            String crib = plain.substring(10, 30);
+            long key = (0x1fL << 16) + (0x09 << 8) + 0x05;
+
+            TrialDecryptor trials = new TrialDecryptor(m, cipher);
+            assertEquals(plain.length(), trials.length());
+            List<Long> hits = new ArrayList<>();
+            trials.search(key - 100, key + 100, trials.crib(crib, 10),
+                          hits::add);
+            assertTrue(hits.contains(key));
+
+            Bombe bombe = new Bombe(m, cipher, crib, 10);
+            List<Bombe.Stop> stops = new ArrayList<>();
+            bombe.search(new String[] {"Refl", "One", "Two", "Three"},
+                         key - 100, key + 100, stops::add);
+            boolean seen = false;
+            for (Bombe.Stop stop : stops) {
+                seen |= stop.positions().equals("\u001f\t\u0005");
+            }
+            assertTrue(seen);
+
+            new HillClimber(m, " \n", new NgramFitness(256, 1,
+                                                         new float[256]));
+        } finally {
+            Files.delete(config);
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void textMachineTest() {
+        Machine m = threeRotorMachine();
+        m.convert(ByteBuffer.allocate(1), ByteBuffer.allocate(1));
+    }
+
+}
@@ -0,0 +1,270 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+
+import static enigma.EnigmaException.*;
+
+/** A session with a Server.  Its main program reads and writes messages
+ *  just as Main does, but has the server do the conversion, so that it
+ *  neither reads the configuration nor warms up a machine of its own.
+ *  @author Karl Meissner
+ */
+class Client {
+
+    /** Most requests sent by process before it waits for a reply. */
+    static final int PIPELINE_DEPTH = 256;
+
+    /** Most characters of requests sent by process before it waits for
+     *  a reply, few enough that a connection's buffers hold them. */
+    static final int PIPELINE_CHARS = 1 << 15;
+
+    /** Most characters of a message line sent in one request. */
+    static final int SEGMENT = 1 << 13;
+
+    /** Marks the end of a message line among process's pending
+     *  requests. */
+    private static final int END_LINE = -1;
+
+    /** A session with the server at ADDRESS (see Server.address). */
+    Client(SocketAddress address) {
+        try {
+            _channel = SocketChannel.open(address);
+            if (!(address instanceof UnixDomainSocketAddress)) {
+                _channel.socket().setTcpNoDelay(true);
+            }
+        } catch (IOException excp) {
+            throw error("could not connect to %s", address);
+        }
+        _in = new DataInputStream(
+            new BufferedInputStream(Channels.newInputStream(_channel),
+                                    Server.BUFFER_SIZE));
+        _out = new DataOutputStream(
+            new BufferedOutputStream(Channels.newOutputStream(_channel),
+                                     Server.BUFFER_SIZE));
+    }
+
+    /** Set my session's machine according to the settings line LINE. */
+    void settings(String line) {
+        send(Server.SETTINGS, line);
+        receive();
+    }
+
+    /** Return the conversion of MSG by my session's machine, without
+     *  whitespace. */
+    String convert(String msg) {
+        send(Server.CONVERT, msg);
+        return receive();
+    }
+
+    /** Return the server's report on its activity. */
+    String stats() {
+        send(Server.STATS, "");
+        return receive();
+    }
+
+    /** Convert the messages in INPUT, which is in the format Main reads,
+     *  sending the results to OUTPUT as Main would.  Message lines are
+     *  sent in segments of at most SEGMENT characters, and requests are
+     *  sent ahead of their replies, up to PIPELINE_DEPTH and
+     *  PIPELINE_CHARS, so that the server need not wait for each one. */
+    void process(LineReader input, MessageWriter output) {
+        ArrayDeque<Integer> pending = new ArrayDeque<>();
+        long pendingChars = 0;
+        char[] segment = new char[SEGMENT];
+        for (int c = input.peek(); c >= 0; c = input.peek()) {
+            if (c == '*') {
+                String line = input.readLine();
+                pendingChars += send(Server.SETTINGS, line);
+                pending.add(line.length());
+            } else {
+                int n;
+                while ((n = input.readSegment(segment, 0, SEGMENT)) >= 0) {
+                    pendingChars +=
+                        send(Server.CONVERT, new String(segment, 0, n));
+                    pending.add(n);
+                    while (pendingChars > PIPELINE_CHARS) {
+                        pendingChars -= retire(pending, output);
+                    }
+                }
+                pending.add(END_LINE);
+            }
+            while (pendingChars > PIPELINE_CHARS
+                   || pending.size() > PIPELINE_DEPTH) {
+                pendingChars -= retire(pending, output);
+            }
+        }
+        while (!pending.isEmpty()) {
+            retire(pending, output);
+        }
+    }
+
+    /** End my session. */
+    void close() {
+        try {
+            _out.close();
+            _channel.close();
+        } catch (IOException excp) {
+            throw error("could not close connection");
+        }
+    }
+
+    /** Send a request of type TYPE holding TEXT, without waiting for its
+     *  reply.  Return the length of TEXT. */
+    private int send(int type, String text) {
+        try {
+            Server.writeFrame(_out, type, text);
+        } catch (IOException excp) {
+            throw error("lost connection to server");
+        }
+        return text.length();
+    }
+
+    /** Wait for the reply to the earliest request not yet answered, and
+     *  return its text.  Throws an EnigmaException with the server's
+     *  message if the request failed. */
+    private String receive() {
+        try {
+            _out.flush();
+            int type = _in.read();
+            if (type < 0) {
+                throw error("lost connection to server");
+            }
+            String text = Server.readText(_in);
+            _lastType = type;
+            if (type == Server.FAIL) {
+                throw error("%s", text);
+            }
+            return text;
+        } catch (IOException excp) {
+            throw error("lost connection to server");
+        }
+    }
+
+    /** Remove the first entry of PENDING, which holds the lengths of the
+     *  requests process has sent and not yet seen answered, and END_LINE
+     *  wherever a message line ends.  For a request, wait for its reply
+     *  and append it to OUTPUT if it is a converted message; for
+     *  END_LINE, end OUTPUT's line.  Return the length of the request, or
+     *  0 for END_LINE. */
+    private int retire(ArrayDeque<Integer> pending, MessageWriter output) {
+        int len = pending.remove();
+        if (len == END_LINE) {
+            output.endLine();
+            return 0;
+        }
+        String result = receive();
+        if (_lastType == Server.RESULT) {
+            if (_message.length < result.length()) {
+                _message = new char[result.length()];
+            }
+            result.getChars(0, result.length(), _message, 0);
+            output.write(_message, result.length());
+        }
+        return len;
+    }
+
+    /** Convert messages, as given by ARGS ADDRESS [INPUT [OUTPUT]],
+     *  where ADDRESS is that of a running Server (see Server.address),
+     *  and INPUT and OUTPUT are as for Main (standard input and output by
+     *  default).  Given instead --stats ADDRESS, prints the server's
+     *  report on its activity.  Exits normally if there are no errors;
+     *  otherwise with code 1. */
+    public static void main(String... args) {
+        MessageWriter output = null;
+        try {
+            if (args.length == 2 && args[0].equals("--stats")) {
+                Client client = new Client(Server.address(args[1]));
+                System.out.print(client.stats());
+                client.close();
+                return;
+            }
+            if (args.length < 1 || args.length > 3) {
+                throw error("Usage: java enigma.Client ADDRESS [INPUT"
+                            + " [OUTPUT]]");
+            }
+            Client client = new Client(Server.address(args[0]));
+            LineReader input;
+            if (args.length > 1) {
+                input = new LineReader(open(args[1]));
+            } else {
+                input = new LineReader(Channels.newChannel(System.in));
+            }
+            Writer writer;
+            if (args.length > 2) {
+                writer = Channels.newWriter(create(args[2]),
+                                            Charset.defaultCharset()
+                                            .newEncoder(),
+                                            LineReader.BUFFER_SIZE);
+            } else {
+                writer = new OutputStreamWriter(System.out);
+            }
+            output = new MessageWriter(
+                new BufferedWriter(writer, LineReader.BUFFER_SIZE));
+            client.process(input, output);
+            output.close();
+            input.close();
+            client.close();
+            return;
+        } catch (EnigmaException excp) {
+            if (output != null) {
+                output.flush();
+            }
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return a channel reading the file named NAME. */
+    private static FileChannel open(String name) {
+        try {
+            return FileChannel.open(Paths.get(name));
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return a channel writing the file named NAME, which is created or
+     *  emptied. */
+    private static FileChannel create(String name) {
+        try {
+            return FileChannel.open(Paths.get(name),
+                                    StandardOpenOption.WRITE,
+                                    StandardOpenOption.CREATE,
+                                    StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Connection to the server. */
+    private final SocketChannel _channel;
+
+    /** Replies from the server. */
+    private final DataInputStream _in;
+
+    /** Requests to the server. */
+    private final DataOutputStream _out;
+
+    /** Type of the last reply received. */
+    private int _lastType;
+
+    /** Holds a converted message for writing. */
+    private char[] _message = new char[0];
+
+}
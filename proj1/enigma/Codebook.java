@@ -0,0 +1,109 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** A precomputed table of every state of a Machine's moving rotors,
+ *  giving for each the permutation the whole machine applies to a
+ *  character and the state that follows it.  With a codebook, converting
+ *  a character is two array accesses.  A codebook depends on the rotors
+ *  in a machine, the settings of those that do not move, and the
+ *  plugboard, but not on where the moving rotors start.
+ *  @author Karl Meissner
+ */
+class Codebook {
+
+    /** A codebook for the current configuration of MACHINE, which is not
+     *  itself disturbed. */
+    Codebook(Machine machine) {
+        _size = machine.alphabet().size();
+        _first = machine.numRotors() - machine.numPawls();
+        long states = states(machine);
+        if (states * _size > Integer.MAX_VALUE) {
+            throw error("Codebook too large");
+        }
+        _table = new char[(int) states * _size];
+        _next = new int[(int) states];
+        Machine work = machine.copy();
+        int[] posns = work.positions();
+        for (int s = 0; s < _next.length; ++s) {
+            decode(s, posns);
+            work.restorePositions(posns);
+            for (int c = 0; c < _size; ++c) {
+                _table[s * _size + c] = (char) work.scramble(c);
+            }
+            work.advanceBy(1);
+            _next[s] = encode(work.positions());
+        }
+    }
+
+    /** Return the number of states of the moving rotors of MACHINE. */
+    static long states(Machine machine) {
+        long result = 1;
+        for (int i = 0; i < machine.numPawls(); ++i) {
+            result *= machine.alphabet().size();
+            if (result > Integer.MAX_VALUE) {
+                return Long.MAX_VALUE;
+            }
+        }
+        return result;
+    }
+
+    /** Return the approximate number of bytes occupied by a codebook for
+     *  MACHINE, or Long.MAX_VALUE if it is too large to build. */
+    static long bytes(Machine machine) {
+        long states = states(machine);
+        int size = machine.alphabet().size();
+        if (states == Long.MAX_VALUE || states * size > Integer.MAX_VALUE) {
+            return Long.MAX_VALUE;
+        }
+        return states * (Character.BYTES * size + Integer.BYTES);
+    }
+
+    /** Return the number of bytes I occupy, approximately. */
+    long bytes() {
+        return (long) _table.length * Character.BYTES
+            + (long) _next.length * Integer.BYTES;
+    }
+
+    /** Return the state whose rotor positions (as from
+     *  Machine.positions) are POSNS. */
+    int encode(int[] posns) {
+        int s = 0;
+        for (int i = _first - 1; i < posns.length; ++i) {
+            s = s * _size + posns[i];
+        }
+        return s;
+    }
+
+    /** Set the moving-rotor entries of POSNS (as for Machine.positions)
+     *  to those of state S. */
+    void decode(int s, int[] posns) {
+        for (int i = posns.length - 1; i >= _first - 1; --i) {
+            posns[i] = s % _size;
+            s /= _size;
+        }
+    }
+
+    /** Replace each of TEXT[FROM .. TO-1], which are indices into the
+     *  alphabet, by its conversion, starting in state STATE.  Return the
+     *  final state. */
+    int convert(char[] text, int from, int to, int state) {
+        for (int i = from; i < to; ++i) {
+            state = _next[state];
+            text[i] = _table[state * _size + text[i]];
+        }
+        return state;
+    }
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+    /** Slot of the leftmost moving rotor. */
+    private final int _first;
+
+    /** _table[S * _size + C] is the conversion of C in state S. */
+    private final char[] _table;
+
+    /** _next[S] is the state that follows state S. */
+    private final int[] _next;
+}
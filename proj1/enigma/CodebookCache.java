@@ -0,0 +1,85 @@
+package enigma;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/** A collection of Codebooks for recently used machine configurations,
+ *  limited in total size.  When adding a codebook would exceed the
+ *  limit, the least recently used ones are discarded.  Safe for use by
+ *  several threads.
+ *  @author Karl Meissner
+ */
+class CodebookCache {
+
+    /** A cache holding at most BUDGET bytes of codebooks. */
+    CodebookCache(long budget) {
+        _budget = budget;
+    }
+
+    /** Return a codebook for the current configuration of MACHINE,
+     *  building it if necessary, or null if it would not fit in my
+     *  budget. */
+    Codebook get(Machine machine) {
+        List<Object> key = machine.configuration();
+        synchronized (this) {
+            Codebook book = _books.get(key);
+            if (book != null) {
+                _hits += 1;
+                return book;
+            }
+        }
+        if (Codebook.bytes(machine) > _budget) {
+            return null;
+        }
+        Codebook book = new Codebook(machine);
+        synchronized (this) {
+            _misses += 1;
+            if (_books.put(key, book) == null) {
+                _used += book.bytes();
+            }
+            Iterator<Codebook> iter = _books.values().iterator();
+            while (_used > _budget && iter.hasNext()) {
+                Codebook old = iter.next();
+                if (old != book) {
+                    _used -= old.bytes();
+                    iter.remove();
+                }
+            }
+        }
+        return book;
+    }
+
+    /** Return the number of codebooks I hold. */
+    synchronized int size() {
+        return _books.size();
+    }
+
+    /** Return the number of bytes occupied by my codebooks. */
+    synchronized long used() {
+        return _used;
+    }
+
+    /** Return the number of calls to get that found a codebook. */
+    synchronized long hits() {
+        return _hits;
+    }
+
+    /** Return the number of calls to get that built a codebook. */
+    synchronized long misses() {
+        return _misses;
+    }
+
+    /** Largest number of bytes my codebooks may occupy. */
+    private final long _budget;
+
+    /** Codebooks by Machine.configuration(), least recently used first. */
+    private final LinkedHashMap<List<Object>, Codebook> _books =
+        new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Number of bytes occupied by the codebooks in _books. */
+    private long _used;
+
+    /** Counts of calls to get that found or built a codebook. */
+    private long _hits, _misses;
+}
@@ -0,0 +1,89 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the Codebook and CodebookCache
+ *  classes.
+ *  @author Karl Meissner
+ */
+public class CodebookTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    private MachineTest builder = new MachineTest();
+    private Machine machine = builder.build2();
+    private String[] rotors = {"Loren", "Paul", "Rachel", "Karl", "Anthony"};
+    private Permutation plug = new Permutation("(YF) (ZH)", new Alphabet());
+
+    /** Return a message of LEN letters. */
+    private String message(int len) {
+        StringBuilder msg = new StringBuilder();
+        for (int i = 0; i < len; ++i) {
+            msg.append((char) ('A' + (i * 5 + i / 7) % 26));
+        }
+        return msg.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void codebookConvertTest() {
+        machine.insertRotors(rotors);
+        machine.setPlugboard(plug);
+        machine.setRotors("BVJQ");
+        String msg = message(5000);
+        String expected = machine.convert(msg);
+        int[] after = machine.positions();
+
+        CodebookCache cache = new CodebookCache(1 << 20);
+        machine.useCodebooks(cache);
+        machine.setRotors("BVJQ");
+        assertEquals(expected, machine.convert(msg));
+        assertArrayEquals(after, machine.positions());
+        assertEquals(1, cache.misses());
+        machine.setRotors("BVJQ");
+        assertEquals(expected, machine.convert(msg));
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void codebookEvictionTest() {
+        machine.insertRotors(rotors);
+        machine.setPlugboard(plug);
+        machine.setRotors("AAAA");
+        long one = Codebook.bytes(machine);
+        CodebookCache cache = new CodebookCache(one * 2);
+        machine.useCodebooks(cache);
+        machine.convert("HELLO");
+        machine.setRotors("BAAA");
+        machine.convert("HELLO");
+        assertEquals(2, cache.size());
+        machine.setPlugboard(new Permutation("(AB)", new Alphabet()));
+        machine.convert("HELLO");
+        assertEquals(2, cache.size());
+        assertTrue(cache.used() <= one * 2);
+        machine.setPlugboard(plug);
+        machine.setRotors("BAAA");
+        machine.convert("HELLO");
+        assertEquals(3, cache.misses());
+        assertEquals(1, cache.hits());
+    }
+
+    @Test
+    public void codebookTooLargeTest() {
+        machine.insertRotors(rotors);
+        CodebookCache cache = new CodebookCache(100);
+        machine.useCodebooks(cache);
+        machine.setRotors("BVJQ");
+        assertEquals(5, machine.convert("HELLO").length());
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,143 @@
+package enigma;
+
+/** A balanced tree of composed rotor permutations, used by a Machine to
+ *  pass characters through a contiguous run of rotor slots in one step.
+ *  Each leaf holds the forward conversion of one slot at its current
+ *  setting, and each interior node holds the composition of its
+ *  children, so that the root describes the whole run.  When a rotor
+ *  moves, only the nodes on the path from its leaf to the root need to
+ *  be recomputed.
+ *  @author Karl Meissner
+ */
+class CompositionTree {
+
+    /** A tree covering the rotors in SLOTS[LO] through SLOTS[HI - 1],
+     *  whose alphabets have SIZE characters.  SLOTS is read, not copied,
+     *  whenever a leaf is recomputed.  Initially, every leaf is out of
+     *  date. */
+    CompositionTree(Rotor[] slots, int lo, int hi, int size) {
+        _slots = slots;
+        _lo = lo;
+        _leaves = Math.max(0, hi - lo);
+        _width = Math.max(1, Integer.highestOneBit(Math.max(1, _leaves)));
+        if (_width < _leaves) {
+            _width *= 2;
+        }
+        _forward = new int[2 * _width][size];
+        _inverse = new int[2 * _width][size];
+        for (int n = 1; n < 2 * _width; ++n) {
+            for (int c = 0; c < size; ++c) {
+                _forward[n][c] = _inverse[n][c] = c;
+            }
+        }
+        _dirty = new boolean[2 * _width];
+        _pending = new int[Math.max(1, _leaves)];
+        invalidateAll();
+    }
+
+    /** Note that the rotor in slot SLOT has moved or been replaced. */
+    void invalidate(int slot) {
+        int n = _width + slot - _lo;
+        if (!_dirty[n]) {
+            _dirty[n] = true;
+            _pending[_numPending] = n;
+            _numPending += 1;
+        }
+    }
+
+    /** Note that every rotor I cover may have moved or been replaced. */
+    void invalidateAll() {
+        for (int slot = _lo; slot < _lo + _leaves; ++slot) {
+            invalidate(slot);
+        }
+    }
+
+    /** Return true iff some leaf has been invalidated since the last call
+     *  to update(). */
+    boolean stale() {
+        return _numPending > 0;
+    }
+
+    /** Recompute the out-of-date leaves and their ancestors. */
+    void update() {
+        if (_numPending == 0) {
+            return;
+        }
+        for (int k = 0; k < _numPending; ++k) {
+            int n = _pending[k];
+            Rotor r = _slots[_lo + n - _width];
+            int[] fwd = _forward[n], inv = _inverse[n];
+            for (int c = 0; c < fwd.length; ++c) {
+                fwd[c] = r.convertForward(c);
+                inv[fwd[c]] = c;
+            }
+            _dirty[n] = false;
+            for (n /= 2; n > 0 && !_dirty[n]; n /= 2) {
+                _dirty[n] = true;
+            }
+        }
+        _numPending = 0;
+        for (int n = _width - 1; n > 0; --n) {
+            if (_dirty[n]) {
+                compose(n);
+                _dirty[n] = false;
+            }
+        }
+    }
+
+    /** Set node N to the composition of its children.  The left child
+     *  covers the lower-numbered slots, which a character reaches last on
+     *  its way forward. */
+    private void compose(int n) {
+        int[] fwd = _forward[n], inv = _inverse[n];
+        int[] leftFwd = _forward[2 * n], rightFwd = _forward[2 * n + 1];
+        int[] leftInv = _inverse[2 * n], rightInv = _inverse[2 * n + 1];
+        for (int c = 0; c < fwd.length; ++c) {
+            fwd[c] = leftFwd[rightFwd[c]];
+            inv[c] = rightInv[leftInv[c]];
+        }
+    }
+
+    /** Return the result of passing C forward through all my rotors, from
+     *  the highest-numbered slot to the lowest.  Valid only after
+     *  update(). */
+    int forward(int c) {
+        return _forward[1][c];
+    }
+
+    /** Return the result of passing C backward through all my rotors, the
+     *  inverse of forward(C).  Valid only after update(). */
+    int backward(int c) {
+        return _inverse[1][c];
+    }
+
+    /** The slot array of my machine. */
+    private final Rotor[] _slots;
+
+    /** The first slot I cover. */
+    private final int _lo;
+
+    /** The number of slots I cover. */
+    private final int _leaves;
+
+    /** The number of leaves in the tree, a power of two no smaller than
+     *  _leaves.  Node 1 is the root, the children of node N are 2N and
+     *  2N + 1, and the leaf for slot _lo + K is node _width + K.  Unused
+     *  leaves are identities. */
+    private int _width;
+
+    /** _forward[N] is the composite forward permutation of node N. */
+    private final int[][] _forward;
+
+    /** _inverse[N] is the inverse of _forward[N]. */
+    private final int[][] _inverse;
+
+    /** _dirty[N] is true iff node N is out of date. */
+    private final boolean[] _dirty;
+
+    /** The out-of-date leaves, in _pending[0 .. _numPending - 1]. */
+    private final int[] _pending;
+
+    /** Number of entries in _pending. */
+    private int _numPending;
+}
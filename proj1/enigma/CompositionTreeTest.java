@@ -0,0 +1,81 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CompositionTree class.
+ *  @author Karl Meissner
+ */
+public class CompositionTreeTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Names of the naval rotors used to fill slots. */
+    private static final String[] NAMES = {
+        "I", "II", "III", "IV", "V", "VI", "VII", "VIII", "Beta", "Gamma"
+    };
+
+    /** Return NUM slots holding naval rotors, with slot 0 unused. */
+    private Rotor[] slots(int num) {
+        Rotor[] result = new Rotor[num];
+        for (int i = 1; i < num; ++i) {
+            String name = NAMES[i % NAMES.length];
+            result[i] = new MovingRotor(name,
+                                        new Permutation(NAVALA.get(name),
+                                                        UPPER), "");
+        }
+        return result;
+    }
+
+    /** Check that TREE agrees with passing each character through
+     *  SLOTS[LO .. HI-1] one rotor at a time. */
+    private void checkTree(CompositionTree tree, Rotor[] slots,
+                           int lo, int hi) {
+        tree.update();
+        for (int c = 0; c < UPPER.size(); ++c) {
+            int p = c;
+            for (int i = hi - 1; i >= lo; --i) {
+                p = slots[i].convertForward(p);
+            }
+            assertEquals(msg("tree", "forward of %d", c), p, tree.forward(c));
+            assertEquals(msg("tree", "backward of %d", p), c,
+                         tree.backward(p));
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void emptyTreeTest() {
+        Rotor[] s = slots(1);
+        CompositionTree tree = new CompositionTree(s, 1, 1, UPPER.size());
+        checkTree(tree, s, 1, 1);
+    }
+
+    @Test
+    public void manyRotorTest() {
+        Rotor[] s = slots(24);
+        CompositionTree tree = new CompositionTree(s, 1, 24, UPPER.size());
+        checkTree(tree, s, 1, 24);
+        for (int k = 0; k < 40; ++k) {
+            int i = 1 + (k * 7) % 23;
+            s[i].advance();
+            tree.invalidate(i);
+            if (k % 3 == 0) {
+                s[1 + k % 23].advance();
+                tree.invalidate(1 + k % 23);
+            }
+            assertTrue(tree.stale());
+            checkTree(tree, s, 1, 24);
+            assertFalse(tree.stale());
+        }
+    }
+}
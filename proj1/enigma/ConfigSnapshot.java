@@ -0,0 +1,243 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static enigma.EnigmaException.*;
+
+/** Binary snapshots of configuration files, which a Main (or anything
+ *  else using Main.readMachine) loads by mapping the file into memory
+ *  and copying out tables, instead of scanning text and parsing and
+ *  validating cycles.  A snapshot holds the alphabet, the numbers of
+ *  slots and pawls, and for each rotor its kind, name, permutation table,
+ *  inverse table and notches.  Its header holds MAGIC, VERSION, the
+ *  length of the rest, and a CRC-32 checksum of the rest, so that a
+ *  damaged or out-of-date snapshot is refused rather than misread.
+ *  @author Karl Meissner
+ */
+class ConfigSnapshot {
+
+    /** Write a snapshot of the configuration of M, a machine returned by
+     *  Main.readMachine, to the file named SNAPSHOT. */
+    static void write(Machine m, Path snapshot) {
+        Alphabet alpha = m.alphabet();
+        int n = alpha.size();
+        Collection<Rotor> rotors = m.availableRotors();
+        int size = 4 * Integer.BYTES + 1 + n * Character.BYTES;
+        for (Rotor rotor : rotors) {
+            size += 1 + Integer.BYTES * (2 + 3 * n)
+                + rotor.name().length() * Character.BYTES;
+        }
+        ByteBuffer body = ByteBuffer.allocate(size);
+        body.putInt(n).put((byte) (alpha.isBytes() ? 1 : 0));
+        if (!alpha.isBytes()) {
+            for (int c = 0; c < n; ++c) {
+                body.putChar(alpha.toChar(c));
+            }
+        }
+        body.putInt(m.numRotors()).putInt(m.numPawls()).putInt(rotors.size());
+        for (Rotor rotor : rotors) {
+            putRotor(body, rotor.copy());
+        }
+        body.flip();
+
+        CRC32 crc = new CRC32();
+        crc.update(body.duplicate());
+        ByteBuffer header = ByteBuffer.allocate(HEADER_INTS * Integer.BYTES);
+        header.putInt(MAGIC).putInt(VERSION).putInt(body.limit())
+            .putInt((int) crc.getValue());
+        header.flip();
+        try (FileChannel out =
+                 FileChannel.open(snapshot, BinaryFiles.WRITE_NEW)) {
+            while (header.hasRemaining()) {
+                out.write(header);
+            }
+            while (body.hasRemaining()) {
+                out.write(body);
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", snapshot);
+        }
+    }
+
+    /** Return a machine configured from the snapshot in the file named
+     *  SNAPSHOT, with no rotors inserted, as Main.readMachine would
+     *  return for the configuration file it was made from. */
+    static Machine load(Path snapshot) {
+        try (FileChannel in = FileChannel.open(snapshot)) {
+            MappedByteBuffer map =
+                in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            if (map.limit() < HEADER_INTS * Integer.BYTES
+                || map.getInt() != MAGIC) {
+                throw error("%s is not a configuration snapshot", snapshot);
+            }
+            if (map.getInt() != VERSION) {
+                throw error("%s is a snapshot from another version;"
+                            + " compile its configuration again", snapshot);
+            }
+            int len = map.getInt();
+            int sum = map.getInt();
+            if (len != map.remaining()) {
+                throw error("snapshot %s is truncated", snapshot);
+            }
+            ByteBuffer body = map.slice();
+            CRC32 crc = new CRC32();
+            crc.update(body.duplicate());
+            if ((int) crc.getValue() != sum) {
+                throw error("snapshot %s is damaged", snapshot);
+            }
+            return readMachine(body);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException
+                 | NegativeArraySizeException
+                 | IllegalArgumentException excp) {
+            throw error("snapshot %s is damaged", snapshot);
+        } catch (IOException excp) {
+            throw error("could not read %s", snapshot);
+        }
+    }
+
+    /** Return true iff the file named FILE starts as snapshots do.
+     *  Returns false if FILE cannot be read, so that callers can report
+     *  that as they would for a configuration file. */
+    static boolean isSnapshot(Path file) {
+        try {
+            return BinaryFiles.startsWith(file, MAGIC);
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Append the kind, name, tables and notches of ROTOR, which is mine
+     *  to move, to BODY. */
+    private static void putRotor(ByteBuffer body, Rotor rotor) {
+        Permutation perm = rotor.permutation();
+        int n = perm.size();
+        byte kind = rotor.reflecting() ? REFLECTOR
+            : rotor.rotates() ? MOVING : FIXED;
+        body.put(kind).putInt(rotor.name().length());
+        for (int i = 0; i < rotor.name().length(); ++i) {
+            body.putChar(rotor.name().charAt(i));
+        }
+        for (int k = 0; k < n; ++k) {
+            body.putInt(perm.permute(k));
+        }
+        for (int k = 0; k < n; ++k) {
+            body.putInt(perm.invert(k));
+        }
+        List<Integer> notches = new ArrayList<>();
+        if (kind == MOVING) {
+            for (int k = 0; k < n; ++k) {
+                rotor.set(k);
+                if (rotor.atNotch()) {
+                    notches.add(k);
+                }
+            }
+        }
+        body.putInt(notches.size());
+        for (int k : notches) {
+            body.putInt(k);
+        }
+    }
+
+    /** Return the machine whose description, as written by write, is in
+     *  BODY. */
+    private static Machine readMachine(ByteBuffer body) {
+        int n = body.getInt();
+        Alphabet alpha;
+        if (body.get() != 0) {
+            alpha = Alphabet.bytes();
+            if (n != alpha.size()) {
+                throw error("damaged snapshot");
+            }
+        } else {
+            char[] chars = new char[n];
+            for (int c = 0; c < n; ++c) {
+                chars[c] = body.getChar();
+            }
+            alpha = new Alphabet(new String(chars));
+        }
+        int numRotors = body.getInt();
+        int numPawls = body.getInt();
+        int count = body.getInt();
+        List<Rotor> rotors = new ArrayList<>(count);
+        for (int r = 0; r < count; ++r) {
+            rotors.add(readRotor(body, alpha));
+        }
+        return new Machine(alpha, numRotors, numPawls, rotors);
+    }
+
+    /** Return the rotor with alphabet ALPHA whose description, as written
+     *  by putRotor, is next in BODY. */
+    private static Rotor readRotor(ByteBuffer body, Alphabet alpha) {
+        int n = alpha.size();
+        byte kind = body.get();
+        char[] name = new char[body.getInt()];
+        for (int i = 0; i < name.length; ++i) {
+            name[i] = body.getChar();
+        }
+        int[] forward = new int[n];
+        body.asIntBuffer().get(forward);
+        body.position(body.position() + n * Integer.BYTES);
+        int[] inverse = new int[n];
+        body.asIntBuffer().get(inverse);
+        body.position(body.position() + n * Integer.BYTES);
+        Permutation perm = new Permutation(alpha, forward, inverse);
+        char[] notches = new char[body.getInt()];
+        for (int i = 0; i < notches.length; ++i) {
+            notches[i] = alpha.toChar(body.getInt());
+        }
+        switch (kind) {
+        case REFLECTOR:
+            return new Reflector(new String(name), perm);
+        case FIXED:
+            return new FixedRotor(new String(name), perm);
+        case MOVING:
+            return new MovingRotor(new String(name), perm,
+                                   new String(notches));
+        default:
+            throw error("damaged snapshot");
+        }
+    }
+
+    /** Compile a configuration file into a snapshot, as given by ARGS
+     *  CONFIG SNAPSHOT, where CONFIG is the configuration file and
+     *  SNAPSHOT the file to write.  Main then accepts SNAPSHOT wherever
+     *  it accepts CONFIG. */
+    public static void main(String... args) {
+        try {
+            if (args.length != 2) {
+                throw error("Usage: java enigma.ConfigSnapshot CONFIG"
+                            + " SNAPSHOT");
+            }
+            write(Main.readMachine(args[0]), Paths.get(args[1]));
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** First integer of a snapshot. */
+    static final int MAGIC = 0x454e4353;
+    /** Version of the snapshot format. */
+    static final int VERSION = 1;
+    /** Number of integers at the start of a snapshot: MAGIC, VERSION,
+     *  and the length and CRC-32 of the rest. */
+    private static final int HEADER_INTS = 4;
+    /** Kind of a reflector. */
+    private static final byte REFLECTOR = 'R';
+    /** Kind of a rotor that does not move. */
+    private static final byte FIXED = 'N';
+    /** Kind of a rotor that moves. */
+    private static final byte MOVING = 'M';
+
+}
@@ -0,0 +1,155 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/** The suite of all JUnit tests for the ConfigSnapshot class.
+ *  @author Karl Meissner
+ */
+public class ConfigSnapshotTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A configuration with a reflector, a fixed rotor, and moving rotors
+     *  with one and two notches. */
+    private static final String CONFIG =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ\n 5 3\n"
+        + " I MQ (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+        + " II ME (FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)\n"
+        + " VI MZM (AJQDVLEOZWIYTS) (CGMNHFUX) (BPRK)\n"
+        + " Spin MA (ABCDEFGHIJKLMNOPQRSTUVWXYZ)\n"
+        + " Beta N (ALBEVFCYODJWUGNMQTZSKPR) (HIX)\n"
+        + " B R (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)\n"
+        + "      (RX) (SZ) (TV)\n";
+
+    /** Settings line for the test machine. */
+    private static final String SETTINGS =
+        "* B Beta VI II I AXLE (HQ) (EX) (IP) (TR) (BY)";
+
+    /** A message long enough to move the middle rotors. */
+    private static final String MSG =
+        "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOODMADEOFSLIDINGFOLDING"
+        + "ROSEWOODNEATLYPUTITALLTOGETHERINITSCASEITLAYCOMPACTLYFOLDEDINTO"
+        + "NEARLYNOTHINGBUTHEOPENEDOUTTHEHINGESPUSHEDANDPULLEDTHEJOINTS";
+
+    /** Return the rotors available to M, by name. */
+    private Map<String, Rotor> rotors(Machine m) {
+        Map<String, Rotor> result = new HashMap<>();
+        for (Rotor rotor : m.availableRotors()) {
+            result.put(rotor.name(), rotor);
+        }
+        return result;
+    }
+
+    /** Check that EXPECTED and ACTUAL are rotors of the same kind, with
+     *  the same wiring and notches. */
+    private void checkRotor(Rotor expected, Rotor actual) {
+        assertEquals(expected.getClass(), actual.getClass());
+        Permutation p = expected.permutation();
+        Permutation q = actual.permutation();
+        assertEquals(p.cycles(), q.cycles());
+        for (int k = 0; k < p.size(); ++k) {
+            assertEquals(p.invert(k), q.invert(k));
+            if (expected.rotates()) {
+                expected.set(k);
+                actual.set(k);
+                assertEquals(expected.atNotch(), actual.atNotch());
+            }
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void roundTripTest() throws IOException {
+        Path config = Files.createTempFile("enigma", ".conf");
+        Path snapshot = Files.createTempFile("enigma", ".snap");
+        try {
+            Files.write(config, CONFIG.getBytes());
+            Machine parsed = Main.readMachine(config.toString());
+            ConfigSnapshot.write(parsed, snapshot);
+            assertTrue(ConfigSnapshot.isSnapshot(snapshot));
+            assertFalse(ConfigSnapshot.isSnapshot(config));
+
+            Machine loaded = Main.readMachine(snapshot.toString());
+            assertEquals(parsed.numRotors(), loaded.numRotors());
+            assertEquals(parsed.numPawls(), loaded.numPawls());
+            assertEquals(parsed.alphabet().size(), loaded.alphabet().size());
+            for (int c = 0; c < parsed.alphabet().size(); ++c) {
+                assertEquals(parsed.alphabet().toChar(c),
+                             loaded.alphabet().toChar(c));
+            }
+            Map<String, Rotor> expected = rotors(parsed);
+            Map<String, Rotor> actual = rotors(loaded);
+            assertEquals(expected.keySet(), actual.keySet());
+            for (String name : expected.keySet()) {
+                checkRotor(expected.get(name).copy(),
+                           actual.get(name).copy());
+            }
+
+            Main.applySettings(parsed, SETTINGS);
+            Main.applySettings(loaded, SETTINGS);
+            assertEquals(parsed.convert(MSG), loaded.convert(MSG));
+        } finally {
+            Files.delete(config);
+            Files.delete(snapshot);
+        }
+    }
+
+    @Test
+    public void damagedTest() throws IOException {
+        Path config = Files.createTempFile("enigma", ".conf");
+        Path snapshot = Files.createTempFile("enigma", ".snap");
+        try {
+            Files.write(config, CONFIG.getBytes());
+            ConfigSnapshot.write(Main.readMachine(config.toString()),
+                                 snapshot);
+            byte[] good = Files.readAllBytes(snapshot);
+
+            byte[] bad = good.clone();
+            bad[bad.length / 2] ^= 1;
+            Files.write(snapshot, bad);
+            try {
+                ConfigSnapshot.load(snapshot);
+                fail("loaded a damaged snapshot");
+            } catch (EnigmaException excp) {
+                assertTrue(excp.getMessage().contains("damaged"));
+            }
+
+            bad = good.clone();
+            bad[7] += 1;
+            Files.write(snapshot, bad);
+            try {
+                ConfigSnapshot.load(snapshot);
+                fail("loaded a snapshot of another version");
+            } catch (EnigmaException excp) {
+                assertTrue(excp.getMessage().contains("version"));
+            }
+
+            Files.write(snapshot, Arrays.copyOf(good, 40));
+            try {
+                ConfigSnapshot.load(snapshot);
+                fail("loaded a truncated snapshot");
+            } catch (EnigmaException excp) {
+                assertTrue(excp.getMessage().contains("truncated"));
+            }
+        } finally {
+            Files.delete(config);
+            Files.delete(snapshot);
+        }
+    }
+
+}
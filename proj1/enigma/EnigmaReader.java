@@ -0,0 +1,53 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/** A Reader that supplies the conversion, by a Machine, of the characters
+ *  read from another Reader.  Whitespace that is not in the machine's
+ *  alphabet passes through unchanged (and does not advance the machine),
+ *  so the layout of the text is kept.
+ *  Characters are converted in place in the reader's own buffer, so that
+ *  reading allocates nothing beyond what the underlying Reader does.
+ *  @author Karl Meissner
+ */
+class EnigmaReader extends Reader {
+
+    /** A Reader of the conversion by MACHINE of the characters of IN.
+     *  MACHINE advances as characters are read. */
+    EnigmaReader(Reader in, Machine machine) {
+        super(in);
+        _in = in;
+        _machine = machine;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        int n = _in.read(cbuf, off, len);
+        if (n > 0) {
+            _machine.convertInPlace(cbuf, off, off + n);
+        }
+        return n;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int c = _in.read();
+        return c < 0 ? c : _machine.convertChar((char) c);
+    }
+
+    @Override
+    public boolean ready() throws IOException {
+        return _in.ready();
+    }
+
+    @Override
+    public void close() throws IOException {
+        _in.close();
+    }
+
+    /** The source of the characters to convert. */
+    private final Reader _in;
+    /** The machine that converts them. */
+    private final Machine _machine;
+}
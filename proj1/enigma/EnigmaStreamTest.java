@@ -0,0 +1,172 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Arrays;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the EnigmaReader and EnigmaWriter
+ *  classes.
+ *  @author Karl Meissner
+ */
+public class EnigmaStreamTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A message with assorted whitespace. */
+    private static final String MSG =
+        "FROM HIS SHOULDER HIAWATHA\n  TOOK THE CAMERA\tOF ROSEWOOD\r\n"
+        + "MADE OF SLIDING FOLDING ROSEWOOD\n";
+
+    /** Return a machine built by threeRotorMachine, set up for the tests. */
+    private Machine machine() {
+        Machine m = threeRotorMachine();
+        m.insertRotors(new String[] {"Loren", "Karl", "Anthony"});
+        m.setRotors("XP");
+        m.setPlugboard(new Permutation("(AQ) (EP)", new Alphabet()));
+        return m;
+    }
+
+    /** Return a machine with the byte alphabet, whose rotors turn each
+     *  byte into the one SHIFT past it, for a different SHIFT in each
+     *  slot, and whose reflector swaps each byte with its neighbor. */
+    private Machine byteMachine() {
+        Alphabet alpha = Alphabet.bytes();
+        int[] swap = new int[alpha.size()];
+        for (int k = 0; k < swap.length; ++k) {
+            swap[k] = k ^ 1;
+        }
+        Machine m = new Machine(alpha, 4, 3, Arrays.asList(
+            new Reflector("Refl", new Permutation(swap, alpha)),
+            new MovingRotor("One", shift(alpha, 7), "\0"),
+            new MovingRotor("Two", shift(alpha, 31), "\u0020"),
+            new MovingRotor("Three", shift(alpha, 100), "\t")));
+        m.insertRotors(new String[] {"Refl", "One", "Two", "Three"});
+        m.setRotors("\u001c \n");
+        return m;
+    }
+
+    /** Return the permutation of ALPHA that turns each character into
+     *  the one SHIFT past it. */
+    private Permutation shift(Alphabet alpha, int shift) {
+        int[] table = new int[alpha.size()];
+        for (int k = 0; k < table.length; ++k) {
+            table[k] = (k + shift) % table.length;
+        }
+        return new Permutation(table, alpha);
+    }
+
+    /** Return all the characters read from IN, reading LEN at a time
+     *  (or one at a time if LEN is 1). */
+    private String readAll(Reader in, int len) throws IOException {
+        StringBuilder result = new StringBuilder();
+        char[] buf = new char[len + 3];
+        while (true) {
+            if (len == 1) {
+                int c = in.read();
+                if (c < 0) {
+                    break;
+                }
+                result.append((char) c);
+            } else {
+                int n = in.read(buf, 3, len);
+                if (n < 0) {
+                    break;
+                }
+                result.append(buf, 3, n);
+            }
+        }
+        return result.toString();
+    }
+
+    /** Check that RESULT is the conversion of MSG, with MSG's
+     *  whitespace in place. */
+    private void checkConversion(String result) {
+        assertEquals(machine().convert(MSG), result.replaceAll("\\s", ""));
+        assertEquals(MSG.length(), result.length());
+        for (int i = 0; i < MSG.length(); ++i) {
+            if (Character.isWhitespace(MSG.charAt(i))) {
+                assertEquals(MSG.charAt(i), result.charAt(i));
+            }
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void readerTest() throws IOException {
+        for (int len : new int[] {1, 7, 1000}) {
+            Reader in = new EnigmaReader(new StringReader(MSG), machine());
+            checkConversion(readAll(in, len));
+            in.close();
+        }
+    }
+
+    @Test
+    public void writerTest() throws IOException {
+        StringWriter sink = new StringWriter();
+        Writer out = new EnigmaWriter(sink, machine());
+        out.write(MSG, 0, 10);
+        out.write(MSG.toCharArray(), 10, 20);
+        for (int i = 30; i < 40; ++i) {
+            out.write(MSG.charAt(i));
+        }
+        out.write(MSG.substring(40));
+        out.close();
+        checkConversion(sink.toString());
+    }
+
+    @Test
+    public void roundTripTest() throws IOException {
+        StringWriter sink = new StringWriter();
+        Writer out = new EnigmaWriter(sink, machine());
+        out.write(MSG);
+        out.flush();
+        Reader in = new EnigmaReader(new StringReader(sink.toString()),
+                                     machine());
+        assertEquals(MSG, readAll(in, 16));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void badCharacterTest() throws IOException {
+        Reader in = new EnigmaReader(new StringReader("ABC!"), machine());
+        readAll(in, 10);
+    }
+
+    @Test
+    public void byteRoundTripTest() throws IOException {
+        char[] all = new char[256];
+        for (int k = 0; k < all.length; ++k) {
+            all[k] = (char) k;
+        }
+        String msg = new String(all);
+        StringWriter sink = new StringWriter();
+        Writer out = new EnigmaWriter(sink, byteMachine());
+        out.write(msg);
+        out.flush();
+        String cipher = sink.toString();
+        assertEquals(byteMachine().convert(msg), cipher);
+        for (char ch : " \t\n\r\u001c\u001f".toCharArray()) {
+            assertTrue(cipher.charAt(ch) != ch);
+        }
+        Reader in = new EnigmaReader(new StringReader(cipher),
+                                     byteMachine());
+        assertEquals(msg, readAll(in, 1));
+        in = new EnigmaReader(new StringReader(cipher), byteMachine());
+        assertEquals(msg, readAll(in, 16));
+    }
+
+}
@@ -0,0 +1,74 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/** A Writer that writes the conversion, by a Machine, of the characters
+ *  written to it to another Writer.  Whitespace that is not in the
+ *  machine's alphabet passes through unchanged (and does not advance the
+ *  machine), so the layout of the text is kept.  Characters are copied
+ *  into a buffer allocated once and converted there, so that writing
+ *  allocates nothing beyond what the underlying Writer does.
+ *  @author Karl Meissner
+ */
+class EnigmaWriter extends Writer {
+
+    /** A Writer of the conversion by MACHINE of what is written to it,
+     *  to OUT.  MACHINE advances as characters are written. */
+    EnigmaWriter(Writer out, Machine machine) {
+        super(out);
+        _out = out;
+        _machine = machine;
+        _buffer = new char[LineReader.BUFFER_SIZE];
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = Math.min(len, _buffer.length);
+            System.arraycopy(cbuf, off, _buffer, 0, n);
+            flushBuffer(n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = Math.min(len, _buffer.length);
+            str.getChars(off, off + n, _buffer, 0);
+            flushBuffer(n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        _out.write(_machine.convertChar((char) c));
+    }
+
+    @Override
+    public void flush() throws IOException {
+        _out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        _out.close();
+    }
+
+    /** Convert the first N characters of _buffer and write them to _out. */
+    private void flushBuffer(int n) throws IOException {
+        _machine.convertInPlace(_buffer, 0, n);
+        _out.write(_buffer, 0, n);
+    }
+
+    /** The destination of the converted characters. */
+    private final Writer _out;
+    /** The machine that converts them. */
+    private final Machine _machine;
+    /** Characters being converted. */
+    private final char[] _buffer;
+}
@@ -0,0 +1,14 @@
+package enigma;
+
+/** A measure of how much a text looks like plaintext, for statistical
+ *  attacks on ciphertext.  Higher scores are better.  A Fitness may be
+ *  shared among threads.
+ *  @author Karl Meissner
+ */
+interface Fitness {
+
+    /** Return the fitness of TEXT[0 .. LEN-1], which are indices in the
+     *  alphabet being scored. */
+    double score(int[] text, int len);
+
+}
@@ -14,4 +14,15 @@ class FixedRotor extends Rotor {
     FixedRotor(String name, Permutation perm) {
         super(name, perm);
     }
+
+    /** A copy of ORIGINAL that moves independently of it. */
+    FixedRotor(FixedRotor original) {
+        super(original);
+    }
+
+    /** Return a copy of me. */
+    @Override
+    Rotor copy() {
+        return new FixedRotor(this);
+    }
 }
@@ -0,0 +1,467 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import static enigma.EnigmaException.*;
+
+/** A ciphertext-only attack.  First, every position of every rotor order
+ *  searched is tried with an empty plugboard, and the candidates whose
+ *  decryptions have the highest index of coincidence are kept, since a
+ *  decryption under the right rotors has letter frequencies like those
+ *  of plaintext even with the plugboard wrong.  Then, for each of those,
+ *  the plugboard is found by hill-climbing: a pair of letters is
+ *  plugged together (or unplugged) whenever that improves the Fitness of
+ *  the decryption, until no single change does.  Each climb is repeated
+ *  from several random plugboards, and all climbs run concurrently,
+ *  sharing the best result so far.  A search can be stopped early, and
+ *  stops by itself once a target score is reached.
+ *  @author Karl Meissner
+ */
+class HillClimber {
+
+    /** Print the best settings found for the ciphertext in the file named
+     *  ARGS[1], using the machine described by the configuration file
+     *  ARGS[0] and the n-gram statistics in the file named ARGS[2], which
+     *  is either a table written by NgramFitness or sample plaintext.  If
+     *  further ARGS are given, they name the one rotor order to search.
+     *  Improvements and the rate of decryption are reported to the
+     *  standard error as the search goes.  Exits normally if there are no
+     *  errors; otherwise with code 1. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 3) {
+                throw error("Usage: java enigma.HillClimber CONFIG CIPHERTEXT"
+                            + " CORPUS [ROTOR...]");
+            }
+            Machine machine = Main.readMachine(args[0]);
+            String ciphertext = read(args[1]);
+            Path corpus = Paths.get(args[2]);
+            Fitness fitness = NgramFitness.isTable(corpus)
+                ? NgramFitness.load(corpus, machine.alphabet())
+                : NgramFitness.fromFile(corpus, machine.alphabet(), NGRAM);
+            HillClimber climber =
+                new HillClimber(machine, ciphertext, fitness);
+            List<String[]> orders = machine.rotorOrders();
+            if (args.length > 3) {
+                orders = new ArrayList<>();
+                orders.add(Arrays.copyOfRange(args, 3, args.length));
+            }
+            ForkJoinPool pool = new ForkJoinPool();
+            try {
+                Result best = climber.search(orders, pool, KEEP, RESTARTS,
+                    new Random().nextLong(), result ->
+                    System.err.printf("%s  (%.1f, %.0f decryptions/s)%n",
+                                      result, result.score(),
+                                      climber.decryptionsPerSecond()));
+                System.out.println(best);
+            } finally {
+                pool.shutdown();
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return the contents of the file named NAME. */
+    private static String read(String name) {
+        try {
+            return new String(Files.readAllBytes(Paths.get(name)));
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Settings found by a search, with their score. */
+    static class Result {
+        /** Settings with rotors named ROTORS, positions POSITIONS (as for
+         *  Machine.setRotors) and plugboard PLUGBOARD (as for Permutation),
+         *  whose decryption has fitness SCORE. */
+        Result(String[] rotors, String positions, String plugboard,
+               double score) {
+            _rotors = rotors.clone();
+            _positions = positions;
+            _plugboard = plugboard;
+            _score = score;
+        }
+
+        /** Return the names of my rotors, reflector first. */
+        String[] rotors() {
+            return _rotors.clone();
+        }
+
+        /** Return my rotor positions. */
+        String positions() {
+            return _positions;
+        }
+
+        /** Return my plugboard. */
+        String plugboard() {
+            return _plugboard;
+        }
+
+        /** Return the fitness of my decryption. */
+        double score() {
+            return _score;
+        }
+
+        /** Return me as a settings line, as Main reads them. */
+        @Override
+        public String toString() {
+            String line = "* " + String.join(" ", _rotors) + " " + _positions;
+            return _plugboard.isEmpty() ? line : line + " " + _plugboard;
+        }
+
+        /** Names of my rotors. */
+        private final String[] _rotors;
+        /** Positions of my rotors. */
+        private final String _positions;
+        /** My plugboard. */
+        private final String _plugboard;
+        /** Fitness of my decryption. */
+        private final double _score;
+    }
+
+    /** An attack on CIPHERTEXT (ignoring whitespace that the machine
+     *  skips; see Alphabet.skips) using the rotors available to MACHINE,
+     *  whose own rotors, settings and plugboard are ignored, and scoring
+     *  plugboards by FITNESS. */
+    HillClimber(Machine machine, String ciphertext, Fitness fitness) {
+        _machine = machine;
+        _alphabet = machine.alphabet();
+        _size = _alphabet.size();
+        _ciphertext = ciphertext;
+        _fitness = fitness;
+        _cipher = _alphabet.indices(ciphertext);
+        if (_cipher.length < 2) {
+            throw error("ciphertext too short");
+        }
+    }
+
+    /** Stop once a result scores at least TARGET. */
+    void stopAt(double target) {
+        _target = target;
+    }
+
+    /** Stop the search in progress as soon as possible.  It returns the
+     *  best result found so far. */
+    void stop() {
+        _stopped = true;
+    }
+
+    /** Return the best result so far, or null if there is none. */
+    Result best() {
+        return _best.get();
+    }
+
+    /** Return the number of trial decryptions done so far. */
+    long decryptions() {
+        return _decryptions.get();
+    }
+
+    /** Return the number of trial decryptions per second since the start of
+     *  the latest search. */
+    double decryptionsPerSecond() {
+        double seconds = (System.nanoTime() - _startTime) * 1e-9;
+        return seconds <= 0 ? 0 : _decryptions.get() / seconds;
+    }
+
+    /** Search each of ORDERS on POOL, keeping the KEEP best candidates by
+     *  index of coincidence and climbing from RESTARTS plugboards for
+     *  each (the first of them empty, the rest random, drawn with SEED).
+     *  Pass each new best result to IMPROVED, one call at a time, and
+     *  return the best result (null if stopped before there was one). */
+    Result search(List<String[]> orders, ForkJoinPool pool, int keep,
+                  int restarts, long seed, Consumer<Result> improved) {
+        if (keep < 1 || restarts < 1) {
+            throw error("nothing to search");
+        }
+        _stopped = false;
+        _best.set(null);
+        _decryptions.set(0);
+        _startTime = System.nanoTime();
+        PriorityQueue<Candidate> top = new PriorityQueue<>();
+        List<ForkJoinTask<List<Candidate>>> rankings = new ArrayList<>();
+        for (String[] order : orders) {
+            rankings.add(pool.submit(() -> rank(order, keep)));
+        }
+        for (ForkJoinTask<List<Candidate>> ranking : rankings) {
+            for (Candidate c : ranking.join()) {
+                offer(top, c, keep);
+            }
+        }
+        List<ForkJoinTask<?>> climbs = new ArrayList<>();
+        Random seeds = new Random(seed);
+        for (Candidate c : top) {
+            int[][] scramblers = scramblers(c);
+            for (int r = 0; r < restarts; ++r) {
+                boolean empty = r == 0;
+                Random random = new Random(seeds.nextLong());
+                climbs.add(pool.submit(() ->
+                    climb(c, scramblers, empty, random, improved)));
+            }
+        }
+        for (ForkJoinTask<?> climb : climbs) {
+            climb.join();
+        }
+        return _best.get();
+    }
+
+    /** A rotor order and positions, scored by index of coincidence. */
+    private static class Candidate implements Comparable<Candidate> {
+        /** A candidate with rotors ORDER at POSITIONS (as for
+         *  Machine.positions), scoring IOC. */
+        Candidate(String[] order, int[] positions, double ioc) {
+            this.order = order;
+            this.positions = positions;
+            this.ioc = ioc;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            return Double.compare(ioc, other.ioc);
+        }
+
+        /** Names of the rotors. */
+        private final String[] order;
+        /** Positions of the rotors. */
+        private final int[] positions;
+        /** Index of coincidence of the decryption. */
+        private final double ioc;
+    }
+
+    /** Add C to TOP, a queue of at most KEEP candidates whose head is
+     *  the worst, if it is among the best KEEP. */
+    private static void offer(PriorityQueue<Candidate> top, Candidate c,
+                              int keep) {
+        if (top.size() < keep) {
+            top.add(c);
+        } else if (c.compareTo(top.peek()) > 0) {
+            top.poll();
+            top.add(c);
+        }
+    }
+
+    /** Return a machine with rotors named ORDER, an empty plugboard, and
+     *  rotors that are not shared with any other machine. */
+    private Machine machineFor(String[] order) {
+        Machine shared = new Machine(_alphabet, _machine.numRotors(),
+                                     _machine.numPawls(),
+                                     _machine.availableRotors());
+        shared.insertRotors(order);
+        Machine result = shared.copy();
+        result.setPlugboard(new Permutation("", _alphabet));
+        return result;
+    }
+
+    /** Return the KEEP best candidates with rotors ORDER by the index of
+     *  coincidence of their decryptions with an empty plugboard. */
+    private List<Candidate> rank(String[] order, int keep) {
+        TrialDecryptor trials =
+            new TrialDecryptor(machineFor(order), _ciphertext);
+        PriorityQueue<Candidate> top = new PriorityQueue<>();
+        int[] counts = new int[TrialDecryptor.LANES * _size];
+        int last = _cipher.length - 1;
+        double pairs = (double) _cipher.length * last;
+        long[] first = new long[1];
+        TrialDecryptor.Predicate coincidences = (t, plain, alive) -> {
+            if (t == 0) {
+                Arrays.fill(counts, 0);
+            }
+            for (long rest = alive; rest != 0; rest &= rest - 1) {
+                int l = Long.numberOfTrailingZeros(rest);
+                counts[l * _size + plain[l]] += 1;
+            }
+            if (t == last) {
+                for (long rest = alive; rest != 0; rest &= rest - 1) {
+                    int l = Long.numberOfTrailingZeros(rest);
+                    long sum = 0;
+                    for (int c = l * _size; c < (l + 1) * _size; ++c) {
+                        sum += (long) counts[c] * (counts[c] - 1);
+                    }
+                    double ioc = sum / pairs;
+                    if (top.size() < keep || ioc > top.peek().ioc) {
+                        offer(top, new Candidate(order,
+                            trials.positions(first[0] + l), ioc), keep);
+                    }
+                }
+            }
+            return alive;
+        };
+        for (first[0] = 0; first[0] < trials.candidates() && !_stopped;
+             first[0] += TrialDecryptor.LANES) {
+            int count = (int) Math.min(TrialDecryptor.LANES,
+                                       trials.candidates() - first[0]);
+            trials.evaluate(first[0], count, coincidences);
+            _decryptions.addAndGet(count);
+        }
+        return new ArrayList<>(top);
+    }
+
+    /** Return the permutations performed by the rotors of C (without a
+     *  plugboard) at each position of the ciphertext. */
+    private int[][] scramblers(Candidate c) {
+        Machine m = machineFor(c.order);
+        m.restorePositions(c.positions);
+        int[][] result = new int[_cipher.length][_size];
+        for (int[] scrambler : result) {
+            scrambler[0] = m.convert(0);
+            for (int x = 1; x < _size; ++x) {
+                scrambler[x] = m.scramble(x);
+            }
+        }
+        return result;
+    }
+
+    /** Find a plugboard for C by hill-climbing, where SCRAMBLERS are as
+     *  returned by scramblers(C).  Start from an empty plugboard if
+     *  EMPTY, and otherwise from one with random pairs drawn from
+     *  RANDOM.  Record the result if it is the best so far, passing it to
+     *  IMPROVED. */
+    private void climb(Candidate c, int[][] scramblers, boolean empty,
+                       Random random, Consumer<Result> improved) {
+        int[] plug = new int[_size];
+        for (int x = 0; x < _size; ++x) {
+            plug[x] = x;
+        }
+        for (int k = 0; !empty && k < RANDOM_PAIRS; ++k) {
+            connect(plug, random.nextInt(_size), random.nextInt(_size));
+        }
+        int[] text = new int[_cipher.length];
+        int[] trial = new int[_size];
+        double score = decrypt(scramblers, plug, text);
+        long tried = 1;
+        boolean better = true;
+        while (better && !_stopped) {
+            better = false;
+            for (int a = 0; a < _size; ++a) {
+                for (int b = a + 1; b < _size; ++b) {
+                    System.arraycopy(plug, 0, trial, 0, _size);
+                    if (trial[a] == b) {
+                        connect(trial, a, a);
+                        connect(trial, b, b);
+                    } else {
+                        connect(trial, a, b);
+                    }
+                    double s = decrypt(scramblers, trial, text);
+                    tried += 1;
+                    if (s > score) {
+                        score = s;
+                        System.arraycopy(trial, 0, plug, 0, _size);
+                        better = true;
+                    }
+                }
+            }
+            _decryptions.addAndGet(tried);
+            tried = 0;
+        }
+        record(new Result(c.order, positions(c.positions), plugboard(plug),
+                          score), improved);
+    }
+
+    /** Make PLUG, a plugboard given as an involution, pair A with B (or
+     *  leave A unplugged if A == B), unplugging their former partners. */
+    private static void connect(int[] plug, int a, int b) {
+        plug[plug[a]] = plug[a];
+        plug[plug[b]] = plug[b];
+        plug[a] = b;
+        plug[b] = a;
+    }
+
+    /** Decrypt my ciphertext into TEXT with SCRAMBLERS and plugboard
+     *  PLUG, and return its fitness. */
+    private double decrypt(int[][] scramblers, int[] plug, int[] text) {
+        for (int t = 0; t < text.length; ++t) {
+            text[t] = plug[scramblers[t][plug[_cipher[t]]]];
+        }
+        return _fitness.score(text, text.length);
+    }
+
+    /** Make RESULT the best result if it is better, passing it to
+     *  IMPROVED if so, and stop if it reaches the target. */
+    private void record(Result result, Consumer<Result> improved) {
+        synchronized (_best) {
+            Result best = _best.get();
+            if (best != null && best.score() >= result.score()) {
+                return;
+            }
+            _best.set(result);
+            if (improved != null) {
+                improved.accept(result);
+            }
+        }
+        if (result.score() >= _target) {
+            stop();
+        }
+    }
+
+    /** Return POSNS as a string of characters. */
+    private String positions(int[] posns) {
+        StringBuilder result = new StringBuilder();
+        for (int p : posns) {
+            result.append(_alphabet.toChar(p));
+        }
+        return result.toString();
+    }
+
+    /** Return the pairs of PLUG in cycle notation. */
+    private String plugboard(int[] plug) {
+        StringBuilder result = new StringBuilder();
+        for (int a = 0; a < _size; ++a) {
+            if (plug[a] > a) {
+                if (result.length() > 0) {
+                    result.append(' ');
+                }
+                result.append('(').append(_alphabet.toChar(a))
+                    .append(_alphabet.toChar(plug[a])).append(')');
+            }
+        }
+        return result.toString();
+    }
+
+    /** Length of the n-grams used by main. */
+    static final int NGRAM = 3;
+    /** Number of candidates main keeps from each search. */
+    static final int KEEP = 20;
+    /** Number of climbs main makes for each candidate. */
+    static final int RESTARTS = 4;
+    /** Number of pairs in a random starting plugboard. */
+    static final int RANDOM_PAIRS = 5;
+
+    /** The machine whose rotors are searched. */
+    private final Machine _machine;
+    /** Its alphabet. */
+    private final Alphabet _alphabet;
+    /** Size of the alphabet. */
+    private final int _size;
+    /** The ciphertext. */
+    private final String _ciphertext;
+    /** The ciphertext, as alphabet indices, less whitespace. */
+    private final int[] _cipher;
+    /** Scores decryptions. */
+    private final Fitness _fitness;
+    /** Score at which to stop. */
+    private volatile double _target = Double.POSITIVE_INFINITY;
+    /** True iff the current search should stop. */
+    private volatile boolean _stopped;
+    /** Best result so far. */
+    private final AtomicReference<Result> _best = new AtomicReference<>();
+    /** Number of trial decryptions so far. */
+    private final AtomicLong _decryptions = new AtomicLong();
+    /** Value of System.nanoTime when the latest search started. */
+    private volatile long _startTime = System.nanoTime();
+}
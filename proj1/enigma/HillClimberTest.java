@@ -0,0 +1,96 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the HillClimber and NgramFitness
+ *  classes.
+ *  @author Karl Meissner
+ */
+public class HillClimberTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Sample plaintext. */
+    static final String CORPUS =
+        "It was the best of times, it was the worst of times, it was the "
+        + "age of wisdom, it was the age of foolishness, it was the epoch of "
+        + "belief, it was the epoch of incredulity, it was the season of "
+        + "Light, it was the season of Darkness, it was the spring of hope, "
+        + "it was the winter of despair, we had everything before us, we had "
+        + "nothing before us, we were all going direct to Heaven, we were "
+        + "all going direct the other way - in short, the period was so far "
+        + "like the present period, that some of its noisiest authorities "
+        + "insisted on its being received, for good or for evil, in the "
+        + "superlative degree of comparison only.  There were a king with a "
+        + "large jaw and a queen with a plain face, on the throne of "
+        + "England; there were a king with a large jaw and a queen with a "
+        + "fair face, on the throne of France.  In both countries it was "
+        + "clearer than crystal to the lords of the State preserves of "
+        + "loaves and fishes, that things in general were settled for ever.";
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void fitnessTest() {
+        NgramFitness fitness =
+            NgramFitness.fromText(new Alphabet(), 3, CORPUS);
+        assertEquals(3, fitness.n());
+        Alphabet alpha = new Alphabet();
+        int[] english = new int[9], noise = new int[9];
+        for (int i = 0; i < 9; ++i) {
+            english[i] = alpha.toInt("WASTHEAGE".charAt(i));
+            noise[i] = alpha.toInt("QZXJKQVXZ".charAt(i));
+        }
+        assertTrue(fitness.score(english, 9) > fitness.score(noise, 9));
+        assertEquals(0.0, fitness.score(english, 2), 0.0);
+    }
+
+    @Test
+    public void climbTest() {
+        Machine machine = threeRotorMachine();
+        machine.insertRotors(new String[] {"Loren", "Anthony", "Rachel"});
+        machine.setPlugboard(new Permutation("(AQ) (HT)", new Alphabet()));
+        machine.setRotors("KD");
+        String plain = CORPUS.substring(0, 600).replaceAll("[^A-Za-z]", "")
+            .toUpperCase();
+        String cipher = machine.convert(plain);
+        HillClimber climber = new HillClimber(
+            machine, cipher, NgramFitness.fromText(new Alphabet(), 3, CORPUS));
+        ForkJoinPool pool = new ForkJoinPool(2);
+        HillClimber.Result best =
+            climber.search(machine.rotorOrders(), pool, 5, 2, 1L, null);
+        pool.shutdown();
+        assertEquals("* Loren Anthony Rachel KD (AQ) (HT)", best.toString());
+        assertTrue(climber.decryptions() > 6 * 26 * 26);
+        assertTrue(climber.decryptionsPerSecond() > 0);
+    }
+
+    @Test
+    public void stopTest() {
+        Machine machine = threeRotorMachine();
+        HillClimber climber = new HillClimber(
+            machine, "QWERTYUIOPASDFGHJKL",
+            NgramFitness.fromText(new Alphabet(), 2, CORPUS));
+        climber.stopAt(Double.NEGATIVE_INFINITY);
+        ForkJoinPool pool = new ForkJoinPool(2);
+        HillClimber.Result best =
+            climber.search(machine.rotorOrders(), pool, 3, 3,
+                           new Random().nextLong(), null);
+        pool.shutdown();
+        assertNotNull(best);
+        assertEquals(best, climber.best());
+    }
+
+}
@@ -0,0 +1,109 @@
+package enigma;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static enigma.EnigmaException.*;
+
+/** A thread-safe record of how long a series of operations took, kept
+ *  as counts in buckets whose widths grow with the times they hold: each
+ *  power of two is divided into SUB_BUCKETS buckets, so that a reported
+ *  percentile is within about 1/SUB_BUCKETS of the true one.  Recording
+ *  a time allocates nothing and takes no lock.
+ *  @author Karl Meissner
+ */
+class LatencyHistogram {
+
+    /** Log (base 2) of the number of buckets per power of two. */
+    static final int SUB_BITS = 3;
+
+    /** Number of buckets per power of two. */
+    static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    /** Record one operation that took NANOS nanoseconds (negative
+     *  times count as 0). */
+    void record(long nanos) {
+        long t = Math.max(0, nanos);
+        _counts.incrementAndGet(bucket(t));
+        _total.incrementAndGet();
+        _max.accumulateAndGet(t, Math::max);
+    }
+
+    /** Return the number of operations recorded. */
+    long count() {
+        return _total.get();
+    }
+
+    /** Return the longest time recorded, or 0 if there are none. */
+    long max() {
+        return _max.get();
+    }
+
+    /** Return a time (in nanoseconds) at least as long as P percent of
+     *  the recorded ones, where 0 < P <= 100, or 0 if there are none.
+     *  The result is the upper end of the bucket holding that
+     *  percentile, but no more than max(). */
+    long percentile(double p) {
+        if (p <= 0 || p > 100) {
+            throw error("percentile must be in (0, 100]");
+        }
+        long total = 0;
+        for (int k = 0; k < BUCKETS; ++k) {
+            total += _counts.get(k);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(p / 100 * total));
+        long seen = 0;
+        for (int k = 0; k < BUCKETS; ++k) {
+            seen += _counts.get(k);
+            if (seen >= rank) {
+                return Math.min(upperBound(k), max());
+            }
+        }
+        return max();
+    }
+
+    /** Return a one-line summary of the 50th, 90th and 99th percentiles
+     *  and the maximum, in microseconds. */
+    String summary() {
+        return String.format("p50 %.1f  p90 %.1f  p99 %.1f  max %.1f",
+                             percentile(50) / 1e3, percentile(90) / 1e3,
+                             percentile(99) / 1e3, max() / 1e3);
+    }
+
+    /** Return the index of the bucket holding the time T >= 0. */
+    static int bucket(long t) {
+        if (t < SUB_BUCKETS) {
+            return (int) t;
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(t);
+        int shift = exp - SUB_BITS;
+        return ((shift + 1) << SUB_BITS)
+            | (int) ((t >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /** Return the longest time that falls in bucket K. */
+    static long upperBound(int k) {
+        if (k < SUB_BUCKETS) {
+            return k;
+        }
+        int shift = (k >>> SUB_BITS) - 1;
+        long lower = (long) (SUB_BUCKETS + (k & (SUB_BUCKETS - 1))) << shift;
+        return lower + (1L << shift) - 1;
+    }
+
+    /** Number of buckets, enough for any non-negative long. */
+    private static final int BUCKETS = (64 - SUB_BITS) << SUB_BITS;
+
+    /** Number of times recorded in each bucket. */
+    private final AtomicLongArray _counts = new AtomicLongArray(BUCKETS);
+
+    /** Number of times recorded. */
+    private final AtomicLong _total = new AtomicLong();
+
+    /** Longest time recorded. */
+    private final AtomicLong _max = new AtomicLong();
+
+}
@@ -0,0 +1,153 @@
+package enigma;
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+import static enigma.EnigmaException.*;
+
+/** A source of lines of text read from a channel through fixed, reusable
+ *  byte and character buffers.
+ *  @author Karl Meissner
+ */
+class LineReader {
+
+    /** A reader of the text in IN, decoded with the platform's default
+     *  character set. */
+    LineReader(ReadableByteChannel in) {
+        _in = in;
+        _decoder = Charset.defaultCharset().newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        _bytes = ByteBuffer.allocate(BUFFER_SIZE);
+        _chars = CharBuffer.allocate(BUFFER_SIZE);
+        _chars.flip();
+    }
+
+    /** Return the next line, without its line terminator (either "\n" or
+     *  "\r\n"), or null if there are no more lines. */
+    String readLine() {
+        _line.setLength(0);
+        boolean any = false;
+        while (true) {
+            char[] buf = _chars.array();
+            int start = _chars.position(), end = _chars.limit();
+            for (int i = start; i < end; ++i) {
+                if (buf[i] == '\n') {
+                    _line.append(buf, start, i - start);
+                    _chars.position(i + 1);
+                    return finishLine();
+                }
+            }
+            _line.append(buf, start, end - start);
+            any |= end > start;
+            _chars.position(end);
+            if (!fill()) {
+                return any ? finishLine() : null;
+            }
+        }
+    }
+
+    /** Return the next character without consuming it, or -1 if there
+     *  are no more. */
+    int peek() {
+        if (!_chars.hasRemaining() && !fill()) {
+            return -1;
+        }
+        return _chars.get(_chars.position());
+    }
+
+    /** Read up to LEN characters of the current line into BUF, starting
+     *  at BUF[OFF], and return how many were read.  Returns -1, having
+     *  consumed the line terminator, once the line is used up, so that a
+     *  line of any length can be read in pieces of bounded size.  A
+     *  carriage return before the newline is treated as part of the
+     *  line. */
+    int readSegment(char[] buf, int off, int len) {
+        if (!_chars.hasRemaining() && !fill()) {
+            return -1;
+        }
+        char[] src = _chars.array();
+        int start = _chars.position();
+        int end = Math.min(_chars.limit(), start + len);
+        int i;
+        for (i = start; i < end && src[i] != '\n'; ++i) {
+            buf[off + i - start] = src[i];
+        }
+        if (i == start && i < end) {
+            _chars.position(i + 1);
+            return -1;
+        }
+        _chars.position(i);
+        return i - start;
+    }
+
+    /** Return the contents of _line, less any trailing carriage return. */
+    private String finishLine() {
+        int len = _line.length();
+        if (len > 0 && _line.charAt(len - 1) == '\r') {
+            _line.setLength(len - 1);
+        }
+        return _line.toString();
+    }
+
+    /** Refill _chars, which must be empty, with at least one character
+     *  from my channel.  Return false if there are none left. */
+    private boolean fill() {
+        try {
+            _chars.clear();
+            while (_chars.position() == 0 && !_eof) {
+                int n = _in.read(_bytes);
+                _bytes.flip();
+                if (n < 0) {
+                    _eof = true;
+                    _decoder.decode(_bytes, _chars, true);
+                    _decoder.flush(_chars);
+                } else {
+                    _decoder.decode(_bytes, _chars, false);
+                }
+                _bytes.compact();
+            }
+            _chars.flip();
+            return _chars.hasRemaining();
+        } catch (IOException excp) {
+            throw error("could not read input: %s", excp.getMessage());
+        }
+    }
+
+    /** Close my channel. */
+    void close() {
+        try {
+            _in.close();
+        } catch (IOException excp) {
+            throw error("could not close input: %s", excp.getMessage());
+        }
+    }
+
+    /** Size of my byte and character buffers. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** Source of my bytes. */
+    private final ReadableByteChannel _in;
+
+    /** Converts bytes from _in to characters. */
+    private final CharsetDecoder _decoder;
+
+    /** Bytes read from _in and not yet decoded. */
+    private final ByteBuffer _bytes;
+
+    /** Characters decoded and not yet returned, between position and
+     *  limit. */
+    private final CharBuffer _chars;
+
+    /** Accumulates the line being read. */
+    private final StringBuilder _line = new StringBuilder();
+
+    /** True once _in has reported end of input. */
+    private boolean _eof;
+}
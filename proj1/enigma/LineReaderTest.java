@@ -0,0 +1,61 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.channels.Channels;
+
+/** The suite of all JUnit tests for the LineReader class.
+ *  @author Karl Meissner
+ */
+public class LineReaderTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a LineReader reading TEXT. */
+    private LineReader reader(String text) {
+        return new LineReader(Channels.newChannel(
+            new ByteArrayInputStream(text.getBytes())));
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void readLineTest() {
+        LineReader r = reader("* B\r\nHELLO\n\nWORLD");
+        assertEquals('*', r.peek());
+        assertEquals("* B", r.readLine());
+        assertEquals("HELLO", r.readLine());
+        assertEquals("", r.readLine());
+        assertEquals("WORLD", r.readLine());
+        assertEquals(-1, r.peek());
+        assertNull(r.readLine());
+    }
+
+    @Test
+    public void readSegmentTest() {
+        StringBuilder longLine = new StringBuilder();
+        for (int i = 0; i < 3 * LineReader.BUFFER_SIZE + 5; ++i) {
+            longLine.append((char) ('A' + i % 26));
+        }
+        LineReader r = reader(longLine + "\nNEXT\n");
+        StringBuilder got = new StringBuilder();
+        char[] buf = new char[7];
+        int n;
+        while ((n = r.readSegment(buf, 0, buf.length)) >= 0) {
+            assertTrue(n > 0);
+            got.append(buf, 0, n);
+        }
+        assertEquals(longLine.toString(), got.toString());
+        assertEquals('N', r.peek());
+        assertEquals("NEXT", r.readLine());
+        assertEquals(-1, r.readSegment(buf, 0, buf.length));
+    }
+}
@@ -1,8 +1,15 @@
 package enigma;
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
 
-import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import static enigma.EnigmaException.*;
 
@@ -21,6 +28,28 @@ class Machine {
         _pawls = pawls;
         _rotors = new Rotor[_numRotors];
         _allRotors = allRotors;
+        _plugboard = new Permutation("", alpha);
+        _coreEnd = Math.max(1, _numRotors - UNCACHED_ROTORS);
+        _core = new int[alpha.size()];
+        _coreTree = new CompositionTree(_rotors, 1, _coreEnd, alpha.size());
+    }
+
+    /** Return a machine with the same rotors, settings and plugboard as
+     *  I have, whose rotors move independently of mine. */
+    Machine copy() {
+        Machine result = new Machine(_alphabet, _numRotors, _pawls,
+                                     _allRotors);
+        for (int i = 0; i < _numRotors; ++i) {
+            result._rotors[i] = _rotors[i].copy();
+        }
+        result._plugboard = _plugboard;
+        result._codebooks = _codebooks;
+        return result;
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
     }
 
     /** Return the number of rotor slots I have. */
@@ -33,39 +62,93 @@ class Machine {
         return _pawls;
     }
 
-    /** Set my rotor slots to the rotors named ROTORS from my set of
-     *  available rotors (ROTORS[0] names the reflector).
-     *  Initially, all rotors are set at their 0 setting. */
+    /** Return all the rotors available for my slots. */
+    Collection<Rotor> availableRotors() {
+        return _allRotors;
+    }
+
+    /** Return true iff rotor R may go in slot K: a reflector in slot 0,
+     *  fixed rotors up to my moving rotors, and moving rotors after. */
+    boolean fits(Rotor r, int k) {
+        if (k == 0) {
+            return r.reflecting();
+        } else if (k < _numRotors - _pawls) {
+            return !r.reflecting() && !r.rotates();
+        } else {
+            return r.rotates();
+        }
+    }
+
+    /** Return every choice of the names of distinct available rotors
+     *  (reflector first) that can fill my slots, in order of name. */
+    List<String[]> rotorOrders() {
+        List<Rotor> rotors = new ArrayList<>(_allRotors);
+        rotors.sort((a, b) -> a.name().compareTo(b.name()));
+        List<String[]> result = new ArrayList<>();
+        fillOrders(rotors, new String[_numRotors], 0, result);
+        return result;
+    }
+
+    /** Add to RESULT each way of filling the slots of ORDER from K on with
+     *  distinct rotors from ROTORS that fit them. */
+    private void fillOrders(List<Rotor> rotors, String[] order, int k,
+                            List<String[]> result) {
+        if (k == _numRotors) {
+            result.add(order.clone());
+            return;
+        }
+        for (Rotor r : rotors) {
+            boolean used = false;
+            for (int i = 0; i < k; ++i) {
+                used |= order[i].equals(r.name());
+            }
+            if (fits(r, k) && !used) {
+                order[k] = r.name();
+                fillOrders(rotors, order, k + 1, result);
+            }
+        }
+    }
+
+    /** Set my rotor slots to copies of the rotors named ROTORS from my
+     *  set of available rotors (ROTORS[0] names the reflector), so that
+     *  machines sharing a set of available rotors do not move each
+     *  other's.  Initially, all rotors are set at their 0 setting.  If
+     *  ROTORS is not a valid choice, my slots are left unchanged. */
     void insertRotors(String[] rotors) {
+        Rotor[] chosen = new Rotor[_numRotors];
         int movers = 0;
         for (int i = 0; i < _numRotors; ++i) {
             int name = rotors[i].length();
             for (Rotor avail : _allRotors) {
                 String aNam = avail.name();
                 if (rotors[i].contains(avail.name()) && name == aNam.length()) {
-                    _rotors[i] = avail;
-                    if (_rotors[i].rotates()) {
+                    chosen[i] = avail.copy();
+                    chosen[i].set(0);
+                    if (chosen[i].rotates()) {
                         ++movers;
                     }
                 }
             }
-            Rotor curr = _rotors[i];
-            boolean ref = curr.reflecting();
-            if (curr == null || i > 0 && ref || i == 0 && !ref) {
+            Rotor curr = chosen[i];
+            if (curr == null || i > 0 && curr.reflecting()
+                || i == 0 && !curr.reflecting()) {
                 throw error("Rotor Initialization Error");
 
-            } else if (i > 0 && !curr.rotates() && _rotors[i - 1].rotates()) {
+            } else if (i > 0 && !curr.rotates() && chosen[i - 1].rotates()) {
                 throw error("Rotor Initialization Error");
             }
             for (int j = 0; j < i; ++j) {
-                if (curr.equals(_rotors[j])) {
+                if (curr.name().equals(chosen[j].name())) {
                     throw error("Rotor Initialization Error");
                 }
             }
         }
-        if (!_rotors[numRotors() - 1].rotates() || movers != numPawls()) {
+        if (!chosen[numRotors() - 1].rotates() || movers != numPawls()) {
             throw error("Rotor Types Error");
         }
+        System.arraycopy(chosen, 0, _rotors, 0, _numRotors);
+        _coreTree.invalidateAll();
+        _coreValid = false;
     }
 
     /** Set my rotors according to SETTING, which must be a string of
@@ -77,8 +160,28 @@ class Machine {
                 throw error("Invalid Setting");
             }
             _rotors[i].set(setting.charAt(i - 1));
-            _rotors[i]._initial = _rotors[i].setting();
         }
+        _coreTree.invalidateAll();
+        _coreValid = false;
+    }
+
+    /** Return a record of my current rotors, their settings and my
+     *  plugboard. */
+    MachineSettings settings() {
+        return new MachineSettings(_rotors, positions(), _plugboard);
+    }
+
+    /** Restore the rotors, settings and plugboard recorded in SETTINGS,
+     *  which must have come from a machine with my slots and rotors. */
+    void apply(MachineSettings settings) {
+        if (settings.numRotors() != _numRotors) {
+            throw error("Rotor Initialization Error");
+        }
+        for (int i = 0; i < _numRotors; ++i) {
+            _rotors[i] = settings.rotor(i);
+        }
+        _plugboard = settings.plugboard();
+        restorePositions(settings.positions());
     }
 
     /** Set the plugboard to PLUGBOARD. */
@@ -86,58 +189,512 @@ class Machine {
         _plugboard = plugboard;
     }
 
+    /** Tabulate the conversions of my current rotors (see Rotor.compile),
+     *  so that converting a character does no arithmetic beyond array
+     *  indexing.  The tables are built once, for the available rotor, and
+     *  shared by the copies of it in this and other machines. */
+    void compile() {
+        for (int i = 0; i < _numRotors; ++i) {
+            Rotor r = _rotors[i];
+            if (r == null || r.compiled()) {
+                continue;
+            }
+            for (Rotor avail : _allRotors) {
+                if (avail.name().equals(r.name())
+                    && avail.permutation() == r.permutation()) {
+                    avail.compile();
+                    r = avail.copy();
+                    r.set(_rotors[i].setting());
+                    break;
+                }
+            }
+            r.compile();
+            _rotors[i] = r;
+        }
+    }
+
     /** Returns the result of converting the input character C (as an
      *  index in the range 0..alphabet size - 1), after first advancing
      *  the machine. */
     int convert(int c) {
+        step();
+        return scramble(c);
+    }
+
+    /** Returns the result of converting the input character C (as an
+     *  index in the range 0..alphabet size - 1) at my current settings,
+     *  without advancing the machine. */
+    int scramble(int c) {
         c = _plugboard.permute(c);
-        for (int k = 0; k < numRotors(); ++k) {
-            _rotors[k]._initial = _rotors[k].setting();
-        }
-        for (int i = numRotors() - 1; i >= 0; --i) {
-            Rotor curr = _rotors[i];
-            if (i != 0) {
-                if (i == numRotors() - 1) {
-                    _rotors[i].advance();
+        for (int i = _numRotors - 1; i >= _coreEnd; --i) {
+            c = _rotors[i].convertForward(c);
+        }
+        if (!_coreValid) {
+            buildCore();
+        }
+        c = _core[c];
+        for (int k = _coreEnd; k < _numRotors; ++k) {
+            c = _rotors[k].convertBackward(c);
+        }
+        return _plugboard.invert(c);
+    }
+
+    /** Recompute _core from the current settings of the rotors in slots
+     *  0 .. _coreEnd - 1, bringing _coreTree up to date first. */
+    private void buildCore() {
+        _coreTree.update();
+        Rotor reflector = _rotors[0];
+        for (int c = 0; c < _core.length; ++c) {
+            int p = reflector.convertForward(_coreTree.forward(c));
+            _core[c] = _coreTree.backward(p);
+        }
+        _coreValid = true;
+    }
+
+    /** Advance my rotors as happens before each character is converted.
+     *  The rightmost rotor always moves.  Every other moving rotor moves
+     *  when the rotor to its right is at a notch, and also when it is at a
+     *  notch itself and is not the leftmost moving rotor (the "double
+     *  step").  All notches are tested before any rotor moves. */
+    private void step() {
+        stepFrom(_numRotors - _pawls);
+    }
+
+    /** Perform step() on the rotors in slots J and above only.  This is
+     *  the whole of step() when rotor J - 1 is not going to move. */
+    private void stepFrom(int j) {
+        int first = _numRotors - _pawls, last = _numRotors - 1;
+        boolean atNotch = _rotors[j].atNotch();
+        for (int i = j; i < last; ++i) {
+            boolean rightAtNotch = _rotors[i + 1].atNotch();
+            if (moves(i, first, atNotch, rightAtNotch)) {
+                _rotors[i].advance();
+                if (i < _coreEnd) {
+                    _coreTree.invalidate(i);
+                    _coreValid = false;
                 }
-                if (curr.setting() != curr._initial) {
-                    char prev = curr.alphabet().toChar(curr._initial);
-                    String s = " ";
-                    s = s.replace(' ', prev);
-                    if (((MovingRotor) curr)._notches.contains(s)) {
-                        _rotors[i - 1].advance();
-                    }
+            }
+            atNotch = rightAtNotch;
+        }
+        _rotors[last].advance();
+    }
 
-                } else if (curr.atNotch() && _rotors[i - 1].rotates()) {
-                    _rotors[i].advance();
-                    _rotors[i - 1].advance();
+    /** Return true iff step() moves the rotor in slot I, which is not the
+     *  rightmost, when the leftmost moving rotor is in slot FIRST and
+     *  ATNOTCH and RIGHTATNOTCH say whether the rotors in slots I and
+     *  I + 1 are at a notch. */
+    static boolean moves(int i, int first, boolean atNotch,
+                         boolean rightAtNotch) {
+        return rightAtNotch || atNotch && i > first;
+    }
+
+    /** Step, as step() does, the rotors of a machine that are kept as
+     *  settings rather than Rotors.  The rotor in slot I, for
+     *  0 <= I < NOTCHES.length, is at setting POS[B + I] out of SIZE and
+     *  is at a notch at setting S iff NOTCHES[I][S].  The leftmost moving
+     *  rotor is in slot FIRST. */
+    static void stepPositions(int[] pos, int b, boolean[][] notches,
+                              int first, int size) {
+        int last = notches.length - 1;
+        boolean atNotch = notches[first][pos[b + first]];
+        for (int i = first; i < last; ++i) {
+            boolean rightAtNotch = notches[i + 1][pos[b + i + 1]];
+            if (moves(i, first, atNotch, rightAtNotch)) {
+                pos[b + i] = pos[b + i] + 1 == size ? 0 : pos[b + i] + 1;
+            }
+            atNotch = rightAtNotch;
+        }
+        pos[b + last] = pos[b + last] + 1 == size ? 0 : pos[b + last] + 1;
+    }
+
+    /** Move my rotors to where they would be after converting N more
+     *  characters, without converting anything.  Runs of steps in which
+     *  only the rightmost rotor moves are taken all at once, each run of
+     *  a group of rotors up to the point where it carries into the rotor
+     *  to its left is taken at once after the first time it is seen, and
+     *  once the rotors are seen to return to an earlier position, whole
+     *  periods are skipped, so that the cost does not grow with N. */
+    void advanceBy(long n) {
+        if (n < 0) {
+            throw error("Cannot advance by a negative amount");
+        }
+        skip(_numRotors - _pawls, n, false, new HashMap<>());
+        _coreTree.invalidateAll();
+        _coreValid = false;
+    }
+
+    /** Advance the rotors in slots J and above by at most N steps and
+     *  return the number of steps taken.  If STOP, stop just before a
+     *  step that begins with rotor J at a notch (which would move rotor
+     *  J - 1).  Rotor J - 1 must not otherwise be due to move.  JUMPS
+     *  maps the positionKey of the rotors in slots J and above, for any
+     *  J, to the Jump that they make before such a stop, and is added to
+     *  as runs are completed. */
+    private long skip(int j, long n, boolean stop,
+                      HashMap<String, Jump> jumps) {
+        int last = _numRotors - 1;
+        if (j == last) {
+            int d = stop ? _rotors[last].distanceToNotch() : -1;
+            long k = d < 0 ? n : Math.min(n, d);
+            _rotors[last].advance((int) (k % _alphabet.size()));
+            return k;
+        }
+        String start = null;
+        if (stop) {
+            start = positionKey(j);
+            Jump jump = jumps.get(start);
+            if (jump != null && jump.steps <= n) {
+                for (int i = j; i < _numRotors; ++i) {
+                    _rotors[i].set(jump.positions[i - j]);
                 }
+                return jump.steps;
             }
-            c = _rotors[i].convertForward(c);
         }
-        for (int k = 1; k < numRotors(); ++k) {
-            c = _rotors[k].convertBackward(c);
+        long done = 0;
+        HashMap<String, Long> seen = stop ? null : new HashMap<>();
+        while (done < n && !(stop && _rotors[j].atNotch())) {
+            done += skip(j + 1, n - done, true, jumps);
+            if (done == n) {
+                break;
+            }
+            stepFrom(j);
+            done += 1;
+            if (seen != null) {
+                Long prev = seen.put(positionKey(j), done);
+                if (prev != null) {
+                    long period = done - prev;
+                    done += (n - done) / period * period;
+                    seen = null;
+                } else if (seen.size() >= MAX_REMEMBERED) {
+                    seen = null;
+                }
+            }
         }
-        c = _plugboard.invert(c);
-        return c;
+        if (stop && _rotors[j].atNotch()) {
+            int[] posns = new int[_numRotors - j];
+            for (int i = j; i < _numRotors; ++i) {
+                posns[i - j] = _rotors[i].setting();
+            }
+            jumps.put(start, new Jump(done, posns));
+        }
+        return done;
+    }
+
+    /** Return the settings of the rotors in slots FIRST and above as the
+     *  characters of a string, which is as long as the number of those
+     *  rotors. */
+    private String positionKey(int first) {
+        char[] key = new char[_numRotors - first];
+        for (int i = first; i < _numRotors; ++i) {
+            key[i - first] = (char) _rotors[i].setting();
+        }
+        return new String(key);
+    }
+
+    /** The run that the rotors in some slot J and above make, as for
+     *  skip, from a given position up to a stop. */
+    private static class Jump {
+        /** A run of STEPS steps ending with the rotors in slots J and
+         *  above at POSITIONS. */
+        Jump(long steps, int[] positions) {
+            this.steps = steps;
+            this.positions = positions;
+        }
+
+        /** Number of steps in the run. */
+        private final long steps;
+        /** Settings of the rotors in slots J and above after the run. */
+        private final int[] positions;
+    }
+
+    /** Return the current settings of the rotors in slots 1 and above, in
+     *  order, as a form that restorePositions accepts. */
+    int[] positions() {
+        int[] result = new int[_numRotors - 1];
+        for (int i = 1; i < _numRotors; ++i) {
+            result[i - 1] = _rotors[i].setting();
+        }
+        return result;
+    }
+
+    /** Set the rotors in slots 1 and above to POSNS, as returned by an
+     *  earlier call to positions(). */
+    void restorePositions(int[] posns) {
+        if (posns.length != _numRotors - 1) {
+            throw error("Wrong number of rotor positions");
+        }
+        for (int i = 1; i < _numRotors; ++i) {
+            _rotors[i].set(posns[i - 1]);
+        }
+        _coreTree.invalidateAll();
+        _coreValid = false;
     }
 
     /** Returns the encoding/decoding of MSG, updating the state of
-     *  the rotors accordingly. */
+     *  the rotors accordingly.  Uses a codebook from the cache given to
+     *  useCodebooks, if there is one that fits. */
     String convert(String msg) {
-        StringBuilder word = new StringBuilder();
-        Scanner printer = new Scanner(msg);
-        while (printer.hasNext()) {
-            String s = printer.next();
-            for (int i = 0; i < s.length(); ++i) {
-                int ch = _alphabet.toInt(s.charAt(i));
-                char conv = _alphabet.toChar(convert(ch));
-                word.append(conv);
+        char[] text = msg.toCharArray();
+        return new String(text, 0, convert(text, 0, text.length, text));
+    }
+
+    /** Convert the characters in MSG[FROM .. TO-1] that are not
+     *  skipped (see skipped), as for convert(String), placing the results
+     *  at the start of OUT, and return how many there are.  OUT may be
+     *  MSG. */
+    int convert(char[] msg, int from, int to, char[] out) {
+        int len = 0;
+        for (int i = from; i < to; ++i) {
+            char ch = msg[i];
+            if (!skipped(ch)) {
+                out[len] = (char) _alphabet.toInt(ch);
+                len += 1;
+            }
+        }
+        convertIndices(out, len);
+        for (int i = 0; i < len; ++i) {
+            out[i] = _alphabet.toChar(out[i]);
+        }
+        return len;
+    }
+
+    /** Convert TEXT[FROM .. TO-1] in place, as for convert(String),
+     *  except that skipped characters are left where they are (and do not
+     *  advance me).  Once my scratch space exists, this allocates nothing
+     *  unless useCodebooks has been given a cache, whose lookups
+     *  allocate. */
+    void convertInPlace(char[] text, int from, int to) {
+        if (_scratch == null) {
+            _scratch = new char[LineReader.BUFFER_SIZE];
+        }
+        for (int start = from; start < to; start += _scratch.length) {
+            int end = Math.min(to, start + _scratch.length);
+            int len = 0;
+            for (int i = start; i < end; ++i) {
+                if (!skipped(text[i])) {
+                    _scratch[len] = (char) _alphabet.toInt(text[i]);
+                    len += 1;
+                }
+            }
+            convertIndices(_scratch, len);
+            len = 0;
+            for (int i = start; i < end; ++i) {
+                if (!skipped(text[i])) {
+                    text[i] = _alphabet.toChar(_scratch[len]);
+                    len += 1;
+                }
+            }
+        }
+    }
+
+    /** Convert the characters remaining in IN, or as many of them as OUT
+     *  has room for, as for convertInPlace, putting the results in OUT and
+     *  advancing the positions of both.  OUT may be IN itself, or another
+     *  view of the same characters, to convert them in place.  Like
+     *  convertInPlace, this does not allocate once my scratch space
+     *  exists. */
+    void convert(CharBuffer in, CharBuffer out) {
+        if (_text == null) {
+            _text = new char[LineReader.BUFFER_SIZE];
+        }
+        int n = Math.min(in.remaining(), out.remaining());
+        while (n > 0) {
+            int len = Math.min(n, _text.length);
+            int pos = in.position();
+            in.get(pos, _text, 0, len);
+            convertInPlace(_text, 0, len);
+            if (out == in) {
+                out.put(pos, _text, 0, len);
+            } else {
+                out.put(_text, 0, len);
+            }
+            in.position(pos + len);
+            n -= len;
+        }
+    }
+
+    /** Return the conversion of the character CH, advancing me, or CH
+     *  itself (without advancing me) if it is skipped. */
+    char convertChar(char ch) {
+        if (skipped(ch)) {
+            return ch;
+        }
+        return _alphabet.toChar(convert(_alphabet.toInt(ch)));
+    }
+
+    /** Convert the remaining bytes of IN, writing the results to OUT,
+     *  which must have room for them.  My alphabet must be the byte
+     *  alphabet, in which each byte is its own index, so nothing is
+     *  decoded and nothing (not even whitespace) is skipped.  Either
+     *  buffer may be a MappedByteBuffer. */
+    void convert(ByteBuffer in, ByteBuffer out) {
+        if (!_alphabet.isBytes()) {
+            throw error("only a machine with the byte alphabet converts"
+                        + " bytes");
+        }
+        int chunk = Math.min(in.remaining(), LineReader.BUFFER_SIZE);
+        byte[] bytes = new byte[chunk];
+        char[] text = new char[chunk];
+        while (in.hasRemaining()) {
+            int len = Math.min(in.remaining(), chunk);
+            in.get(bytes, 0, len);
+            for (int i = 0; i < len; ++i) {
+                text[i] = (char) (bytes[i] & BYTE_MASK);
+            }
+            convertIndices(text, len);
+            for (int i = 0; i < len; ++i) {
+                bytes[i] = (byte) text[i];
+            }
+            out.put(bytes, 0, len);
+        }
+    }
+
+    /** Convert TEXT[0 .. LEN-1], which are indices into my alphabet, with
+     *  a codebook from the cache given to useCodebooks if there is one
+     *  that fits, and otherwise rotor by rotor. */
+    private void convertIndices(char[] text, int len) {
+        Codebook book = _codebooks == null ? null : _codebooks.get(this);
+        if (book == null) {
+            convertRange(text, 0, len);
+        } else {
+            int[] posns = positions();
+            int state = book.convert(text, 0, len, book.encode(posns));
+            book.decode(state, posns);
+            restorePositions(posns);
+        }
+    }
+
+    /** Set TEXT[0 .. K-1] to the alphabet indices of the K characters of
+     *  MSG that are not skipped, and return K. */
+    private int toIndices(String msg, char[] text) {
+        int len = 0;
+        for (int i = 0; i < msg.length(); ++i) {
+            char ch = msg.charAt(i);
+            if (!skipped(ch)) {
+                text[len] = (char) _alphabet.toInt(ch);
+                len += 1;
             }
         }
-        return word.toString();
+        return len;
     }
 
+    /** Return the string of the characters whose alphabet indices are
+     *  TEXT[0 .. LEN-1]. */
+    private String toChars(char[] text, int len) {
+        for (int i = 0; i < len; ++i) {
+            text[i] = _alphabet.toChar(text[i]);
+        }
+        return new String(text, 0, len);
+    }
+
+    /** Return true iff CH is passed over, unconverted, in messages (see
+     *  Alphabet.skips). */
+    private boolean skipped(char ch) {
+        return _alphabet.skips(ch);
+    }
+
+    /** Convert messages with codebooks from CACHE where possible, or stop
+     *  doing so if CACHE is null. */
+    void useCodebooks(CodebookCache cache) {
+        _codebooks = cache;
+    }
+
+    /** Return a value that is equal for two machines exactly when they
+     *  have the same rotors in the same slots, the same settings of the
+     *  rotors that do not move, and the same plugboard. */
+    List<Object> configuration() {
+        List<Object> result = new ArrayList<>();
+        for (int i = 0; i < _numRotors; ++i) {
+            result.add(_rotors[i].name());
+            result.add(_rotors[i].permutation());
+            if (i < _numRotors - _pawls) {
+                result.add(_rotors[i].setting());
+            }
+        }
+        char[] plugs = new char[_alphabet.size()];
+        for (int c = 0; c < plugs.length; ++c) {
+            plugs[c] = (char) _plugboard.permute(c);
+        }
+        result.add(new String(plugs));
+        return result;
+    }
+
+    /** Returns the same result as convert(MSG), and leaves my rotors in
+     *  the same state, but converts pieces of MSG concurrently on POOL.
+     *  Each piece is converted by a copy of me advanced to the position
+     *  at which the piece starts, and I take the positions of the copy
+     *  that converts the last piece. */
+    String convert(String msg, ForkJoinPool pool) {
+        char[] text = new char[msg.length()];
+        int len = toIndices(msg, text);
+        int pieces = Math.min(pool.getParallelism() * PIECES_PER_THREAD,
+                              (len + MIN_PIECE - 1) / MIN_PIECE);
+        if (pieces <= 1) {
+            convertRange(text, 0, len);
+        } else {
+            int[] start = positions();
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            Machine worker = null;
+            for (int k = 0; k < pieces; ++k) {
+                int from = (int) ((long) len * k / pieces);
+                int to = (int) ((long) len * (k + 1) / pieces);
+                Machine piece = copy();
+                tasks.add(pool.submit(() -> {
+                    piece.restorePositions(start);
+                    piece.advanceBy(from);
+                    piece.convertRange(text, from, to);
+                }));
+                worker = piece;
+            }
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+            restorePositions(worker.positions());
+        }
+        return toChars(text, len);
+    }
+
+    /** Return the results of MACHINES[K].convert(MSGS[K]) for each K, and
+     *  leave each machine advanced as that would.  The machines, which
+     *  must have the same alphabet size, slots and pawls, but may differ
+     *  in the characters of their alphabets (each message is in its own
+     *  machine's), rotors, settings and plugboard, are stepped together
+     *  in a MachineBatch, which is much faster than converting the
+     *  messages one by one when there are many short ones. */
+    static String[] convert(Machine[] machines, String[] msgs) {
+        if (machines.length != msgs.length) {
+            throw error("need one message per machine");
+        }
+        if (machines.length == 0) {
+            return new String[0];
+        }
+        MachineBatch batch = new MachineBatch(machines);
+        String[] result = batch.convert(msgs);
+        for (int k = 0; k < machines.length; ++k) {
+            machines[k].restorePositions(batch.positions(k));
+        }
+        return result;
+    }
+
+    /** Replace each of TEXT[FROM .. TO-1], which are indices into my
+     *  alphabet, by its conversion. */
+    private void convertRange(char[] text, int from, int to) {
+        for (int i = from; i < to; ++i) {
+            text[i] = (char) convert(text[i]);
+        }
+    }
+
+    /** Alphabet indices of the characters being converted by
+     *  convertInPlace, or null until it is first used. */
+    private char[] _scratch;
+
+    /** Characters being converted by convert(CharBuffer, CharBuffer), or
+     *  null until it is first used. */
+    private char[] _text;
+
+    /** Mask taking a byte to its unsigned value. */
+    private static final int BYTE_MASK = 0xff;
+
     /** Common alphabet of my rotors. */
     private final Alphabet _alphabet;
 
@@ -147,12 +704,50 @@ class Machine {
     /** Number of pawls in machine. */
     private int _pawls;
 
-    /** Plugboard used for machine. */
-    private Permutation _plugboard = new Permutation("", new Alphabet());
+    /** Plugboard used for machine, initially the identity on my
+     *  alphabet. */
+    private Permutation _plugboard;
 
     /** List to hold all Rotors. */
     protected Rotor[] _rotors;
 
     /** Collection of all available rotors. */
     private Collection<Rotor> _allRotors;
+
+    /** Source of codebooks for convert(String), or null. */
+    private CodebookCache _codebooks;
+
+    /** Smallest piece of a message that convert(String, ForkJoinPool)
+     *  hands to a separate task. */
+    static final int MIN_PIECE = 1 << 16;
+
+    /** Number of pieces per worker thread that convert(String,
+     *  ForkJoinPool) aims for, so that uneven threads even out. */
+    static final int PIECES_PER_THREAD = 4;
+
+    /** Largest number of rotor positions advanceBy records while looking
+     *  for a repeat. */
+    static final int MAX_REMEMBERED = 1 << 16;
+
+    /** Number of rightmost rotors that are never folded into _core.  These
+     *  are the ones that move most often. */
+    static final int UNCACHED_ROTORS = 2;
+
+    /** The rotors in slots 0 .. _coreEnd - 1 (the reflector, the fixed
+     *  rotors, and the slowest moving rotors) are applied through _core. */
+    private final int _coreEnd;
+
+    /** The composite permutation of the rotors in slots 0 .. _coreEnd - 1
+     *  at their current settings: forward through them, reflected, and
+     *  back again. */
+    private final int[] _core;
+
+    /** True iff _core reflects the current settings of its rotors.
+     *  Cleared whenever one of those rotors is moved or replaced. */
+    private boolean _coreValid;
+
+    /** Composition of the rotors in slots 1 .. _coreEnd - 1, from which
+     *  _core is rebuilt.  When one of them moves, only its path through
+     *  the tree is recomputed. */
+    private final CompositionTree _coreTree;
 }
@@ -0,0 +1,333 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+import static enigma.EnigmaException.*;
+
+/** The states of many Enigma machines of the same shape (alphabet size,
+ *  number of slots, and number of pawls), each of which converts its own
+ *  message.  The state of every machine is a handful of small integers,
+ *  which are kept in arrays indexed by machine (a "lane"), and all lanes
+ *  are stepped and converted together, one slot at a time, so that the
+ *  inner loops run over lanes with no calls or object references.  The
+ *  rotor tables of all lanes are laid out in one shared array.  As in
+ *  Machine, each lane keeps the composite of its slowest rotors and
+ *  reflector in a table that is rebuilt only when one of them moves.
+ *  The machines' alphabets may differ in their characters; each lane
+ *  reads and writes its message in its own machine's alphabet.
+ *  @author Karl Meissner
+ */
+class MachineBatch {
+
+    /** A batch with one lane for each of MACHINES, in order, holding its
+     *  current rotors, positions and plugboard.  The machines themselves
+     *  are not changed. */
+    MachineBatch(Machine[] machines) {
+        if (machines.length == 0) {
+            throw error("empty batch");
+        }
+        Machine first = machines[0];
+        _lanes = machines.length;
+        _alphabets = new Alphabet[_lanes];
+        _size = first.alphabet().size();
+        _numRotors = first.numRotors();
+        _firstMoving = _numRotors - first.numPawls();
+        _coreEnd = Math.max(1, _numRotors - Machine.UNCACHED_ROTORS);
+        _row = new int[_numRotors][_lanes];
+        _rowBase = new int[_numRotors][_lanes];
+        _plug = new int[_lanes * _size];
+        _plugInverse = new int[_lanes * _size];
+        _core = new int[_lanes * _size];
+        _coreStale = new boolean[_lanes];
+        _index = new int[_lanes];
+        _lane = new int[_lanes];
+        _forward = new int[0];
+        _backward = new int[0];
+        _notches = new boolean[0];
+        IdentityHashMap<Permutation, HashMap<String, Integer>> bases =
+            new IdentityHashMap<>();
+        for (int k = 0; k < _lanes; ++k) {
+            Machine m = machines[k];
+            if (m.alphabet().size() != _size || m.numRotors() != _numRotors
+                || m.numRotors() - m.numPawls() != _firstMoving) {
+                throw error("machines in a batch must have the same shape");
+            }
+            _alphabets[k] = m.alphabet();
+            MachineSettings settings = m.settings();
+            int[] posns = settings.positions();
+            for (int i = 0; i < _numRotors; ++i) {
+                Rotor r = settings.rotor(i);
+                HashMap<String, Integer> named =
+                    bases.computeIfAbsent(r.permutation(),
+                                          p -> new HashMap<>());
+                Integer base = named.get(r.name());
+                if (base == null) {
+                    base = add(r);
+                    named.put(r.name(), base);
+                }
+                _rowBase[i][k] = base;
+                _row[i][k] = base + (i == 0 ? 0 : posns[i - 1]);
+            }
+            Permutation plug = settings.plugboard();
+            for (int c = 0; c < _size; ++c) {
+                _plug[k * _size + c] = plug.permute(c);
+                _plugInverse[k * _size + c] = plug.invert(c);
+            }
+            _coreStale[k] = true;
+            _index[k] = _lane[k] = k;
+        }
+    }
+
+    /** Return the number of lanes. */
+    int lanes() {
+        return _lanes;
+    }
+
+    /** Return the positions of the rotors in lane K, as for
+     *  Machine.positions. */
+    int[] positions(int k) {
+        int j = _index[k];
+        int[] result = new int[_numRotors - 1];
+        for (int i = 1; i < _numRotors; ++i) {
+            result[i - 1] = _row[i][j] - _rowBase[i][j];
+        }
+        return result;
+    }
+
+    /** Convert MSGS, which are alphabet indices, in place: MSGS[K] with
+     *  lane K, as Machine.convert(int) would convert each of its
+     *  characters in turn.  Each lane is left advanced by the length of
+     *  its message.  The characters are first rearranged so that those
+     *  converted at the same step in each lane are adjacent. */
+    void convert(int[][] msgs) {
+        if (msgs.length != _lanes) {
+            throw error("need one message per lane");
+        }
+        sortByLength(msgs);
+        int longest = msgs[_lane[0]].length;
+        int[] start = new int[longest + 1];
+        for (int j = 0; j < _lanes; ++j) {
+            start[msgs[_lane[j]].length] += 1;
+        }
+        for (int t = longest, active = 0; t >= 0; --t) {
+            active += start[t];
+            start[t] = active;
+        }
+        for (int t = 0, next = 0; t <= longest; ++t) {
+            int active = t == longest ? 0 : start[t + 1];
+            start[t] = next;
+            next += active;
+        }
+        int[] text = new int[start[longest]];
+        for (int j = 0; j < _lanes; ++j) {
+            int[] msg = msgs[_lane[j]];
+            for (int t = 0; t < msg.length; ++t) {
+                text[start[t] + j] = msg[t];
+            }
+        }
+        for (int t = 0; t < longest; ++t) {
+            int active = start[t + 1] - start[t];
+            step(active);
+            scramble(active, text, start[t]);
+        }
+        for (int j = 0; j < _lanes; ++j) {
+            int[] msg = msgs[_lane[j]];
+            for (int t = 0; t < msg.length; ++t) {
+                msg[t] = text[start[t] + j];
+            }
+        }
+    }
+
+    /** Convert MSGS, as Machine.convert(String) would: MSGS[K] with lane
+     *  K.  Return the results, in the same order. */
+    String[] convert(String[] msgs) {
+        int[][] text = new int[msgs.length][];
+        for (int k = 0; k < msgs.length; ++k) {
+            text[k] = _alphabets[k].indices(msgs[k]);
+        }
+        convert(text);
+        String[] result = new String[msgs.length];
+        for (int k = 0; k < msgs.length; ++k) {
+            char[] out = new char[text[k].length];
+            for (int i = 0; i < out.length; ++i) {
+                out[i] = _alphabets[k].toChar(text[k][i]);
+            }
+            result[k] = new String(out);
+        }
+        return result;
+    }
+
+    /** Rearrange the state of the lanes so that they are stored in order
+     *  of decreasing length of their messages in MSGS.  The lanes whose
+     *  messages are not finished are then always the first ones. */
+    private void sortByLength(int[][] msgs) {
+        Integer[] order = new Integer[_lanes];
+        for (int j = 0; j < _lanes; ++j) {
+            order[j] = j;
+        }
+        Arrays.sort(order, (a, b) ->
+                    msgs[_lane[b]].length - msgs[_lane[a]].length);
+        int[] from = new int[_lanes];
+        for (int j = 0; j < _lanes; ++j) {
+            from[j] = order[j];
+        }
+        for (int i = 0; i < _numRotors; ++i) {
+            _row[i] = gather(_row[i], from, 1);
+            _rowBase[i] = gather(_rowBase[i], from, 1);
+        }
+        _plug = gather(_plug, from, _size);
+        _plugInverse = gather(_plugInverse, from, _size);
+        _core = gather(_core, from, _size);
+        boolean[] stale = new boolean[_lanes];
+        int[] lane = new int[_lanes];
+        for (int j = 0; j < _lanes; ++j) {
+            stale[j] = _coreStale[from[j]];
+            lane[j] = _lane[from[j]];
+            _index[lane[j]] = j;
+        }
+        _coreStale = stale;
+        _lane = lane;
+    }
+
+    /** Return an array whose Jth group of WIDTH elements is the
+     *  FROM[J]th group of WIDTH elements of A. */
+    private static int[] gather(int[] a, int[] from, int width) {
+        int[] result = new int[a.length];
+        for (int j = 0; j < from.length; ++j) {
+            System.arraycopy(a, from[j] * width, result, j * width, width);
+        }
+        return result;
+    }
+
+    /** Advance the rotors of the first ACTIVE lanes, as Machine.convert(int)
+     *  does before converting a character, by the rule of Machine.moves.
+     *  Slots are processed from left to right, so each moving rotor is
+     *  tested before it or the rotor to its right has moved. */
+    private void step(int active) {
+        int last = _numRotors - 1;
+        for (int i = _firstMoving; i < last; ++i) {
+            int[] row = _row[i], base = _rowBase[i], right = _row[i + 1];
+            boolean cached = i < _coreEnd;
+            for (int j = 0; j < active; ++j) {
+                int r = row[j];
+                if (Machine.moves(i, _firstMoving, _notches[r],
+                                  _notches[right[j]])) {
+                    row[j] = r + 1 == base[j] + _size ? base[j] : r + 1;
+                    _coreStale[j] |= cached;
+                }
+            }
+        }
+        int[] row = _row[last], base = _rowBase[last];
+        for (int j = 0; j < active; ++j) {
+            row[j] = row[j] + 1 == base[j] + _size ? base[j] : row[j] + 1;
+        }
+    }
+
+    /** Replace C[OFF + J] by its conversion in the Jth lane at that lane's
+     *  current positions, for 0 <= J < ACTIVE. */
+    private void scramble(int active, int[] c, int off) {
+        for (int j = 0; j < active; ++j) {
+            if (_coreStale[j]) {
+                buildCore(j);
+            }
+            c[off + j] = _plug[j * _size + c[off + j]];
+        }
+        for (int i = _numRotors - 1; i >= _coreEnd; --i) {
+            int[] row = _row[i];
+            for (int j = 0; j < active; ++j) {
+                c[off + j] = _forward[row[j] * _size + c[off + j]];
+            }
+        }
+        for (int j = 0; j < active; ++j) {
+            c[off + j] = _core[j * _size + c[off + j]];
+        }
+        for (int i = _coreEnd; i < _numRotors; ++i) {
+            int[] row = _row[i];
+            for (int j = 0; j < active; ++j) {
+                c[off + j] = _backward[row[j] * _size + c[off + j]];
+            }
+        }
+        for (int j = 0; j < active; ++j) {
+            c[off + j] = _plugInverse[j * _size + c[off + j]];
+        }
+    }
+
+    /** Recompute the part of _core for the Jth lane from the current
+     *  settings of its rotors in slots 0 .. _coreEnd - 1. */
+    private void buildCore(int j) {
+        for (int c = 0; c < _size; ++c) {
+            int x = c;
+            for (int i = _coreEnd - 1; i >= 0; --i) {
+                x = _forward[_row[i][j] * _size + x];
+            }
+            for (int i = 1; i < _coreEnd; ++i) {
+                x = _backward[_row[i][j] * _size + x];
+            }
+            _core[j * _size + c] = x;
+        }
+        _coreStale[j] = false;
+    }
+
+    /** Append the tables of rotor R to _forward, _backward and _notches,
+     *  and return the row at which they start. */
+    private int add(Rotor r) {
+        int base = _notches.length;
+        _forward = Arrays.copyOf(_forward, (base + _size) * _size);
+        _backward = Arrays.copyOf(_backward, (base + _size) * _size);
+        _notches = Arrays.copyOf(_notches, base + _size);
+        r.tabulate(_forward, _backward, _notches, base);
+        return base;
+    }
+
+    /** The alphabet of each lane's machine, indexed by its position in
+     *  the batch as given to the constructor. */
+    private final Alphabet[] _alphabets;
+    /** Number of lanes. */
+    private final int _lanes;
+    /** Size of the alphabet. */
+    private final int _size;
+    /** Number of slots. */
+    private final int _numRotors;
+    /** Leftmost slot holding a moving rotor. */
+    private final int _firstMoving;
+    /** The rotors in slots 0 .. _coreEnd - 1 are applied through _core. */
+    private final int _coreEnd;
+
+    /* The state of each lane is stored at an index that changes as lanes
+     * are sorted by sortByLength.  _index and _lane translate between
+     * lanes and the indices where they are stored. */
+
+    /** _index[K] is where the state of lane K is stored. */
+    private final int[] _index;
+    /** _lane[J] is the lane whose state is stored at index J. */
+    private int[] _lane;
+    /** _row[I][J] is the row of the tables for the rotor in slot I of the
+     *  Jth lane at its current setting. */
+    private final int[][] _row;
+    /** _rowBase[I][J] is the row of the tables for the rotor in slot I of
+     *  the Jth lane at setting 0. */
+    private final int[][] _rowBase;
+    /** _plug[J * size + C] is the plugboard of the Jth lane applied to C. */
+    private int[] _plug;
+    /** _plugInverse[J * size + C] is the inverse plugboard of the Jth lane
+     *  applied to C. */
+    private int[] _plugInverse;
+    /** _core[J * size + C] is the composite of the rotors in slots
+     *  0 .. _coreEnd - 1 of the Jth lane applied to C: forward through
+     *  them, reflected, and back again. */
+    private int[] _core;
+    /** _coreStale[J] is true iff _core for the Jth lane must be rebuilt. */
+    private boolean[] _coreStale;
+
+    /** _forward[R * size + P] is the forward conversion of P by the rotor
+     *  and setting of table row R. */
+    private int[] _forward;
+    /** _backward[R * size + E] is the backward conversion of E by the
+     *  rotor and setting of table row R. */
+    private int[] _backward;
+    /** _notches[R] is true iff the rotor of table row R has a notch at its
+     *  setting. */
+    private boolean[] _notches;
+}
@@ -0,0 +1,73 @@
+package enigma;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** A thread-safe supply of machines made from one MachineSpec, each set
+ *  up as the spec describes when it is handed out.  Machines returned
+ *  to the pool are reset and kept for reuse, up to a fixed number, so
+ *  that threads converting many messages need not build a machine for
+ *  each.
+ *  @author Karl Meissner
+ */
+class MachinePool {
+
+    /** A pool of machines made from SPEC, keeping at most CAPACITY idle
+     *  ones. */
+    MachinePool(MachineSpec spec, int capacity) {
+        _spec = spec;
+        _idle = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /** Return my spec. */
+    MachineSpec spec() {
+        return _spec;
+    }
+
+    /** Return a machine set up as my spec describes, which belongs to
+     *  the caller until it is given to release. */
+    Machine acquire() {
+        Machine result = _idle.poll();
+        if (result == null) {
+            _created.incrementAndGet();
+            result = _spec.newMachine();
+        }
+        return result;
+    }
+
+    /** Return MACHINE, which came from acquire and which the caller must
+     *  not use again, to the pool. */
+    void release(Machine machine) {
+        _spec.reset(machine);
+        _idle.offer(machine);
+    }
+
+    /** Return the conversion of MSG, as for Machine.convert, by a
+     *  machine set up as my spec describes. */
+    String convert(String msg) {
+        Machine machine = acquire();
+        try {
+            return machine.convert(msg);
+        } finally {
+            release(machine);
+        }
+    }
+
+    /** Return the number of machines I have made. */
+    int created() {
+        return _created.get();
+    }
+
+    /** Return the number of idle machines I hold. */
+    int idle() {
+        return _idle.size();
+    }
+
+    /** The description of my machines. */
+    private final MachineSpec _spec;
+    /** Machines ready to hand out. */
+    private final BlockingQueue<Machine> _idle;
+    /** The number of machines made. */
+    private final AtomicInteger _created = new AtomicInteger();
+}
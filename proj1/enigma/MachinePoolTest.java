@@ -0,0 +1,90 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the MachineSpec and MachinePool
+ *  classes.
+ *  @author Karl Meissner
+ */
+public class MachinePoolTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a spec for a machine built by threeRotorMachine. */
+    private MachineSpec spec() {
+        Machine m = threeRotorMachine();
+        m.insertRotors(new String[] {"Loren", "Karl", "Anthony"});
+        m.setRotors("XP");
+        m.setPlugboard(new Permutation("(AQ) (EP)", new Alphabet()));
+        return new MachineSpec(m);
+    }
+
+    /** Return the Kth test message. */
+    private String message(int k) {
+        StringBuilder msg = new StringBuilder();
+        for (int i = 0; i < 50 + k % 37; ++i) {
+            msg.append((char) ('A' + (i * 11 + k) % 26));
+        }
+        return msg.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void specTest() {
+        MachineSpec spec = spec();
+        Machine first = spec.newMachine();
+        Machine second = spec.newMachine();
+        String msg = message(3);
+        String expected = first.convert(msg);
+        assertFalse(expected.equals(first.convert(msg)));
+        assertEquals(expected, second.convert(msg));
+        spec.reset(first);
+        assertArrayEquals(spec.settings().positions(), first.positions());
+        assertEquals(expected, first.convert(msg));
+    }
+
+    @Test
+    public void poolTest() {
+        MachineSpec spec = spec();
+        MachinePool machines = new MachinePool(spec, 2);
+        String[] expected = new String[400];
+        for (int k = 0; k < expected.length; ++k) {
+            expected[k] = spec.newMachine().convert(message(k));
+        }
+        String[] results = new String[expected.length];
+        ForkJoinPool pool = new ForkJoinPool(4);
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int k = 0; k < expected.length; ++k) {
+            int index = k;
+            tasks.add(pool.submit(() -> {
+                results[index] = machines.convert(message(index));
+            }));
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+        pool.shutdown();
+        assertArrayEquals(expected, results);
+        assertTrue(machines.idle() <= 2);
+        assertTrue(machines.created() <= expected.length);
+        Machine m = machines.acquire();
+        assertEquals(expected[5], m.convert(message(5)));
+        machines.release(m);
+    }
+
+}
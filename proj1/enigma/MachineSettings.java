@@ -0,0 +1,52 @@
+package enigma;
+
+/** A record of everything a settings line establishes in a Machine: the
+ *  rotors in each slot, their positions, and the plugboard.  Restoring
+ *  one with Machine.apply repeats a configuration without parsing or
+ *  validating it again.  A record holds its own copies of the rotors and
+ *  never changes, so one may be shared among machines and threads.
+ *  @author Karl Meissner
+ */
+class MachineSettings {
+
+    /** Settings with copies of ROTORS in the slots of a machine, at
+     *  POSITIONS (as for Machine.positions), and with plugboard
+     *  PLUGBOARD. */
+    MachineSettings(Rotor[] rotors, int[] positions, Permutation plugboard) {
+        _rotors = new Rotor[rotors.length];
+        for (int k = 0; k < rotors.length; ++k) {
+            _rotors[k] = rotors[k].copy();
+        }
+        _positions = positions.clone();
+        _plugboard = plugboard;
+    }
+
+    /** Return a copy of the rotor in slot K, which the caller may move. */
+    Rotor rotor(int k) {
+        return _rotors[k].copy();
+    }
+
+    /** Return the number of slots. */
+    int numRotors() {
+        return _rotors.length;
+    }
+
+    /** Return a copy of the rotor positions. */
+    int[] positions() {
+        return _positions.clone();
+    }
+
+    /** Return the plugboard. */
+    Permutation plugboard() {
+        return _plugboard;
+    }
+
+    /** Rotors in each slot. */
+    private final Rotor[] _rotors;
+
+    /** Positions of the rotors in slots 1 and above. */
+    private final int[] _positions;
+
+    /** The plugboard. */
+    private final Permutation _plugboard;
+}
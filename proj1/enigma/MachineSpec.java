@@ -0,0 +1,91 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+
+import static enigma.EnigmaException.*;
+
+/** A complete, unchanging description of a configured machine: its
+ *  alphabet, slots and pawls, the rotors available to it, and the rotors,
+ *  positions and plugboard a settings line gives it.  A spec may be
+ *  shared freely among threads, each of which makes its own Machine from
+ *  it with newMachine, or copies one with Machine.copy.  All a Machine
+ *  holds beyond its spec is the settings of its own copies of the
+ *  rotors and tables derived from them.
+ *  @author Karl Meissner
+ */
+final class MachineSpec {
+
+    /** The spec of MACHINE as it is now: its configuration, with its
+     *  current rotors, positions and plugboard.  MACHINE must have its
+     *  rotors inserted. */
+    MachineSpec(Machine machine) {
+        _alphabet = machine.alphabet();
+        _numRotors = machine.numRotors();
+        _numPawls = machine.numPawls();
+        _available = Collections.unmodifiableList(
+            new ArrayList<>(machine.availableRotors()));
+        _settings = machine.settings();
+    }
+
+    /** Return the spec of the machine described by the configuration file
+     *  named CONFIG, set up by the settings line SETTINGS (as Main reads
+     *  them). */
+    static MachineSpec read(String config, String settings) {
+        Machine machine = Main.readMachine(config);
+        Main.applySettings(machine, settings);
+        return new MachineSpec(machine);
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return my number of rotor slots. */
+    int numRotors() {
+        return _numRotors;
+    }
+
+    /** Return my number of pawls. */
+    int numPawls() {
+        return _numPawls;
+    }
+
+    /** Return my rotors, positions and plugboard. */
+    MachineSettings settings() {
+        return _settings;
+    }
+
+    /** Return a new Machine as I describe it, whose rotors are its own. */
+    Machine newMachine() {
+        Machine result =
+            new Machine(_alphabet, _numRotors, _numPawls, _available);
+        result.apply(_settings);
+        result.compile();
+        return result;
+    }
+
+    /** Set MACHINE, which must have been made by newMachine, back to the
+     *  rotors, positions and plugboard I describe. */
+    void reset(Machine machine) {
+        if (machine.numRotors() != _numRotors
+            || machine.alphabet() != _alphabet) {
+            throw error("machine does not fit this spec");
+        }
+        machine.apply(_settings);
+        machine.compile();
+    }
+
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+    /** My number of rotor slots. */
+    private final int _numRotors;
+    /** My number of pawls. */
+    private final int _numPawls;
+    /** The rotors available to my machines, which are only ever copied. */
+    private final Collection<Rotor> _available;
+    /** My rotors, their positions, and my plugboard. */
+    private final MachineSettings _settings;
+}
@@ -1,12 +1,20 @@
 package enigma;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.Timeout;
 
 import org.junit.Assert;
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
 import java.util.Collection;
 
 import java.util.HashSet;
+import java.util.List;
+
+import java.util.concurrent.ForkJoinPool;
 
 import static enigma.EnigmaException.*;
 
@@ -16,11 +24,20 @@ import static enigma.EnigmaException.*;
 
 public class MachineTest {
 
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
     /* ***** TESTING UTILITIES ***** */
 
     /** Build a sample machine. */
     public Machine build() {
-        Alphabet standard = new Alphabet();
+        return build(new Alphabet());
+    }
+
+    /** Build the sample machine of build() on the alphabet STANDARD,
+     *  which must contain A-Z. */
+    public Machine build(Alphabet standard) {
 
         String perm1 = "(AE)(BN)(CK)(DQ)(FU)(GY)(HW)(IJ)(LO)(MP)(RX)(SZ)(TV)";
         String perm2 = "(ALBEVFCYODJWUGNMQTZSKPR) (HIX)";
@@ -84,6 +101,27 @@ public class MachineTest {
         return new Machine(standard, 5, 2, c);
     }
 
+    /** Build a machine with 8 slots in which every rotor but the
+     *  reflector moves, each with one notch. */
+    public Machine build3() {
+        Alphabet standard = new Alphabet();
+        Collection<Rotor> c = new HashSet<Rotor>();
+        c.add(new Reflector("B", new Permutation(TestUtils.NAVALA.get("B"),
+                                                 standard)));
+        String notches = "QEVJZMH";
+        for (int i = 1; i < EIGHT.length; ++i) {
+            Permutation p =
+                new Permutation(TestUtils.NAVALA.get(EIGHT[i]), standard);
+            c.add(new MovingRotor(EIGHT[i], p,
+                                  notches.substring(i - 1, i)));
+        }
+        return new Machine(standard, 8, 7, c);
+    }
+
+    /** The rotors of build3(), in order. */
+    static final String[] EIGHT =
+        {"B", "I", "II", "III", "IV", "V", "VI", "VII"};
+
     Machine m = build();
     Machine n = build2();
     String[] a = {"Loren", "Paul", "Rachel", "Karl", "Anthony"};
@@ -105,6 +143,21 @@ public class MachineTest {
         Assert.assertEquals(false, m._rotors[2].atNotch());
     }
 
+    @Test
+    public void badInsertTest() {
+        m.insertRotors(a);
+        m.setRotors("AXLE");
+        try {
+            m.insertRotors(new String[] {"Loren", "Paul", "Rachel", "Karl",
+                                         "Nobody"});
+            Assert.fail("inserted an unknown rotor");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        Assert.assertEquals("Anthony", m._rotors[4].name());
+        Assert.assertEquals(23, m._rotors[2].setting());
+    }
+
     @Test
     public void setRotorsTest() {
         m.insertRotors(a);
@@ -139,4 +192,292 @@ public class MachineTest {
         Assert.assertEquals("C", m.convert("Y"));
         Assert.assertEquals("L", n.convert("Y"));
     }
+
+    @Test
+    public void compiledConvertTests() {
+        m.insertRotors(a);
+        m.compile();
+        m.setRotors("AXLE");
+        m.setPlugboard(plug);
+
+        Assert.assertEquals("FPFCU", m.convert("ABCDE"));
+        m.setRotors("AVJQ");
+        Assert.assertEquals("C", m.convert("Y"));
+    }
+
+    @Test
+    public void longMessageRoundTripTest() {
+        StringBuilder msg = new StringBuilder();
+        for (int i = 0; i < 20000; ++i) {
+            msg.append((char) ('A' + (i * 7 + i / 13) % 26));
+        }
+        m.insertRotors(a);
+        m.setPlugboard(plug);
+        m.setRotors("AXLE");
+        String code = m.convert(msg.toString());
+        m.setRotors("AXLE");
+        Assert.assertEquals(msg.toString(), m.convert(code));
+    }
+
+    @Test
+    public void advanceByTest() {
+        m.insertRotors(a);
+        m.setPlugboard(plug);
+        for (int n : new int[] {0, 1, 5, 25, 26, 677, 17000, 123456}) {
+            m.setRotors("AXLE");
+            for (int i = 0; i < n; ++i) {
+                m.convert(0);
+            }
+            int[] expected = m.positions();
+            String next = m.convert("HELLOWORLD");
+            m.setRotors("AXLE");
+            m.advanceBy(n);
+            Assert.assertArrayEquals(expected, m.positions());
+            Assert.assertEquals(next, m.convert("HELLOWORLD"));
+        }
+    }
+
+    @Test
+    public void manyRotorAdvanceByTest() {
+        long n = 1000000000000L;
+        Machine x = build3();
+        Machine y = build3();
+        x.insertRotors(EIGHT);
+        y.insertRotors(EIGHT);
+        x.setRotors("AXLEZQB");
+        y.setRotors("AXLEZQB");
+        x.advanceBy(n);
+        y.advanceBy(n - 1000);
+        for (int i = 0; i < 1000; ++i) {
+            y.convert(0);
+        }
+        Assert.assertArrayEquals(x.positions(), y.positions());
+        y.setRotors("AXLEZQB");
+        y.advanceBy(n / 2 + 7);
+        y.advanceBy(n / 2 - 7);
+        Assert.assertArrayEquals(x.positions(), y.positions());
+    }
+
+    @Test
+    public void positionsTest() {
+        n.insertRotors(a);
+        n.setPlugboard(plug);
+        n.setRotors("BVJQ");
+        int[] saved = n.positions();
+        String first = n.convert("ATTACKATDAWN");
+        n.advanceBy(1000000000000L);
+        n.restorePositions(saved);
+        Assert.assertEquals(first, n.convert("ATTACKATDAWN"));
+    }
+
+    @Test
+    public void parallelConvertTest() {
+        StringBuilder msg = new StringBuilder();
+        for (int i = 0; i < 3 * Machine.MIN_PIECE + 17; ++i) {
+            msg.append((char) ('A' + (i * 11 + i / 29) % 26));
+            if (i % 61 == 0) {
+                msg.append(' ');
+            }
+        }
+        m.insertRotors(a);
+        m.setPlugboard(plug);
+        m.setRotors("AXLE");
+        String expected = m.convert(msg.toString());
+        int[] after = m.positions();
+        m.setRotors("AXLE");
+        ForkJoinPool pool = new ForkJoinPool(4);
+        Assert.assertEquals(expected, m.convert(msg.toString(), pool));
+        Assert.assertArrayEquals(after, m.positions());
+        pool.shutdown();
+    }
+
+    @Test
+    public void manyRotorParallelConvertTest() {
+        StringBuilder msg = new StringBuilder();
+        for (int i = 0; i < 5 * Machine.MIN_PIECE + 3; ++i) {
+            msg.append((char) ('A' + (i * 5 + i / 17) % 26));
+        }
+        Machine x = build3();
+        x.insertRotors(EIGHT);
+        x.setRotors("ZZZYQEV");
+        String expected = x.convert(msg.toString());
+        int[] after = x.positions();
+        x.setRotors("ZZZYQEV");
+        ForkJoinPool pool = new ForkJoinPool(4);
+        Assert.assertEquals(expected, x.convert(msg.toString(), pool));
+        Assert.assertArrayEquals(after, x.positions());
+        pool.shutdown();
+    }
+
+    @Test
+    public void batchSameNameTest() {
+        Machine x = build();
+        Collection<Rotor> rotors = new HashSet<Rotor>();
+        for (Rotor r : x.availableRotors()) {
+            if (!r.name().equals("Karl")) {
+                rotors.add(r);
+            }
+        }
+        rotors.add(new MovingRotor("Karl", new Permutation("(AB) (CD)",
+                                                           new Alphabet()),
+                                   "J"));
+        Machine y = new Machine(new Alphabet(), 5, 4, rotors);
+        x.insertRotors(a);
+        y.insertRotors(a);
+        x.setRotors("AXLE");
+        y.setRotors("AXLE");
+        String msg = "FROMHISSHOULDERHIAWATHA";
+        String[] expected = {x.copy().convert(msg), y.copy().convert(msg)};
+        Assert.assertFalse(expected[0].equals(expected[1]));
+        String[] result =
+            Machine.convert(new Machine[] {x, y}, new String[] {msg, msg});
+        Assert.assertArrayEquals(expected, result);
+    }
+
+    @Test
+    public void batchAlphabetTest() {
+        Alphabet reversed = new Alphabet(
+            new StringBuilder(TestUtils.UPPER_STRING).reverse().toString());
+        Machine x = build();
+        Machine y = build(reversed);
+        x.insertRotors(a);
+        y.insertRotors(a);
+        x.setRotors("AXLE");
+        y.setRotors("AXLE");
+        String msg = "FROMHISSHOULDERHIAWATHA";
+        String[] expected = {x.copy().convert(msg), y.copy().convert(msg)};
+        String[] result =
+            Machine.convert(new Machine[] {x, y}, new String[] {msg, msg});
+        Assert.assertArrayEquals(expected, result);
+    }
+
+    @Test
+    public void batchConvertTest() {
+        String[][] orders = {
+            {"Loren", "Paul", "Rachel", "Karl", "Anthony"},
+            {"Loren", "Karl", "Anthony", "Rachel", "Paul"},
+            {"Loren", "Anthony", "Rachel", "Paul", "Karl"},
+        };
+        String[] plugs = {"", "(YF) (ZH)", "(AB) (CD) (EF)"};
+        Machine[] machines = new Machine[12];
+        Machine[] singles = new Machine[machines.length];
+        String[] msgs = new String[machines.length];
+        for (int k = 0; k < machines.length; ++k) {
+            machines[k] = build();
+            machines[k].insertRotors(orders[k % orders.length]);
+            machines[k].setPlugboard(new Permutation(plugs[k % plugs.length],
+                                                     new Alphabet()));
+            machines[k].setRotors(k % 2 == 0 ? "AXLE" : "BVJQ");
+            singles[k] = machines[k].copy();
+            StringBuilder msg = new StringBuilder();
+            for (int i = 0; i < (k * 1237) % 3000; ++i) {
+                msg.append((char) ('A' + (i * 7 + k) % 26));
+                if (i % 9 == 0) {
+                    msg.append(' ');
+                }
+            }
+            msgs[k] = msg.toString();
+        }
+        String[] results = Machine.convert(machines, msgs);
+        for (int k = 0; k < machines.length; ++k) {
+            Assert.assertEquals(singles[k].convert(msgs[k]), results[k]);
+            Assert.assertArrayEquals(singles[k].positions(),
+                                     machines[k].positions());
+        }
+    }
+
+    @Test
+    public void doubleStepTest() {
+        m.insertRotors(a);
+        m.setPlugboard(plug);
+        m.setRotors("AUIP");
+        String msg = "DOUBLESTEPPINGRACHEL";
+        /* AUIP steps to AUIQ and AUJR, and then Karl and Rachel in turn
+         * double step: AVKS, BWKT. */
+        Machine check = m.copy();
+        check.convert("DOUB");
+        Assert.assertArrayEquals(new int[] {1, 22, 10, 19},
+                                 check.positions());
+        String cipher = m.copy().convert(msg);
+        long k = 0;
+        for (char c : "AUIP".toCharArray()) {
+            k = k * 26 + (c - 'A');
+        }
+        TrialDecryptor trials = new TrialDecryptor(m, cipher);
+        long found = trials.evaluate(k, 1, (t, plain, alive) -> {
+            Assert.assertEquals(msg.charAt(t), (char) ('A' + plain[0]));
+            return alive;
+        });
+        Assert.assertEquals(1L, found);
+        Bombe bombe = new Bombe(m, cipher, msg, 0);
+        List<String> stops = new ArrayList<>();
+        bombe.search(a, k, k + 1, stop -> stops.add(stop.positions()));
+        Assert.assertEquals(1, stops.size());
+        Assert.assertEquals("AUIP", stops.get(0));
+        Machine[] batch = {m.copy(), m.copy()};
+        String[] results =
+            Machine.convert(batch, new String[] {msg, "DOUB"});
+        Assert.assertEquals(cipher, results[0]);
+        Assert.assertArrayEquals(new int[] {1, 22, 10, 19},
+                                 batch[1].positions());
+    }
+
+    @Test
+    public void charBufferTest() {
+        m.insertRotors(a);
+        m.setRotors("AXLE");
+        m.setPlugboard(plug);
+        Machine other = m.copy();
+        String msg = "FROM HIS SHOULDER HIAWATHA\nTOOK THE CAMERA OF ROSEWOOD";
+        String expected = other.convert(msg);
+        CharBuffer buf = CharBuffer.wrap(msg.toCharArray());
+        m.convert(buf, buf);
+        Assert.assertEquals(0, buf.remaining());
+        buf.flip();
+        String result = buf.toString();
+        Assert.assertEquals(msg.length(), result.length());
+        Assert.assertEquals(expected, result.replaceAll("\\s", ""));
+        for (int i = 0; i < msg.length(); ++i) {
+            Assert.assertEquals(Character.isWhitespace(msg.charAt(i)),
+                                Character.isWhitespace(result.charAt(i)));
+        }
+
+        m.setRotors("AXLE");
+        CharBuffer in = CharBuffer.wrap(msg);
+        CharBuffer out = ByteBuffer.allocateDirect(80).asCharBuffer();
+        m.convert(in, out);
+        Assert.assertEquals(40, in.position());
+        m.convert(in, CharBuffer.allocate(msg.length()));
+        Assert.assertEquals(0, in.remaining());
+        out.flip();
+        Assert.assertEquals(result.substring(0, 40), out.toString());
+    }
+
+    @Test
+    public void sharedRotorsTest() {
+        Collection<Rotor> rotors = m.availableRotors();
+        Machine first = new Machine(new Alphabet(), 5, 4, rotors);
+        Machine second = new Machine(new Alphabet(), 5, 4, rotors);
+        for (Machine x : new Machine[] {first, second, m}) {
+            x.insertRotors(a);
+            x.setRotors("AXLE");
+            x.setPlugboard(plug);
+        }
+        first.compile();
+        second.setRotors("BVJQ");
+        String msg = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+        String expected = m.convert(msg + msg);
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < 2 * msg.length(); ++i) {
+            result.append((char) ('A' + first.convert(i % 26)));
+            second.convert(i % 26);
+        }
+        Assert.assertEquals(expected, result.toString());
+        Assert.assertTrue(first.positions()[3] != second.positions()[3]);
+        MachineSettings settings = first.settings();
+        first.convert("ABCDE");
+        second.apply(settings);
+        Assert.assertArrayEquals(settings.positions(), second.positions());
+        Assert.assertTrue(first.positions()[3] != second.positions()[3]);
+    }
 }
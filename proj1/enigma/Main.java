@@ -1,13 +1,27 @@
 package enigma;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import java.util.Arrays;
 import java.util.Scanner;
 import java.util.NoSuchElementException;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
 
 /** GSI suggested this import. */
 import static enigma.EnigmaException.*;
@@ -19,16 +33,27 @@ public final class Main {
 
     /** Process a sequence of encryptions and decryptions, as
      *  specified by ARGS, where 1 <= ARGS.length <= 3.
-     *  ARGS[0] is the name of a configuration file.
+     *  ARGS[0] is the name of a configuration file, or of a snapshot of
+     *  one compiled by ConfigSnapshot.
      *  ARGS[1] is optional; when present, it names an input file
      *  containing messages.  Otherwise, input comes from the standard
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
-     *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  standard output.  If the option --pipeline appears anywhere in ARGS,
+     *  reading, conversion, and writing each run on their own thread, and
+     *  a summary of how far each stage fell behind goes to the standard
+     *  error.  If instead the option --sections appears, each settings line
+     *  and the messages following it are converted concurrently with
+     *  the others by a separate machine, and the results are written in
+     *  order.  The two options may not be given together.  Exits
+     *  normally if there are no errors in the input; otherwise with
+     *  code 1, after writing the output that precedes the error.  A
+     *  message line is converted and written in pieces, so when a line
+     *  has an error, the pieces of it before the one holding the error
+     *  may already be written; they are ended as a line of their own. */
     public static void main(String... args) {
         try {
-            new Main(args).process();
+            run(args);
             return;
         } catch (EnigmaException excp) {
             System.err.printf("Error: %s%n", excp.getMessage());
@@ -36,27 +61,110 @@ public final class Main {
         System.exit(1);
     }
 
+    /** Process ARGS as main does, but report an error in the input by
+     *  throwing an EnigmaException, once the output before it has been
+     *  written, rather than by exiting. */
+    static void run(String... args) {
+        Main main = new Main(args);
+        try {
+            main.process();
+        } catch (EnigmaException excp) {
+            main.flush();
+            throw excp;
+        }
+        main.close();
+    }
+
     /** Check ARGS and open the necessary files (see comment on main). */
     Main(String[] args) {
+        args = options(args);
         if (args.length < 1 || args.length > 3) {
             throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
 
-        _config = getInput(args[0]);
+        if (ConfigSnapshot.isSnapshot(Paths.get(args[0]))) {
+            _snapshot = Paths.get(args[0]);
+        } else {
+            _config = getInput(args[0]);
+        }
 
         if (args.length > 1) {
-            _input = getInput(args[1]);
+            _input = getMessages(args[1]);
         } else {
-            _input = new Scanner(System.in);
+            _input = new LineReader(Channels.newChannel(System.in));
         }
 
         if (args.length > 2) {
-            _output = getOutput(args[2]);
+            _output = new MessageWriter(getOutput(args[2]));
         } else {
-            _output = System.out;
+            _output = new MessageWriter(
+                new BufferedWriter(new OutputStreamWriter(System.out),
+                                   LineReader.BUFFER_SIZE));
         }
     }
 
+    /** A Main that has no files open, for use by readMachine. */
+    private Main() {
+    }
+
+    /** Return an Enigma machine configured from the contents of the
+     *  configuration file named NAME, with no rotors inserted.  Other
+     *  tools use this to share the rotors and wiring that Main reads.
+     *  NAME may also be a snapshot written by ConfigSnapshot. */
+    static Machine readMachine(String name) {
+        if (ConfigSnapshot.isSnapshot(Paths.get(name))) {
+            return ConfigSnapshot.load(Paths.get(name));
+        }
+        Main reader = new Main();
+        reader._config = reader.getInput(name);
+        try {
+            reader._alphabet = Alphabet.named(reader._config.next());
+            return reader.readConfig();
+        } catch (NoSuchElementException excp) {
+            throw error("configuration file truncated");
+        } finally {
+            reader._config.close();
+        }
+    }
+
+    /** Set M, a machine returned by readMachine, according to the
+     *  settings line LINE, as Main does for the settings lines of its
+     *  input. */
+    static void applySettings(Machine m, String line) {
+        configurer(m).accept(line);
+    }
+
+    /** Return a consumer that sets M, a machine returned by readMachine,
+     *  according to each settings line it is given, as Main does for the
+     *  successive settings lines of its input: a line without a plugboard
+     *  keeps the one before it, and repeated settings are remembered. */
+    static Consumer<String> configurer(Machine m) {
+        Main reader = new Main();
+        reader._alphabet = m.alphabet();
+        reader._plugs = "";
+        return line -> reader.configure(m, line);
+    }
+
+    /** Record the options in ARGS and return the remaining arguments. */
+    private String[] options(String[] args) {
+        String[] rest = new String[args.length];
+        int n = 0;
+        for (String arg : args) {
+            if (arg.equals("--pipeline")) {
+                _pipeline = true;
+            } else if (arg.equals("--sections")) {
+                _sections = true;
+            } else {
+                rest[n] = arg;
+                n += 1;
+            }
+        }
+        if (_pipeline && _sections) {
+            throw error("--pipeline and --sections may not be used together");
+        }
+        return Arrays.copyOf(rest, n);
+    }
+
     /** Return a Scanner reading from the file named NAME. */
     private Scanner getInput(String name) {
         try {
@@ -66,72 +174,157 @@ public final class Main {
         }
     }
 
-    /** Return a PrintStream writing to the file named NAME. */
-    private PrintStream getOutput(String name) {
+    /** Return a LineReader reading from the file named NAME. */
+    private LineReader getMessages(String name) {
+        try {
+            return new LineReader(FileChannel.open(Paths.get(name)));
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return a buffered Writer writing to the file named NAME. */
+    private Writer getOutput(String name) {
         try {
-            return new PrintStream(new File(name));
+            FileChannel out =
+                FileChannel.open(Paths.get(name), StandardOpenOption.WRITE,
+                                 StandardOpenOption.CREATE,
+                                 StandardOpenOption.TRUNCATE_EXISTING);
+            return new BufferedWriter(Channels.newWriter(out,
+                                          Charset.defaultCharset().newEncoder(),
+                                          LineReader.BUFFER_SIZE),
+                                      LineReader.BUFFER_SIZE);
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
     }
 
+    /** End any line of _output that an error left unfinished, and write
+     *  out anything buffered for it. */
+    private void flush() {
+        _output.endPartialLine();
+        _output.flush();
+    }
+
+    /** Finish writing _output and release my files. */
+    private void close() {
+        _output.close();
+        _input.close();
+    }
+
     /** Configure an Enigma machine from the contents of configuration
-     *  file _config and apply it to the messages in _input, sending the
-     *  results to _output. */
+     *  file _config (or the snapshot _snapshot) and apply it to the
+     *  messages in _input, sending the results to _output. */
     private void process() {
-        _alphabet = new Alphabet(_config.next());
-        Machine m = readConfig();
-        StringBuilder total = new StringBuilder();
-        char sample = _alphabet.toChar(0);
-        StringBuilder plugPerm = new StringBuilder().append(sample);
-        String pluggy = plugPerm.toString();
-        String next = _input.nextLine();
-        Scanner sNext = new Scanner(next);
-        _input = _input.useDelimiter("^[//s]");
-        while (_input.hasNextLine()) {
-            if (sNext.next().equals("*")) {
-                String[] inserts = new String[m.numRotors()];
-                for (int i = 0; i < inserts.length; ++i) {
-                    inserts[i] = sNext.next();
-                }
-                if (!sNext.hasNext()) {
-                    throw error("Bad rotor name/wheel settings wrong");
-                }
-                String rotorSet = sNext.next();
-                for (int i = 0; i < rotorSet.length(); ++i) {
-                    if (!_alphabet.contains(rotorSet.charAt(i))) {
-                        throw error("Bad character in wheel settings");
-                    }
-                }
-                if (rotorSet.length() != m.numRotors() - 1) {
-                    throw error("Wheel settings wrong");
-                }
-                StringBuilder pBoard = new StringBuilder();
-                while (sNext.hasNext()) {
-                    pBoard.append(sNext.next());
-                }
-                String mPlug = pBoard.toString();
-                m.insertRotors(inserts);
-                setUp(m, rotorSet);
-                if (mPlug.contains("(")) {
-                    pluggy = mPlug;
-                }
+        Machine m;
+        if (_snapshot != null) {
+            m = ConfigSnapshot.load(_snapshot);
+            _alphabet = m.alphabet();
+        } else {
+            _alphabet = Alphabet.named(_config.next());
+            m = readConfig();
+        }
+        _plugs = "";
+        int first = _input.peek();
+        if (first >= 0 && first != '*') {
+            throw error("Message without a configuration");
+        }
+        if (_pipeline) {
+            Pipeline stages =
+                new Pipeline(_input, _output, m, line -> configure(m, line),
+                             PIPELINE_DEPTH, LineReader.BUFFER_SIZE);
+            stages.run();
+            System.err.print(stages.report());
+            return;
+        }
+        if (_sections) {
+            ForkJoinPool pool = new ForkJoinPool();
+            try {
+                new Sections(_input, _output, m, line -> configure(m, line),
+                             pool, pool.getParallelism() * SECTIONS_PER_THREAD)
+                    .run();
+            } finally {
+                pool.shutdownNow();
             }
-            m.setPlugboard(new Permutation(pluggy, _alphabet));
-            next = _input.nextLine();
-            sNext = new Scanner(next);
-            if (next.isEmpty()) {
-                _output.println();
-                next = _input.nextLine();
-                sNext = new Scanner(next);
-            } else if (next.charAt(0) != '*') {
-                total.append(m.convert(next));
-                printMessageLine(total.toString());
-                total = new StringBuilder();
+            return;
+        }
+        for (int c = first; c >= 0; c = _input.peek()) {
+            if (c == '*') {
+                configure(m, _input.readLine());
+            } else {
+                printMessageLine(m);
             }
         }
     }
 
+    /** Set M according to the settings line LINE, which begins with "*".
+     *  A line that repeats earlier settings (including, when LINE has no
+     *  plugboard, the plugboard they inherited) reuses the configuration
+     *  recorded for them instead of parsing and validating it again.  The
+     *  line as written is looked up first, and only if that misses is it
+     *  divided into tokens to look up the settings however they are
+     *  spaced.  If LINE is invalid, neither M nor the plugboard later
+     *  lines inherit is changed. */
+    private void configure(Machine m, String line) {
+        String trimmed = line.trim();
+        KnownLine seen = _lineCache.get(trimmed);
+        if (seen != null && (!seen.inherits || seen.plugs.equals(_plugs))) {
+            m.apply(seen.settings);
+            _plugs = seen.plugs;
+            return;
+        }
+        String[] tokens = trimmed.split("\\s+");
+        int plugStart = Math.min(tokens.length, m.numRotors() + 2);
+        StringBuilder plugs = new StringBuilder();
+        for (int i = plugStart; i < tokens.length; ++i) {
+            plugs.append(tokens[i]);
+        }
+        String mPlug = plugs.toString();
+        boolean inherits = !mPlug.contains("(");
+        String plugCycles = inherits ? _plugs : mPlug;
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i < plugStart; ++i) {
+            key.append(tokens[i]).append(' ');
+        }
+        key.append(plugCycles);
+        MachineSettings known = _settingsCache.get(key.toString());
+        if (known != null) {
+            m.apply(known);
+            _plugs = plugCycles;
+            _lineCache.put(trimmed,
+                           new KnownLine(known, plugCycles, inherits));
+            return;
+        }
+        if (tokens.length < m.numRotors() + 1) {
+            throw error("Bad rotor name/wheel settings wrong");
+        }
+        String[] inserts = new String[m.numRotors()];
+        for (int i = 0; i < inserts.length; ++i) {
+            inserts[i] = tokens[i + 1];
+        }
+        if (tokens.length < m.numRotors() + 2) {
+            throw error("Bad rotor name/wheel settings wrong");
+        }
+        String rotorSet = _alphabet.decode(tokens[m.numRotors() + 1]);
+        for (int i = 0; i < rotorSet.length(); ++i) {
+            if (!_alphabet.contains(rotorSet.charAt(i))) {
+                throw error("Bad character in wheel settings");
+            }
+        }
+        if (rotorSet.length() != m.numRotors() - 1) {
+            throw error("Wheel settings wrong");
+        }
+        Permutation plugboard = new Permutation(plugCycles, _alphabet);
+        m.insertRotors(inserts);
+        m.compile();
+        setUp(m, rotorSet);
+        m.setPlugboard(plugboard);
+        _plugs = plugCycles;
+        known = m.settings();
+        _settingsCache.put(key.toString(), known);
+        _lineCache.put(trimmed, new KnownLine(known, plugCycles, inherits));
+    }
+
     /** Return an Enigma machine configured from the contents of configuration
      *  file _config. */
     private Machine readConfig() {
@@ -157,9 +350,9 @@ public final class Main {
             String name = _config.next();
             String subsq = _config.next();
             char type = subsq.charAt(0);
-            String notches = " ";
+            String notches = null;
             if (subsq.length() > 1) {
-                notches = subsq.substring(1);
+                notches = _alphabet.decode(subsq.substring(1));
             }
             StringBuilder cycles = new StringBuilder();
             boolean hNext = _config.hasNext();
@@ -174,7 +367,7 @@ public final class Main {
                 r = new Reflector(name, perm);
             } else if (type == 'N') {
                 r = new FixedRotor(name, perm);
-            } else if (type == 'M' && !notches.equals(" ")) {
+            } else if (type == 'M' && notches != null) {
                 r = new MovingRotor(name, perm, notches);
             }
             if (r.permutation() == bad) {
@@ -192,28 +385,95 @@ public final class Main {
         M.setRotors(settings);
     }
 
-    /** Print MSG in groups of five (except that the last group may
-     *  have fewer letters). */
-    private void printMessageLine(String msg) {
-        StringBuilder message = new StringBuilder();
-        for (int i = 0; i < msg.length(); i += 5) {
-            message.append(msg.substring(i, Math.min(msg.length(), i + 5)));
-            message.append(" ");
+    /** Convert the next line of _input with M and print the result in
+     *  groups of five (except that the last group may have fewer
+     *  letters).  The line is handled in pieces no larger than _message,
+     *  so its length is unlimited. */
+    private void printMessageLine(Machine m) {
+        int n;
+        while ((n = _input.readSegment(_message, 0, _message.length)) >= 0) {
+            _output.write(_message, m.convert(_message, 0, n, _message));
         }
-        String mess = message.toString();
-        mess = mess.substring(0, mess.length() - 1);
-        System.out.println(mess.toString());
+        _output.endLine();
     }
 
     /** Alphabet used in this machine. */
     private Alphabet _alphabet;
 
     /** Source of input messages. */
-    private Scanner _input;
+    private LineReader _input;
 
     /** Source of machine configuration. */
     private Scanner _config;
 
+    /** Snapshot of the machine configuration, used instead of _config
+     *  when ARGS[0] names one. */
+    private Path _snapshot;
+
+    /** Number of blocks circulating among the stages of a Pipeline. */
+    static final int PIPELINE_DEPTH = 16;
+
+    /** True iff messages are processed by a Pipeline. */
+    private boolean _pipeline;
+
+    /** Number of sections that may be converted or awaiting output at
+     *  once, per thread, when processing sections concurrently. */
+    static final int SECTIONS_PER_THREAD = 4;
+
+    /** True iff sections are converted concurrently. */
+    private boolean _sections;
+
     /** File for encoded/decoded messages. */
-    private PrintStream _output;
+    private MessageWriter _output;
+
+    /** Buffer holding the piece of a message line being converted. */
+    private final char[] _message = new char[LineReader.BUFFER_SIZE];
+
+    /** Plugboard cycles in effect, which a settings line without a
+     *  plugboard inherits from the one before. */
+    private String _plugs;
+
+    /** Most settings lines remembered by _settingsCache, and by
+     *  _lineCache. */
+    static final int SETTINGS_CACHE_SIZE = 1024;
+
+    /** Return an empty map that keeps only its SETTINGS_CACHE_SIZE most
+     *  recently used entries, least recently used first. */
+    private static <V> LinkedHashMap<String, V> settingsCache() {
+        return new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > SETTINGS_CACHE_SIZE;
+            }
+        };
+    }
+
+    /** Configurations established by recent settings lines, keyed by the
+     *  line's tokens and the plugboard in effect. */
+    private final LinkedHashMap<String, MachineSettings> _settingsCache =
+        settingsCache();
+
+    /** What a settings line established, as recorded in _lineCache. */
+    private static class KnownLine {
+        /** A record of a line that established SETTINGS and the plugboard
+         *  PLUGS, which it inherited iff INHERITS. */
+        KnownLine(MachineSettings settings, String plugs, boolean inherits) {
+            this.settings = settings;
+            this.plugs = plugs;
+            this.inherits = inherits;
+        }
+
+        /** The configuration the line established. */
+        private final MachineSettings settings;
+        /** The plugboard cycles in effect after the line. */
+        private final String plugs;
+        /** True iff the line has no plugboard of its own, so that it
+         *  established plugs only when they were already in effect. */
+        private final boolean inherits;
+    }
+
+    /** What recent settings lines established, keyed by the lines as
+     *  written, less surrounding whitespace. */
+    private final LinkedHashMap<String, KnownLine> _lineCache =
+        settingsCache();
 }
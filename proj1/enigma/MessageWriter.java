@@ -0,0 +1,91 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import static enigma.EnigmaException.*;
+
+/** A destination for converted messages, which prints each message line
+ *  in groups of five characters (except that the last group may have
+ *  fewer), separated by blanks.  A line may be supplied in any number of
+ *  pieces.
+ *  @author Karl Meissner
+ */
+class MessageWriter {
+
+    /** A MessageWriter sending its output to OUT. */
+    MessageWriter(Writer out) {
+        _out = out;
+    }
+
+    /** Append BUF[0 .. LEN-1] to the current line. */
+    void write(char[] buf, int len) {
+        try {
+            for (int i = 0; i < len; ) {
+                int k = (int) Math.min(GROUP - _count % GROUP, len - i);
+                if (_count > 0 && _count % GROUP == 0) {
+                    _out.write(' ');
+                }
+                _out.write(buf, i, k);
+                _count += k;
+                i += k;
+            }
+        } catch (IOException excp) {
+            throw error("could not write output: %s", excp.getMessage());
+        }
+    }
+
+    /** End the current line. */
+    void endLine() {
+        try {
+            _out.write(System.lineSeparator());
+            _count = 0;
+        } catch (IOException excp) {
+            throw error("could not write output: %s", excp.getMessage());
+        }
+    }
+
+    /** End the current line if anything has been written to it. */
+    void endPartialLine() {
+        if (_count > 0) {
+            endLine();
+        }
+    }
+
+    /** Append LINES, which consist of complete lines already divided
+     *  into groups. */
+    void writeLines(String lines) {
+        try {
+            _out.write(lines);
+        } catch (IOException excp) {
+            throw error("could not write output: %s", excp.getMessage());
+        }
+    }
+
+    /** Write out anything buffered. */
+    void flush() {
+        try {
+            _out.flush();
+        } catch (IOException excp) {
+            throw error("could not write output: %s", excp.getMessage());
+        }
+    }
+
+    /** Finish writing and release my destination. */
+    void close() {
+        try {
+            _out.close();
+        } catch (IOException excp) {
+            throw error("could not write output: %s", excp.getMessage());
+        }
+    }
+
+    /** Number of characters in a group. */
+    static final int GROUP = 5;
+
+    /** Destination of my output. */
+    private final Writer _out;
+
+    /** Number of characters written on the current line. */
+    private long _count;
+}
@@ -14,7 +14,35 @@ class MovingRotor extends Rotor {
      */
     MovingRotor(String name, Permutation perm, String notches) {
         super(name, perm);
-        _notches = notches;
+        _notches = new boolean[perm.size()];
+        for (int i = 0; i < notches.length(); ++i) {
+            if (alphabet().contains(notches.charAt(i))) {
+                _notches[alphabet().toInt(notches.charAt(i))] = true;
+            }
+        }
+        _toNotch = new int[perm.size()];
+        int next = -1;
+        for (int k = 2 * perm.size() - 1; k >= 0; --k) {
+            int posn = k % perm.size();
+            if (_notches[posn]) {
+                next = k;
+            }
+            _toNotch[posn] = next < 0 ? -1 : next - k;
+        }
+    }
+
+    /** A copy of ORIGINAL, at the same setting, that moves independently
+     *  of it. */
+    MovingRotor(MovingRotor original) {
+        super(original);
+        _notches = original._notches;
+        _toNotch = original._toNotch;
+    }
+
+    /** Return a copy of me. */
+    @Override
+    Rotor copy() {
+        return new MovingRotor(this);
     }
 
     /** Moving rotors all can rotate. */
@@ -26,12 +54,7 @@ class MovingRotor extends Rotor {
     /** Check if a rotor is set to a character that is one of its notches. */
     @Override
     boolean atNotch() {
-        for (int i = 0; i < _notches.length(); ++i) {
-            if (_notches.charAt(i) == alphabet().toChar(setting())) {
-                return true;
-            }
-        }
-        return false;
+        return _notches[setting()];
     }
 
     /** Increment rotor setting by one. */
@@ -40,7 +63,23 @@ class MovingRotor extends Rotor {
         set(permutation().wrap(setting() + 1));
     }
 
-    /** String indicating where Rotor's notches are located. */
-    protected String _notches;
+    /** Increment rotor setting by K. */
+    @Override
+    void advance(int k) {
+        set(permutation().wrap(setting() + k));
+    }
+
+    /** Look up the distance to my next notch. */
+    @Override
+    int distanceToNotch() {
+        return _toNotch[setting()];
+    }
+
+    /** _notches[K] is true iff I have a notch at setting K. */
+    private final boolean[] _notches;
+
+    /** _toNotch[K] is the number of advances from setting K to the next
+     *  notch (0 if K is a notch), or -1 if I have no notches. */
+    private final int[] _toNotch;
 
 }
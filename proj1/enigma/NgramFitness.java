@@ -0,0 +1,341 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static enigma.EnigmaException.*;
+
+/** A Fitness that adds up the logarithms of the probabilities of the
+ *  n-grams (runs of N characters) of a text, as estimated from a sample
+ *  of plaintext.  N-grams that do not appear in the sample get a small
+ *  probability rather than none.
+ *
+ *  The probabilities are held in a FloatBuffer indexed by n-gram, where
+ *  the n-gram whose characters have indices C1, ..., CN in the alphabet
+ *  has index C1 * size^(N-1) + ... + CN.  The buffer may be an ordinary
+ *  array, or may map a table file written by save or build, in which
+ *  case it occupies no heap space and is shared by every thread and
+ *  process that maps the same file.  Scoring only reads the buffer, and
+ *  allocates nothing.
+ *  @author Karl Meissner
+ */
+class NgramFitness implements Fitness {
+
+    /** Build a table of the N-grams (default 4) of the plaintext in the
+     *  file ARGS[1], in the alphabet of the machine described by the
+     *  configuration file ARGS[0], and write it to the file ARGS[2].
+     *  Exits normally if there are no errors; otherwise with code 1. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 3 || args.length > 4) {
+                throw error("Usage: java enigma.NgramFitness CONFIG CORPUS"
+                            + " TABLE [N]");
+            }
+            int n;
+            try {
+                n = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+            } catch (NumberFormatException excp) {
+                throw error("bad n-gram length: %s", args[3]);
+            }
+            build(Paths.get(args[1]), Paths.get(args[2]),
+                  Main.readMachine(args[0]).alphabet(), n);
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A Fitness for N-grams of an alphabet of SIZE characters, where
+     *  LOGPROBS[G] is the logarithm of the probability of n-gram G. */
+    NgramFitness(int size, int n, float[] logProbs) {
+        this(size, n, FloatBuffer.wrap(logProbs));
+    }
+
+    /** A Fitness for N-grams of an alphabet of SIZE characters, where
+     *  LOGPROBS.get(G) is the logarithm of the probability of n-gram G.
+     *  LOGPROBS must not be changed afterwards. */
+    NgramFitness(int size, int n, FloatBuffer logProbs) {
+        if (n < 1 || logProbs.limit() != power(size, n)) {
+            throw error("n-gram table has the wrong size");
+        }
+        _size = size;
+        _n = n;
+        _logProbs = logProbs;
+        _modulus = power(size, n - 1);
+    }
+
+    /** Return a Fitness for N-grams of ALPHA, estimated from CORPUS.
+     *  Characters of CORPUS that are not in ALPHA, even when upper-cased,
+     *  separate the n-grams. */
+    static NgramFitness fromText(Alphabet alpha, int n, CharSequence corpus) {
+        Counter counter = new Counter(alpha, n);
+        char[] chars = corpus.toString().toCharArray();
+        counter.add(chars, chars.length);
+        return new NgramFitness(alpha.size(), n, counter.logProbs());
+    }
+
+    /** Return a Fitness for N-grams of ALPHA, estimated from the file
+     *  named CORPUS as for fromText, which is read a piece at a time. */
+    static NgramFitness fromFile(Path corpus, Alphabet alpha, int n) {
+        return new NgramFitness(alpha.size(), n,
+                                count(corpus, alpha, n).logProbs());
+    }
+
+    /** Write a table of the N-grams of ALPHA, estimated from the file
+     *  named CORPUS as for fromText, to the file named TABLE, in the form
+     *  that load reads.  Neither file is held in memory. */
+    static void build(Path corpus, Path table, Alphabet alpha, int n) {
+        Counter counter = count(corpus, alpha, n);
+        try (FileChannel out =
+                 FileChannel.open(table, BinaryFiles.WRITE_NEW)) {
+            writeHeader(out, alpha, n);
+            ByteBuffer buf = ByteBuffer.allocate(LineReader.BUFFER_SIZE);
+            for (int g = 0; g < counter.counts.length; ++g) {
+                if (!buf.hasRemaining()) {
+                    drain(out, buf);
+                }
+                buf.putFloat(counter.logProb(g));
+            }
+            drain(out, buf);
+        } catch (IOException excp) {
+            throw error("could not write %s", table);
+        }
+    }
+
+    /** Write my table to the file named TABLE, in the form that load
+     *  reads, where ALPHA is the alphabet of my n-grams. */
+    void save(Path table, Alphabet alpha) {
+        if (alpha.size() != _size) {
+            throw error("wrong alphabet for n-gram table");
+        }
+        try (FileChannel out =
+                 FileChannel.open(table, BinaryFiles.WRITE_NEW)) {
+            writeHeader(out, alpha, _n);
+            ByteBuffer buf = ByteBuffer.allocate(LineReader.BUFFER_SIZE);
+            for (int g = 0; g < _logProbs.limit(); ++g) {
+                if (!buf.hasRemaining()) {
+                    drain(out, buf);
+                }
+                buf.putFloat(_logProbs.get(g));
+            }
+            drain(out, buf);
+        } catch (IOException excp) {
+            throw error("could not write %s", table);
+        }
+    }
+
+    /** Return a Fitness whose table is the file named TABLE, as written
+     *  by save or build for the alphabet ALPHA, mapped into memory. */
+    static NgramFitness load(Path table, Alphabet alpha) {
+        try (FileChannel in = FileChannel.open(table)) {
+            MappedByteBuffer map =
+                in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            if (map.limit() < HEADER_INTS * Integer.BYTES
+                || map.getInt() != MAGIC || map.getInt() != VERSION) {
+                throw error("%s is not an n-gram table", table);
+            }
+            int n = map.getInt();
+            int len = map.getInt();
+            if (len != alpha.size()) {
+                throw error("wrong alphabet for n-gram table %s", table);
+            }
+            if (map.limit() < headerSize(len)) {
+                throw error("n-gram table %s is truncated", table);
+            }
+            for (int c = 0; c < len; ++c) {
+                if (map.getChar() != alpha.toChar(c)) {
+                    throw error("wrong alphabet for n-gram table %s", table);
+                }
+            }
+            map.position(headerSize(len));
+            return new NgramFitness(len, n, map.slice().asFloatBuffer());
+        } catch (IOException excp) {
+            throw error("could not read %s", table);
+        }
+    }
+
+    /** Return true iff the file named FILE starts as the tables written
+     *  by save and build do. */
+    static boolean isTable(Path file) {
+        try {
+            return BinaryFiles.startsWith(file, MAGIC);
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        }
+    }
+
+    /** Return the length of my n-grams. */
+    int n() {
+        return _n;
+    }
+
+    @Override
+    public double score(int[] text, int len) {
+        double result = 0;
+        int index = 0;
+        for (int i = 0; i < len; ++i) {
+            index = (index % _modulus) * _size + text[i];
+            if (i >= _n - 1) {
+                result += _logProbs.get(index);
+            }
+        }
+        return result;
+    }
+
+    /** Return SIZE to the power N, which must fit in an int. */
+    static int power(int size, int n) {
+        long result = 1;
+        for (int i = 0; i < n; ++i) {
+            result *= size;
+            if (result > Integer.MAX_VALUE) {
+                throw error("n-gram table too large");
+            }
+        }
+        return (int) result;
+    }
+
+    /** Return the N-gram counts of ALPHA in the file named CORPUS, read a
+     *  piece at a time. */
+    private static Counter count(Path corpus, Alphabet alpha, int n) {
+        Counter counter = new Counter(alpha, n);
+        try (Reader in = Files.newBufferedReader(corpus)) {
+            char[] buf = new char[LineReader.BUFFER_SIZE];
+            int len;
+            while ((len = in.read(buf)) >= 0) {
+                counter.add(buf, len);
+            }
+        } catch (IOException excp) {
+            throw error("could not read %s", corpus);
+        }
+        return counter;
+    }
+
+    /** Write the header of a table of N-grams of ALPHA to OUT. */
+    private static void writeHeader(FileChannel out, Alphabet alpha, int n)
+        throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(headerSize(alpha.size()));
+        header.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(alpha.size());
+        for (int c = 0; c < alpha.size(); ++c) {
+            header.putChar(alpha.toChar(c));
+        }
+        header.position(header.limit());
+        drain(out, header);
+    }
+
+    /** Write the contents of BUF to OUT and clear it. */
+    private static void drain(FileChannel out, ByteBuffer buf)
+        throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) {
+            out.write(buf);
+        }
+        buf.clear();
+    }
+
+    /** Return the size in bytes of the header of a table for an alphabet
+     *  of SIZE characters: the header integers and the characters of the
+     *  alphabet, padded to a whole number of floats. */
+    private static int headerSize(int size) {
+        int bytes = HEADER_INTS * Integer.BYTES + size * Character.BYTES;
+        return (bytes + Float.BYTES - 1) / Float.BYTES * Float.BYTES;
+    }
+
+    /** Counts of the n-grams of a text supplied in pieces. */
+    private static class Counter {
+        /** A Counter for N-grams of ALPHA. */
+        Counter(Alphabet alpha, int n) {
+            if (n < 1) {
+                throw error("bad n-gram length: %d", n);
+            }
+            this.alpha = alpha;
+            this.n = n;
+            counts = new long[power(alpha.size(), n)];
+            modulus = power(alpha.size(), n - 1);
+        }
+
+        /** Count the n-grams of BUF[0 .. LEN-1], continuing those begun
+         *  in earlier pieces. */
+        void add(char[] buf, int len) {
+            int size = alpha.size();
+            for (int i = 0; i < len; ++i) {
+                char ch = buf[i];
+                if (!alpha.contains(ch)) {
+                    ch = Character.toUpperCase(ch);
+                }
+                if (!alpha.contains(ch)) {
+                    run = 0;
+                    continue;
+                }
+                index = (index % modulus) * size + alpha.toInt(ch);
+                run += 1;
+                if (run >= n) {
+                    counts[index] += 1;
+                    total += 1;
+                }
+            }
+        }
+
+        /** Return the logarithm of the estimated probability of n-gram
+         *  G. */
+        float logProb(int g) {
+            if (total == 0) {
+                throw error("corpus has no %d-grams", n);
+            }
+            return (float) Math.log10((counts[g] == 0 ? UNSEEN : counts[g])
+                                      / total);
+        }
+
+        /** Return the logarithms of the estimated probabilities of all
+         *  n-grams. */
+        float[] logProbs() {
+            float[] result = new float[counts.length];
+            for (int g = 0; g < result.length; ++g) {
+                result[g] = logProb(g);
+            }
+            return result;
+        }
+
+        /** The alphabet counted. */
+        private final Alphabet alpha;
+        /** Length of the n-grams. */
+        private final int n;
+        /** Number of (n-1)-grams. */
+        private final int modulus;
+        /** Number of times each n-gram has appeared. */
+        private final long[] counts;
+        /** Total of counts. */
+        private double total;
+        /** Index of the latest n-gram (or part of one). */
+        private int index;
+        /** Number of alphabet characters since the last separator. */
+        private int run;
+    }
+
+    /** The count assumed for n-grams missing from a sample. */
+    static final double UNSEEN = 0.01;
+
+    /** First integer of a table file. */
+    static final int MAGIC = 0x4e47524d;
+    /** Version of the table file format. */
+    static final int VERSION = 1;
+    /** Number of integers at the start of a table file: MAGIC, VERSION,
+     *  n, and the size of the alphabet, which follows. */
+    private static final int HEADER_INTS = 4;
+
+    /** Size of the alphabet. */
+    private final int _size;
+    /** Length of the n-grams. */
+    private final int _n;
+    /** Logarithms of the probabilities of all n-grams. */
+    private final FloatBuffer _logProbs;
+    /** Number of (n-1)-grams. */
+    private final int _modulus;
+}
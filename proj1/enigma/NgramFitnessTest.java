@@ -0,0 +1,99 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/** The suite of all JUnit tests for the NgramFitness class.
+ *  @author Karl Meissner
+ */
+public class NgramFitnessTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    private Alphabet alpha = new Alphabet();
+
+    /** Return the alphabet indices of the letters of TEXT. */
+    private int[] indices(String text) {
+        int[] result = new int[text.length()];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = alpha.toInt(text.charAt(i));
+        }
+        return result;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void tableFileTest() throws IOException {
+        Path corpus = Files.createTempFile("corpus", ".txt");
+        Path built = Files.createTempFile("built", ".ngrams");
+        Path saved = Files.createTempFile("saved", ".ngrams");
+        try {
+            Files.write(corpus, HillClimberTest.CORPUS.getBytes());
+            NgramFitness direct =
+                NgramFitness.fromText(alpha, 3, HillClimberTest.CORPUS);
+            NgramFitness.build(corpus, built, alpha, 3);
+            direct.save(saved, alpha);
+            assertTrue(NgramFitness.isTable(built));
+            assertFalse(NgramFitness.isTable(corpus));
+            NgramFitness mapped = NgramFitness.load(built, alpha);
+            NgramFitness reloaded = NgramFitness.load(saved, alpha);
+            NgramFitness streamed = NgramFitness.fromFile(corpus, alpha, 3);
+            assertEquals(3, mapped.n());
+            for (String text : new String[] {"ITWASTHEBEST", "QXZJ", "AB"}) {
+                int[] t = indices(text);
+                double expected = direct.score(t, t.length);
+                assertEquals(expected, mapped.score(t, t.length), 0.0);
+                assertEquals(expected, reloaded.score(t, t.length), 0.0);
+                assertEquals(expected, streamed.score(t, t.length), 0.0);
+            }
+        } finally {
+            Files.delete(corpus);
+            Files.delete(built);
+            Files.delete(saved);
+        }
+    }
+
+    @Test
+    public void wrongAlphabetTest() throws IOException {
+        Path table = Files.createTempFile("table", ".ngrams");
+        try {
+            NgramFitness.fromText(alpha, 2, "HELLO WORLD").save(table, alpha);
+            NgramFitness.load(table,
+                              new Alphabet("ABCDEFGHIJKLMNOPQRSTUVWXZY"));
+            fail("alphabet mismatch not detected");
+        } catch (EnigmaException excp) {
+            return;
+        } finally {
+            Files.delete(table);
+        }
+    }
+
+    @Test
+    public void truncatedHeaderTest() throws IOException {
+        Path table = Files.createTempFile("table", ".ngrams");
+        try {
+            NgramFitness.fromText(alpha, 2, "HELLO WORLD").save(table, alpha);
+            byte[] whole = Files.readAllBytes(table);
+            Files.write(table, Arrays.copyOf(whole, 30));
+            NgramFitness.load(table, alpha);
+            fail("truncated header not detected");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().contains("truncated"));
+        } finally {
+            Files.delete(table);
+        }
+    }
+
+}
@@ -0,0 +1,465 @@
+package enigma;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static enigma.EnigmaException.*;
+
+/** A Bombe search whose rotor orders are numbered work units, shared out
+ *  among any number of worker processes through a directory they can all
+ *  see (on one host, or on several sharing a file system).  No other
+ *  communication between workers is needed.
+ *
+ *  The directory holds a file "job" describing the search (including
+ *  the wiring and notches of every rotor available), which every worker
+ *  checks against its own, and for each unit N some of
+ *  <pre>
+ *      unit-N.lock   the claim of the worker searching it,
+ *      unit-N.ckpt   the stops searched so far, and the stops found,
+ *      unit-N.done   the stops found, once the unit is complete.
+ *  </pre>
+ *  A worker claims a unit by creating its lock file, which succeeds for
+ *  only one worker, and periodically writes a checkpoint and touches the
+ *  lock.  A lock not touched for a while is taken to belong to a dead
+ *  worker, and the unit is claimed again, resuming from its checkpoint.
+ *  Checkpoints and results are written to a temporary file and then
+ *  renamed into place, so a reader never sees a partial file.  Since a
+ *  unit's results do not depend on who searches it, the rare unit
+ *  searched twice (say, by a worker wrongly presumed dead) is harmless.
+ *
+ *  So a search is resumed by starting workers again in the same
+ *  directory, scaled out by starting more of them, and collected by
+ *  merge once every unit is done.
+ *  @author Karl Meissner
+ */
+class PartitionedSearch {
+
+    /** Milliseconds between checkpoints. */
+    static final long CHECKPOINT_MILLIS = 30_000;
+    /** Milliseconds after which an untouched lock is presumed abandoned.
+     *  Generous, since workers on different hosts compare their clocks
+     *  with a file server's. */
+    static final long STALE_MILLIS = 10 * 60_000;
+
+    /** Name of the file describing the search. */
+    static final String JOB = "job";
+
+    /** A search of DIR for stops of MACHINE's rotor orders at which the
+     *  CRIB, at OFFSET in CIPHERTEXT, is possible, as for Bombe.  Creates
+     *  DIR and its job file if necessary, and otherwise checks that they
+     *  describe the same search. */
+    PartitionedSearch(Path dir, Machine machine, String ciphertext,
+                      String crib, int offset) {
+        _dir = dir;
+        _bombe = new Bombe(machine, ciphertext, crib, offset);
+        _orders = _bombe.orders();
+        _chunk = _bombe.stopsPerOrder() / machine.alphabet().size();
+        StringBuilder job = new StringBuilder();
+        job.append("ciphertext ").append(ciphertext).append('\n');
+        job.append("crib ").append(crib).append('\n');
+        job.append("offset ").append(offset).append('\n');
+        job.append("stops ").append(_bombe.stopsPerOrder()).append('\n');
+        List<Rotor> rotors = new ArrayList<>(machine.availableRotors());
+        rotors.sort(Comparator.comparing(Rotor::name));
+        for (Rotor rotor : rotors) {
+            job.append("rotor ").append(describe(rotor.copy()))
+                .append('\n');
+        }
+        for (String[] order : _orders) {
+            job.append("order ").append(String.join(" ", order))
+                .append('\n');
+        }
+        _id = workerId();
+        _checkpointMillis = CHECKPOINT_MILLIS;
+        _staleMillis = STALE_MILLIS;
+        openJob(job.toString());
+    }
+
+    /** Return the number of work units. */
+    int units() {
+        return _orders.size();
+    }
+
+    /** Return the rotor order searched by UNIT. */
+    String[] order(int unit) {
+        return _orders.get(unit).clone();
+    }
+
+    /** Set the milliseconds between checkpoints to MILLIS. */
+    void checkpointInterval(long millis) {
+        _checkpointMillis = millis;
+    }
+
+    /** Presume locks not touched for MILLIS milliseconds abandoned. */
+    void staleAfter(long millis) {
+        _staleMillis = millis;
+    }
+
+    /** Search every unit not yet done or claimed, with one worker per
+     *  thread of POOL, passing each stop found to FOUND (one thread at a
+     *  time).  Returns the number of units this process completed. */
+    int work(ForkJoinPool pool, Consumer<Bombe.Stop> found) {
+        AtomicInteger completed = new AtomicInteger();
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int w = 0; w < pool.getParallelism(); ++w) {
+            String worker = _id + "/" + w;
+            tasks.add(pool.submit(() -> {
+                for (int unit = 0; unit < units(); ++unit) {
+                    if (claim(unit, worker) && search(unit, worker, found)) {
+                        completed.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+        return completed.get();
+    }
+
+    /** Try to claim UNIT for WORKER, returning true iff it is not done
+     *  and is now WORKER's. */
+    boolean claim(int unit, String worker) {
+        Path lock = file(unit, "lock");
+        for (int attempt = 0; attempt < 2; ++attempt) {
+            if (Files.exists(file(unit, "done"))) {
+                return false;
+            }
+            try {
+                Files.write(Files.createFile(lock),
+                            worker.getBytes(StandardCharsets.UTF_8));
+                if (Files.exists(file(unit, "done"))) {
+                    Files.delete(lock);
+                    return false;
+                }
+                return true;
+            } catch (FileAlreadyExistsException excp) {
+                if (!steal(lock, worker)) {
+                    return false;
+                }
+            } catch (IOException excp) {
+                throw error("could not lock %s", lock);
+            }
+        }
+        return false;
+    }
+
+    /** Search UNIT, which WORKER has claimed, from its checkpoint if it
+     *  has one, passing each new stop found to FOUND.  Returns true iff
+     *  the unit was completed, and false if WORKER lost its claim. */
+    boolean search(int unit, String worker, Consumer<Bombe.Stop> found) {
+        String[] order = _orders.get(unit);
+        long stops = _bombe.stopsPerOrder();
+        List<String> results = new ArrayList<>();
+        long next = readCheckpoint(unit, results);
+        long saved = System.currentTimeMillis();
+        while (next < stops) {
+            long to = Math.min(stops, next + _chunk);
+            _bombe.search(order, next, to, stop -> {
+                results.add(stop.toString());
+                synchronized (found) {
+                    found.accept(stop);
+                }
+            });
+            next = to;
+            if (next < stops
+                && System.currentTimeMillis() - saved >= _checkpointMillis) {
+                if (!holds(unit, worker)) {
+                    return false;
+                }
+                writeCheckpoint(unit, next, results);
+                saved = System.currentTimeMillis();
+            }
+        }
+        if (!holds(unit, worker)) {
+            return false;
+        }
+        replace(file(unit, "done"), String.join("\n", results));
+        try {
+            Files.deleteIfExists(file(unit, "ckpt"));
+            Files.deleteIfExists(file(unit, "lock"));
+        } catch (IOException excp) {
+            throw error("could not release unit %d", unit);
+        }
+        return true;
+    }
+
+    /** Return the stops found by the search in DIR, unit by unit, as
+     *  settings lines.  Adds the numbers of the units not yet done to
+     *  MISSING. */
+    static List<String> merge(Path dir, List<Integer> missing) {
+        int units = 0;
+        for (String line : read(dir.resolve(JOB))) {
+            if (line.startsWith("order ")) {
+                units += 1;
+            }
+        }
+        List<String> result = new ArrayList<>();
+        for (int unit = 0; unit < units; ++unit) {
+            Path done = dir.resolve(String.format("unit-%d.done", unit));
+            if (!Files.exists(done)) {
+                missing.add(unit);
+                continue;
+            }
+            for (String line : read(done)) {
+                if (!line.isEmpty()) {
+                    result.add(line);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Run a worker on the search described by ARGS, or merge its
+     *  results.  With ARGS DIR CONFIG CIPHERTEXT CRIB [OFFSET], searches
+     *  units of the search in DIR, as for Bombe, printing the stops found
+     *  as they are found.  With ARGS --merge DIR, prints every stop found
+     *  by all workers, and fails if any unit is not yet done. */
+    public static void main(String... args) {
+        try {
+            if (args.length == 2 && args[0].equals("--merge")) {
+                List<Integer> missing = new ArrayList<>();
+                for (String line : merge(Paths.get(args[1]), missing)) {
+                    System.out.println(line);
+                }
+                if (missing.isEmpty()) {
+                    return;
+                }
+                throw error("%d units not done, starting with unit %d",
+                            missing.size(), missing.get(0));
+            }
+            if (args.length < 4 || args.length > 5) {
+                throw error("Usage: java enigma.PartitionedSearch DIR CONFIG"
+                            + " CIPHERTEXT CRIB [OFFSET]%n"
+                            + "       java enigma.PartitionedSearch --merge"
+                            + " DIR");
+            }
+            int offset;
+            try {
+                offset = args.length > 4 ? Integer.parseInt(args[4]) : 0;
+            } catch (NumberFormatException excp) {
+                throw error("bad offset: %s", args[4]);
+            }
+            PartitionedSearch search =
+                new PartitionedSearch(Paths.get(args[0]),
+                                      Main.readMachine(args[1]), args[2],
+                                      args[3], offset);
+            ForkJoinPool pool = new ForkJoinPool();
+            try {
+                int done = search.work(pool, System.out::println);
+                System.err.printf("%d of %d units searched here%n", done,
+                                  search.units());
+            } finally {
+                pool.shutdown();
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return the name, kind, wiring and notches of ROTOR, which is mine
+     *  to move, on one line, so that job files made with different
+     *  configurations differ even where their rotors' names agree. */
+    private static String describe(Rotor rotor) {
+        Alphabet alpha = rotor.alphabet();
+        StringBuilder result = new StringBuilder(rotor.name());
+        result.append(rotor.reflecting() ? " R" : rotor.rotates() ? " M"
+                      : " N");
+        if (rotor.rotates()) {
+            for (int k = 0; k < rotor.size(); ++k) {
+                rotor.set(k);
+                if (rotor.atNotch()) {
+                    result.append(alpha.encode(k));
+                }
+            }
+        }
+        result.append(' ').append(rotor.permutation().cycles());
+        return result.toString();
+    }
+
+    /** Create my directory and job file, containing JOB, or check that
+     *  an existing job file contains JOB. */
+    private void openJob(String job) {
+        Path file = _dir.resolve(JOB);
+        try {
+            Files.createDirectories(_dir);
+            if (!Files.exists(file)) {
+                Path temp = temporary(file);
+                Files.write(temp, job.getBytes(StandardCharsets.UTF_8));
+                try {
+                    Files.move(temp, file);
+                } catch (FileAlreadyExistsException excp) {
+                    Files.delete(temp);
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not create %s", file);
+        }
+        if (!String.join("\n", read(file)).equals(job.trim())) {
+            throw error("%s holds a different search", _dir);
+        }
+    }
+
+    /** Take over LOCK for WORKER if it has not been touched for a while.
+     *  Returns true iff it was abandoned and has been removed, so that
+     *  WORKER may try to create it again. */
+    private boolean steal(Path lock, String worker) {
+        try {
+            FileTime touched = Files.getLastModifiedTime(lock);
+            if (System.currentTimeMillis() - touched.toMillis()
+                < _staleMillis) {
+                return false;
+            }
+            Path stale = lock.resolveSibling(lock.getFileName() + "."
+                                             + worker.replace('/', '-')
+                                             + ".stale");
+            Files.move(lock, stale, ATOMIC_MOVE);
+            Files.delete(stale);
+            return true;
+        } catch (NoSuchFileException excp) {
+            return true;
+        } catch (IOException excp) {
+            throw error("could not take over %s", lock);
+        }
+    }
+
+    /** Return true iff WORKER still holds the lock on UNIT, touching it
+     *  if so. */
+    private boolean holds(int unit, String worker) {
+        Path lock = file(unit, "lock");
+        try {
+            String owner = new String(Files.readAllBytes(lock),
+                                      StandardCharsets.UTF_8);
+            if (!owner.equals(worker)) {
+                return false;
+            }
+            Files.setLastModifiedTime(lock, FileTime.fromMillis(
+                System.currentTimeMillis()));
+            return true;
+        } catch (NoSuchFileException excp) {
+            return false;
+        } catch (IOException excp) {
+            throw error("could not read %s", lock);
+        }
+    }
+
+    /** Add the stops found recorded in UNIT's checkpoint to RESULTS, and
+     *  return the number of the first stop not searched, which is 0 if
+     *  there is no checkpoint. */
+    private long readCheckpoint(int unit, List<String> results) {
+        Path ckpt = file(unit, "ckpt");
+        if (!Files.exists(ckpt)) {
+            return 0;
+        }
+        List<String> lines = read(ckpt);
+        if (lines.isEmpty() || !lines.get(0).startsWith("next ")) {
+            throw error("bad checkpoint %s", ckpt);
+        }
+        long next;
+        try {
+            next = Long.parseLong(lines.get(0).substring(5).trim());
+        } catch (NumberFormatException excp) {
+            throw error("bad checkpoint %s", ckpt);
+        }
+        if (next < 0 || next > _bombe.stopsPerOrder()) {
+            throw error("bad checkpoint %s", ckpt);
+        }
+        for (String line : lines.subList(1, lines.size())) {
+            if (!line.isEmpty()) {
+                results.add(line);
+            }
+        }
+        return next;
+    }
+
+    /** Record in UNIT's checkpoint that the stops before NEXT have been
+     *  searched, finding RESULTS. */
+    private void writeCheckpoint(int unit, long next, List<String> results) {
+        StringBuilder text = new StringBuilder("next ").append(next);
+        for (String line : results) {
+            text.append('\n').append(line);
+        }
+        replace(file(unit, "ckpt"), text.toString());
+    }
+
+    /** Replace the contents of FILE with TEXT atomically. */
+    private void replace(Path file, String text) {
+        Path temp = temporary(file);
+        try {
+            Files.write(temp, text.getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, file, ATOMIC_MOVE, REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw error("could not write %s", file);
+        }
+    }
+
+    /** Return a name for a temporary file beside FILE, unique to this
+     *  process and thread. */
+    private Path temporary(Path file) {
+        return file.resolveSibling(file.getFileName() + "."
+                                   + _id.replace('/', '-') + "-"
+                                   + Thread.currentThread().getId()
+                                   + ".tmp");
+    }
+
+    /** Return UNIT's file with the given SUFFIX. */
+    private Path file(int unit, String suffix) {
+        return _dir.resolve(String.format("unit-%d.%s", unit, suffix));
+    }
+
+    /** Return the lines of FILE. */
+    private static List<String> read(Path file) {
+        try {
+            return Files.readAllLines(file, StandardCharsets.UTF_8);
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        }
+    }
+
+    /** Return a name for this process, unique among the workers of a
+     *  search. */
+    private static String workerId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (IOException excp) {
+            host = "localhost";
+        }
+        return host + "-" + ProcessHandle.current().pid() + "-"
+            + System.nanoTime();
+    }
+
+    /** The directory shared by the workers. */
+    private final Path _dir;
+    /** The search of one unit. */
+    private final Bombe _bombe;
+    /** The rotor order of each unit. */
+    private final List<String[]> _orders;
+    /** The number of stops searched between chances to checkpoint: those
+     *  with one position of slot 1. */
+    private final long _chunk;
+    /** The name of this process among the workers. */
+    private final String _id;
+    /** Milliseconds between checkpoints. */
+    private long _checkpointMillis;
+    /** Milliseconds after which a lock is presumed abandoned. */
+    private long _staleMillis;
+}
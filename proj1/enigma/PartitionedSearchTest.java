@@ -0,0 +1,211 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the PartitionedSearch class.
+ *  @author Karl Meissner
+ */
+public class PartitionedSearchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Plaintext of the test message. */
+    private static final String PLAIN =
+        "WEATHERREPORTNOTHINGTOREPORTFROMTHEFRONT";
+
+    /** Return the test message, encrypted by a machine built by
+     *  threeRotorMachine. */
+    private String cipher() {
+        Machine machine = threeRotorMachine();
+        machine.insertRotors(new String[] {"Loren", "Karl", "Anthony"});
+        machine.setPlugboard(new Permutation("(AQ) (EP) (HT) (LM) (RX)",
+                                             new Alphabet()));
+        machine.setRotors("XP");
+        return machine.convert(PLAIN);
+    }
+
+    /** Return a search of DIR for the test crib. */
+    private PartitionedSearch search(Path dir, String cipher) {
+        return new PartitionedSearch(dir, threeRotorMachine(), cipher,
+                                     PLAIN.substring(3, 30), 3);
+    }
+
+    /** Return the stops found by an ordinary Bombe search for the test
+     *  crib in CIPHER. */
+    private List<String> expected(String cipher) {
+        Bombe bombe = new Bombe(threeRotorMachine(), cipher,
+                                PLAIN.substring(3, 30), 3);
+        List<String> result = new ArrayList<>();
+        for (String[] order : bombe.orders()) {
+            bombe.search(order, 0, bombe.stopsPerOrder(),
+                         stop -> result.add(stop.toString()));
+        }
+        return result;
+    }
+
+    /** Return a machine built by threeRotorMachine, but with ROTOR in place
+     *  of the rotor of the same name. */
+    private Machine withRotor(Rotor rotor) {
+        Machine base = threeRotorMachine();
+        List<Rotor> rotors = new ArrayList<>();
+        for (Rotor r : base.availableRotors()) {
+            rotors.add(r.name().equals(rotor.name()) ? rotor : r);
+        }
+        return new Machine(base.alphabet(), base.numRotors(),
+                           base.numPawls(), rotors);
+    }
+
+    /** Delete DIR and its contents. */
+    private void delete(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void workTest() throws IOException {
+        Path dir = Files.createTempDirectory("search");
+        try {
+            String cipher = cipher();
+            PartitionedSearch first = search(dir, cipher);
+            assertEquals(6, first.units());
+            List<String> found = new ArrayList<>();
+            ForkJoinPool pool = new ForkJoinPool(3);
+            assertEquals(6, first.work(pool, s -> found.add(s.toString())));
+            PartitionedSearch second = search(dir, cipher);
+            assertEquals(0, second.work(pool, s -> found.add(s.toString())));
+            pool.shutdown();
+            List<Integer> missing = new ArrayList<>();
+            List<String> merged = PartitionedSearch.merge(dir, missing);
+            assertTrue(missing.isEmpty());
+            assertEquals(expected(cipher), merged);
+            assertEquals(merged.size(), found.size());
+            assertTrue(merged.containsAll(found));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void resumeTest() throws IOException {
+        Path dir = Files.createTempDirectory("search");
+        try {
+            String cipher = cipher();
+            PartitionedSearch search = search(dir, cipher);
+            Bombe bombe = new Bombe(threeRotorMachine(), cipher,
+                                    PLAIN.substring(3, 30), 3);
+            String[] order = search.order(0);
+            long half = bombe.stopsPerOrder() / 2;
+            List<String> before = new ArrayList<>();
+            bombe.search(order, 0, half, s -> before.add(s.toString()));
+            StringBuilder ckpt = new StringBuilder("next " + half);
+            for (String line : before) {
+                ckpt.append('\n').append(line);
+            }
+            Files.write(dir.resolve("unit-0.ckpt"),
+                        ckpt.toString().getBytes());
+            Path lock = dir.resolve("unit-0.lock");
+            Files.write(lock, "dead".getBytes());
+            assertFalse(search.claim(0, "alive"));
+
+            Files.setLastModifiedTime(lock, FileTime.fromMillis(0));
+            search.staleAfter(1000);
+            List<String> found = new ArrayList<>();
+            assertTrue(search.claim(0, "alive"));
+            assertTrue(search.search(0, "alive",
+                                     s -> found.add(s.toString())));
+            assertFalse(Files.exists(lock));
+            assertFalse(search.claim(0, "other"));
+
+            List<String> after = new ArrayList<>();
+            bombe.search(order, half, bombe.stopsPerOrder(),
+                         s -> after.add(s.toString()));
+            assertEquals(after, found);
+            List<Integer> missing = new ArrayList<>();
+            List<String> merged = PartitionedSearch.merge(dir, missing);
+            before.addAll(after);
+            assertEquals(before, merged);
+            assertEquals(5, missing.size());
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void lostClaimTest() throws IOException {
+        Path dir = Files.createTempDirectory("search");
+        try {
+            PartitionedSearch search = search(dir, cipher());
+            assertTrue(search.claim(1, "slow"));
+            Files.write(dir.resolve("unit-1.lock"), "fast".getBytes());
+            assertFalse(search.search(1, "slow", s -> { }));
+            assertFalse(Files.exists(dir.resolve("unit-1.done")));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void differentJobTest() throws IOException {
+        Path dir = Files.createTempDirectory("search");
+        try {
+            String cipher = cipher();
+            search(dir, cipher);
+            new PartitionedSearch(dir, threeRotorMachine(), cipher,
+                                  PLAIN.substring(3, 29), 3);
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void differentConfigTest() throws IOException {
+        Path dir = Files.createTempDirectory("search");
+        Alphabet standard = new Alphabet();
+        Permutation wiring =
+            new Permutation("(ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)", standard);
+        Rotor[] others = {
+            new MovingRotor("Rachel", wiring, "W"),
+            new MovingRotor("Rachel", new Permutation("(AB)", standard), "V")
+        };
+        try {
+            String cipher = cipher();
+            search(dir, cipher);
+            for (Rotor rachel : others) {
+                try {
+                    new PartitionedSearch(dir, withRotor(rachel), cipher,
+                                          PLAIN.substring(3, 30), 3);
+                    fail("joined a search with another configuration");
+                } catch (EnigmaException excp) {
+                    assertTrue(excp.getMessage().contains("different"));
+                }
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+}
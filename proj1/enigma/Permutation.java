@@ -1,9 +1,7 @@
 package enigma;
 
+import java.util.Arrays;
 import java.util.Scanner;
-import java.util.List;
-import java.util.ArrayList;
-import java.util.HashMap;
 
 import static enigma.EnigmaException.*;
 
@@ -20,6 +18,16 @@ class Permutation {
      *  Whitespace is ignored. */
     Permutation(String cycles, Alphabet alphabet) {
         _alphabet = alphabet;
+        _forward = new int[alphabet.size()];
+        _inverse = new int[alphabet.size()];
+        for (int k = 0; k < _forward.length; ++k) {
+            _forward[k] = k;
+            _inverse[k] = k;
+        }
+        if (alphabet.isBytes()) {
+            addHexCycles(cycles);
+            return;
+        }
         cycles = cycles.replaceAll("[\\s]+", " ");
         if (!cycles.equals("")) {
             if (cycles.contains(")(")) {
@@ -38,38 +46,98 @@ class Permutation {
                 } else if (z && !w) {
                     throw error("Parentheses Error");
                 }
-                next = next.replaceAll("[()]", "");
-                List<Character> L = new ArrayList<Character>(0);
-                for (int i = 0; i < next.length(); ++i) {
-                    L.add(next.charAt(i));
-                }
-                int szL = L.size() - 1;
-                for (int j = 0; j < szL; ++j) {
-                    perm.put(L.get(j), L.get(j + 1));
-                    revPerm.put(L.get(szL - j), L.get(szL - j - 1));
-                }
-                perm.put(L.get(L.size() - 1), L.get(0));
-                revPerm.put(L.get(0), L.get(L.size() - 1));
+                addCycle(next.replaceAll("[()]", ""));
+            }
+        }
+    }
+
+    /** Set this Permutation to the one taking each index K of ALPHABET
+     *  to TABLE[K].  TABLE must contain each index exactly once.  This is
+     *  the natural form for permutations computed rather than written,
+     *  such as random byte permutations. */
+    Permutation(int[] table, Alphabet alphabet) {
+        if (table.length != alphabet.size()) {
+            throw error("permutation table does not fit alphabet");
+        }
+        _alphabet = alphabet;
+        _forward = table.clone();
+        _inverse = new int[table.length];
+        Arrays.fill(_inverse, -1);
+        for (int k = 0; k < table.length; ++k) {
+            int v = table[k];
+            if (v < 0 || v >= table.length || _inverse[v] >= 0) {
+                throw error("table is not a permutation");
             }
-        } else {
-            perm.put("", "");
-            revPerm.put("", "");
+            _inverse[v] = k;
+        }
+    }
+
+    /** Set this Permutation to the one taking each index K of ALPHABET
+     *  to FORWARD[K], whose inverse is INVERSE, as read back from tables
+     *  written earlier.  The tables are kept rather than copied, and
+     *  checked only to be each other's inverse, which is enough to make
+     *  them permutations. */
+    Permutation(Alphabet alphabet, int[] forward, int[] inverse) {
+        int n = alphabet.size();
+        if (forward.length != n || inverse.length != n) {
+            throw error("permutation table does not fit alphabet");
         }
-        for (int k = 0; k < _alphabet.size(); ++k) {
-            if (!perm.containsKey(_alphabet.toChar(k))) {
-                perm.put(_alphabet.toChar(k), _alphabet.toChar(k));
-                revPerm.put(_alphabet.toChar(k), _alphabet.toChar(k));
+        for (int k = 0; k < n; ++k) {
+            int v = forward[k];
+            if (v < 0 || v >= n || inverse[v] != k) {
+                throw error("tables are not inverse permutations");
             }
         }
+        _alphabet = alphabet;
+        _forward = forward;
+        _inverse = inverse;
+    }
+
+    /** Add the cycles in CYCLES, a string in the form "(hhhh) (hh) ..."
+     *  in which each character of the byte alphabet is written as a pair
+     *  of hex digits. */
+    private void addHexCycles(String cycles) {
+        boolean[] used = new boolean[_forward.length];
+        for (String cycle : cycles.replace(")(", ") (").trim().split("\\s+")) {
+            if (cycle.isEmpty()) {
+                continue;
+            }
+            if (cycle.length() < 4 || cycle.charAt(0) != '('
+                || cycle.indexOf(')') != cycle.length() - 1) {
+                throw error("Parentheses Error");
+            }
+            String chars =
+                _alphabet.decode(cycle.substring(1, cycle.length() - 1));
+            for (int i = 0; i < chars.length(); ++i) {
+                if (used[chars.charAt(i)]) {
+                    throw error("Duplicate Cycles Characters");
+                }
+                used[chars.charAt(i)] = true;
+            }
+            addCycle(chars);
+        }
     }
 
     /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
      *  c0c1...cm. */
     private void addCycle(String cycle) {
+        int first = _alphabet.toInt(cycle.charAt(0));
+        int prev = first;
+        for (int i = 1; i < cycle.length(); ++i) {
+            int next = _alphabet.toInt(cycle.charAt(i));
+            _forward[prev] = next;
+            _inverse[next] = prev;
+            prev = next;
+        }
+        _forward[prev] = first;
+        _inverse[first] = prev;
     }
 
     /** Return the value of P modulo the size of this permutation. */
     final int wrap(int p) {
+        if (p >= 0 && p < _forward.length) {
+            return p;
+        }
         int r = p % size();
         if (r < 0) {
             r += size();
@@ -85,26 +153,24 @@ class Permutation {
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        char ch = (char) perm.get(_alphabet.toChar(wrap(p)));
-        return _alphabet.toInt(ch);
+        return _forward[wrap(p)];
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        char ch = (char) revPerm.get(_alphabet.toChar(wrap(c)));
-        return _alphabet.toInt(ch);
+        return _inverse[wrap(c)];
     }
 
     /** Return the result of applying this permutation to the index of P
      *  in ALPHABET, and converting the result to a character of ALPHABET. */
     char permute(char p) {
-        return (char) perm.get(p);
+        return _alphabet.toChar(_forward[_alphabet.toInt(p)]);
     }
 
     /** Return the result of applying the inverse of this permutation to C. */
     char invert(char c) {
-        return (char) revPerm.get(c);
+        return _alphabet.toChar(_inverse[_alphabet.toInt(c)]);
     }
 
     /** Return the alphabet used to initialize this Permutation. */
@@ -115,14 +181,44 @@ class Permutation {
     /** Return true iff this permutation is a derangement (i.e., a
      *  permutation for which no value maps to itself). */
     boolean derangement() {
-        for (int i = 0; i < _alphabet.size(); ++i) {
-            if (permute(_alphabet.toChar(i)) == _alphabet.toChar(i)) {
+        for (int i = 0; i < _forward.length; ++i) {
+            if (_forward[i] == i) {
                 return false;
             }
         }
         return true;
     }
 
+    /** Return me in cycle notation, as the constructor reads it (with
+     *  bytes as pairs of hex digits, for the byte alphabet), with
+     *  the cycles in order of their first characters, each starting with
+     *  its first character in my alphabet.  Fixed points are left out. */
+    String cycles() {
+        return cycles(_forward, _alphabet);
+    }
+
+    /** Return the permutation of the indices of ALPHABET that takes K to
+     *  TABLE[K] in cycle notation, as for cycles(). */
+    static String cycles(int[] table, Alphabet alphabet) {
+        StringBuilder result = new StringBuilder();
+        boolean[] seen = new boolean[table.length];
+        for (int first = 0; first < table.length; ++first) {
+            if (seen[first] || table[first] == first) {
+                continue;
+            }
+            if (result.length() > 0) {
+                result.append(' ');
+            }
+            result.append('(');
+            for (int k = first; !seen[k]; k = table[k]) {
+                seen[k] = true;
+                result.append(alphabet.encode(k));
+            }
+            result.append(')');
+        }
+        return result.toString();
+    }
+
     /** Checks and throws error for invalid whitespace, duplicate characters,
      * characters not in alphabet, or select parentheses errors
      * in cycles string CY. Otherwise, returns CY.
@@ -168,9 +264,10 @@ class Permutation {
     /** Alphabet of this permutation. */
     private Alphabet _alphabet;
 
-    /** HashMap to map permutation values. */
-    private HashMap perm = new HashMap(0);
+    /** Index of the image of each alphabet index under this permutation. */
+    private final int[] _forward;
 
-    /** HashMap to inverse map permutation values. */
-    private HashMap revPerm = new HashMap(0);
+    /** Index of the preimage of each alphabet index, the inverse of
+     *  _forward. */
+    private final int[] _inverse;
 }
@@ -109,6 +109,70 @@ public class PermutationTest {
         assertTrue(tester5.derangement());
     }
 
+    @Test
+    public void cyclesTests() {
+        assertEquals("(ABCD)", tester1.cycles());
+        assertEquals("(BE)", tester2.cycles());
+        assertEquals("(AB) (DF) (GHI)", tester3.cycles());
+        assertEquals("", new Permutation("", standard).cycles());
+        Permutation mixed = new Permutation("(DCA) (S) (ZY)", standard);
+        assertEquals("(ADC) (YZ)", mixed.cycles());
+        Permutation again = new Permutation(mixed.cycles(), standard);
+        for (int k = 0; k < 26; ++k) {
+            assertEquals(mixed.permute(k), again.permute(k));
+        }
+    }
+
+    @Test
+    public void tableTests() {
+        Permutation table =
+            new Permutation(new int[] {1, 2, 0, 4, 3}, new Alphabet("ABCDE"));
+        assertEquals(2, table.permute(1));
+        assertEquals(1, table.invert(2));
+        assertEquals('D', table.invert('E'));
+        assertEquals("(ABC) (DE)", table.cycles());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void badTableTest() {
+        new Permutation(new int[] {1, 1, 0, 4, 3}, new Alphabet("ABCDE"));
+    }
+
+    @Test
+    public void inverseTablesTest() {
+        Alphabet alpha = new Alphabet("ABCDE");
+        Permutation p = new Permutation(alpha, new int[] {2, 0, 1, 4, 3},
+                                        new int[] {1, 2, 0, 4, 3});
+        assertEquals(2, p.permute(0));
+        assertEquals(0, p.invert(2));
+        assertEquals("(ACB) (DE)", p.cycles());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void badInverseTablesTest() {
+        new Permutation(new Alphabet("ABC"), new int[] {1, 2, 0},
+                        new int[] {1, 2, 0});
+    }
+
+    @Test
+    public void hexCyclesTests() {
+        Alphabet bytes = Alphabet.bytes();
+        Permutation hex = new Permutation("(00ff20) (0a0d)(2829)", bytes);
+        assertEquals(255, hex.permute(0));
+        assertEquals(32, hex.permute(255));
+        assertEquals(0, hex.permute(32));
+        assertEquals(13, hex.permute(10));
+        assertEquals(40, hex.permute(41));
+        assertEquals(7, hex.permute(7));
+        assertEquals("(00ff20) (0a0d) (2829)", hex.cycles());
+        assertEquals("", new Permutation("", bytes).cycles());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void hexDuplicateTest() {
+        new Permutation("(0001) (0102)", Alphabet.bytes());
+    }
+
     @Test(expected = EnigmaException.class)
     public void constructorTests() {
         String a = "Cycle char not in Alphabet";
@@ -0,0 +1,281 @@
+package enigma;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+
+import static enigma.EnigmaException.*;
+
+/** Converts a sequence of message and settings lines in three stages,
+ *  each on its own thread: reading, converting with a Machine, and
+ *  writing the result in groups.  The stages pass fixed-size blocks to
+ *  one another through bounded queues; a fixed supply of blocks is
+ *  recycled from the writer back to the reader, so that no stage can
+ *  get more than a few blocks ahead of the next.
+ *  @author Karl Meissner
+ */
+class Pipeline {
+
+    /** A Pipeline that reads lines from INPUT, converts message lines with
+     *  MACHINE, and writes them to OUTPUT.  Settings lines (those starting
+     *  with '*') are passed to SETTINGS, in order with the messages, by
+     *  the converting stage.  DEPTH is the number of blocks in circulation
+     *  and BLOCKSIZE is the number of characters each holds. */
+    Pipeline(LineReader input, MessageWriter output, Machine machine,
+             Consumer<String> settings, int depth, int blockSize) {
+        if (depth < 2 || blockSize < 1) {
+            throw error("bad pipeline dimensions");
+        }
+        _input = input;
+        _output = output;
+        _machine = machine;
+        _settings = settings;
+        _free = new Queue(depth);
+        _toConvert = new Queue(depth);
+        _toWrite = new Queue(depth);
+        for (int i = 0; i < depth; i += 1) {
+            _free.offer(new Block(blockSize));
+        }
+    }
+
+    /** Process all of my input, returning when it has all been written.
+     *  Rethrows the first exception raised by any stage. */
+    void run() {
+        _reader = new Thread(this::read, "enigma-read");
+        _converter = new Thread(this::convert, "enigma-convert");
+        _reader.start();
+        _converter.start();
+        try {
+            write();
+        } catch (RuntimeException | Error excp) {
+            fail(excp, _reader, _converter);
+        }
+        for (Thread stage : new Thread[] { _reader, _converter }) {
+            while (stage.isAlive()) {
+                try {
+                    stage.join();
+                } catch (InterruptedException excp) {
+                    continue;
+                }
+            }
+        }
+        Thread.interrupted();
+        if (_failure instanceof RuntimeException) {
+            throw (RuntimeException) _failure;
+        } else if (_failure instanceof Error) {
+            throw (Error) _failure;
+        } else if (_failure != null) {
+            throw error("pipeline failed: %s", _failure);
+        }
+    }
+
+    /** Return a summary of the average and maximum number of blocks
+     *  waiting in front of each stage. */
+    String report() {
+        return String.format("pipeline queues: convert %s, write %s, "
+                             + "read %s%n",
+                             _toConvert, _toWrite, _free);
+    }
+
+    /** The reading stage.  If it fails, it still marks the end of its
+     *  output, so that everything read so far gets written. */
+    private void read() {
+        try {
+            for (int c = _input.peek(); c >= 0; c = _input.peek()) {
+                if (c == '*') {
+                    Block b = _free.take();
+                    b.kind = Kind.SETTINGS;
+                    b.line = _input.readLine();
+                    _toConvert.put(b);
+                } else {
+                    int n;
+                    do {
+                        Block b = _free.take();
+                        n = _input.readSegment(b.text, 0, b.text.length);
+                        b.len = n;
+                        b.kind = n < 0 ? Kind.END_OF_LINE : Kind.TEXT;
+                        _toConvert.put(b);
+                    } while (n >= 0);
+                }
+            }
+        } catch (InterruptedException excp) {
+            return;
+        } catch (RuntimeException | Error excp) {
+            fail(excp);
+        }
+        try {
+            Block b = _free.take();
+            b.kind = Kind.END;
+            _toConvert.put(b);
+        } catch (InterruptedException excp) {
+            return;
+        }
+    }
+
+    /** The converting stage.  Once a Block is passed on, it may be
+     *  recycled at any time, so its contents are not examined again.
+     *  If it fails, it stops the reader and
+     *  passes on the end of its output, so that everything converted so
+     *  far gets written. */
+    private void convert() {
+        try {
+            while (true) {
+                Block b = _toConvert.take();
+                try {
+                    switch (b.kind) {
+                    case SETTINGS:
+                        _settings.accept(b.line);
+                        b.line = null;
+                        break;
+                    case TEXT:
+                        b.len = _machine.convert(b.text, 0, b.len, b.text);
+                        break;
+                    default:
+                        break;
+                    }
+                } catch (RuntimeException | Error excp) {
+                    fail(excp, _reader);
+                    b.kind = Kind.END;
+                }
+                Kind kind = b.kind;
+                _toWrite.put(b);
+                if (kind == Kind.END) {
+                    return;
+                }
+            }
+        } catch (InterruptedException excp) {
+            return;
+        }
+    }
+
+    /** The writing stage. */
+    private void write() {
+        try {
+            while (true) {
+                Block b = _toWrite.take();
+                switch (b.kind) {
+                case TEXT:
+                    _output.write(b.text, b.len);
+                    break;
+                case END_OF_LINE:
+                    _output.endLine();
+                    break;
+                case END:
+                    return;
+                default:
+                    break;
+                }
+                _free.put(b);
+            }
+        } catch (InterruptedException excp) {
+            return;
+        }
+    }
+
+    /** Record EXCP as the cause of failure, unless there already is one,
+     *  and interrupt the stages in UPSTREAM. */
+    private synchronized void fail(Throwable excp, Thread... upstream) {
+        if (_failure == null) {
+            _failure = excp;
+        }
+        for (Thread stage : upstream) {
+            stage.interrupt();
+        }
+    }
+
+    /** The kinds of Block. */
+    private enum Kind {
+        /** A settings line. */
+        SETTINGS,
+        /** A piece of a message line. */
+        TEXT,
+        /** The end of a message line. */
+        END_OF_LINE,
+        /** The end of the input. */
+        END
+    }
+
+    /** A unit of work passed between stages. */
+    private static class Block {
+        /** A Block holding up to SIZE characters of text. */
+        Block(int size) {
+            text = new char[size];
+        }
+
+        /** What this block holds. */
+        private Kind kind;
+        /** Text of a TEXT block. */
+        private final char[] text;
+        /** Number of characters of text in use. */
+        private int len;
+        /** Contents of a SETTINGS block. */
+        private String line;
+    }
+
+    /** A bounded queue of Blocks that keeps track of how many are
+     *  waiting in it. */
+    private static class Queue {
+        /** A Queue holding at most CAPACITY Blocks. */
+        Queue(int capacity) {
+            _blocks = new ArrayBlockingQueue<>(capacity);
+        }
+
+        /** Add B, which must fit, without counting it. */
+        void offer(Block b) {
+            _blocks.offer(b);
+        }
+
+        /** Add B, waiting for room if needed. */
+        void put(Block b) throws InterruptedException {
+            int depth = _blocks.size();
+            synchronized (this) {
+                _samples += 1;
+                _total += depth;
+                _max = Math.max(_max, depth);
+            }
+            _blocks.put(b);
+        }
+
+        /** Remove and return the next Block, waiting for one if needed. */
+        Block take() throws InterruptedException {
+            return _blocks.take();
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format("avg %.2f max %d",
+                                 _samples == 0 ? 0.0
+                                 : (double) _total / _samples, _max);
+        }
+
+        /** The blocks in this queue. */
+        private final BlockingQueue<Block> _blocks;
+        /** Number of times a Block has been added. */
+        private long _samples;
+        /** Sum of the depths seen when adding Blocks. */
+        private long _total;
+        /** Largest depth seen when adding a Block. */
+        private int _max;
+    }
+
+    /** Source of input lines. */
+    private final LineReader _input;
+    /** Destination for converted lines. */
+    private final MessageWriter _output;
+    /** Machine that converts message text. */
+    private final Machine _machine;
+    /** Receives settings lines. */
+    private final Consumer<String> _settings;
+    /** Blocks waiting to be filled by the reader. */
+    private final Queue _free;
+    /** Blocks waiting for the converter. */
+    private final Queue _toConvert;
+    /** Blocks waiting for the writer. */
+    private final Queue _toWrite;
+    /** Thread running the reading stage. */
+    private Thread _reader;
+    /** Thread running the converting stage. */
+    private Thread _converter;
+    /** First exception raised by a stage, or null. */
+    private Throwable _failure;
+}
@@ -0,0 +1,101 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+
+import static enigma.EnigmaException.*;
+
+/** The suite of all JUnit tests for the Pipeline class.
+ *  @author Karl Meissner
+ */
+public class PipelineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    private MachineTest builder = new MachineTest();
+    private Machine machine = builder.build();
+    private String[] rotors = {"Loren", "Paul", "Rachel", "Karl", "Anthony"};
+    private Permutation plug = new Permutation("(YF) (ZH)", new Alphabet());
+
+    /** Return a LineReader reading TEXT. */
+    private LineReader reader(String text) {
+        return new LineReader(Channels.newChannel(
+            new ByteArrayInputStream(text.getBytes())));
+    }
+
+    /** Set the rotors of machine according to settings line LINE, which
+     *  has the form "* <positions>". */
+    private void settings(String line) {
+        String setting = line.substring(2);
+        if (setting.length() != rotors.length - 1) {
+            throw error("bad setting: %s", setting);
+        }
+        machine.setRotors(setting);
+    }
+
+    /** Run INPUT through a Pipeline with DEPTH blocks of SIZE characters,
+     *  writing the result to OUT. */
+    private void run(String input, StringWriter out, int depth, int size) {
+        MessageWriter output = new MessageWriter(out);
+        Pipeline stages =
+            new Pipeline(reader(input), output, machine, this::settings,
+                         depth, size);
+        try {
+            stages.run();
+        } finally {
+            output.flush();
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void pipelineTest() {
+        machine.insertRotors(rotors);
+        machine.setPlugboard(plug);
+        String input = "* AXLE\nHELLO WORLD\n\n* BVJQ\nTHE QUICK BROWN FOX"
+            + " JUMPS\n* AXLE\nHELLO WORLD\n";
+        machine.setRotors("AXLE");
+        String first = machine.convert("HELLOWORLD");
+        machine.setRotors("BVJQ");
+        String second = machine.convert("THEQUICKBROWNFOXJUMPS");
+        String nl = System.lineSeparator();
+        String expected = first.substring(0, 5) + " " + first.substring(5)
+            + nl + nl + second.substring(0, 5) + " " + second.substring(5, 10)
+            + " " + second.substring(10, 15) + " " + second.substring(15, 20)
+            + " " + second.substring(20) + nl
+            + first.substring(0, 5) + " " + first.substring(5) + nl;
+        for (int size = 1; size <= 8; size += 1) {
+            StringWriter out = new StringWriter();
+            run(input, out, 2 + size % 3, size);
+            assertEquals("block size " + size, expected, out.toString());
+        }
+    }
+
+    @Test
+    public void pipelineErrorTest() {
+        machine.insertRotors(rotors);
+        machine.setPlugboard(plug);
+        machine.setRotors("AXLE");
+        String expected = machine.convert("HELLO") + System.lineSeparator();
+        StringWriter out = new StringWriter();
+        try {
+            run("* AXLE\nHELLO\n* AX\nWORLD\n", out, 2, 3);
+            fail("error not reported");
+        } catch (EnigmaException excp) {
+            assertEquals("bad setting: AX", excp.getMessage());
+        }
+        assertEquals(expected, out.toString());
+    }
+
+}
@@ -13,6 +13,17 @@ class Reflector extends FixedRotor {
         super(name, perm);
     }
 
+    /** A copy of ORIGINAL. */
+    Reflector(Reflector original) {
+        super(original);
+    }
+
+    /** Return a copy of me. */
+    @Override
+    Rotor copy() {
+        return new Reflector(this);
+    }
+
     /** All refectors reflect. */
     @Override
     boolean reflecting() {
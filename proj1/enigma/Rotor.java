@@ -11,6 +11,27 @@ class Rotor {
     Rotor(String name, Permutation perm) {
         _name = name;
         _permutation = perm;
+        _size = perm.size();
+    }
+
+    /** A rotor with the same name, permutation, tables and current
+     *  setting as ORIGINAL, but which moves independently of it.  The
+     *  tables are read under ORIGINAL's lock, which compile holds while
+     *  writing them, so that a copy sees both or neither, complete. */
+    Rotor(Rotor original) {
+        _name = original._name;
+        _permutation = original._permutation;
+        _size = original._size;
+        _setting = original._setting;
+        synchronized (original) {
+            _forwardTable = original._forwardTable;
+            _backwardTable = original._backwardTable;
+        }
+    }
+
+    /** Return a copy of me that can be moved without moving me. */
+    Rotor copy() {
+        return new Rotor(this);
     }
 
     /** Return my name. */
@@ -30,7 +51,7 @@ class Rotor {
 
     /** Return the size of my alphabet. */
     int size() {
-        return alphabet().size();
+        return _size;
     }
 
     /** Return true iff I have a ratchet and can move. */
@@ -61,9 +82,12 @@ class Rotor {
     /** Return the conversion of P (an integer in the range 0..size()-1)
      *  according to my permutation. */
     int convertForward(int p) {
-        if (p >= size()) {
+        if (p >= _size) {
             throw error("Out of Bounds");
         }
+        if (_forwardTable != null && p >= 0) {
+            return _forwardTable[_setting * _size + p];
+        }
         int muted = permutation().permute(p + setting()) - setting();
         return permutation().wrap(muted);
     }
@@ -71,9 +95,12 @@ class Rotor {
     /** Return the conversion of E (an integer in the range 0..size()-1)
      *  according to the inverse of my permutation. */
     int convertBackward(int e) {
-        if (e >= size() || e < 0) {
+        if (e >= _size || e < 0) {
             throw error("Out of Bounds");
         }
+        if (_backwardTable != null) {
+            return _backwardTable[_setting * _size + e];
+        }
         int vert = permutation().invert(e + setting()) - setting();
         return permutation().wrap(vert);
     }
@@ -84,10 +111,67 @@ class Rotor {
         return false;
     }
 
+    /** Tabulate convertForward and convertBackward for every setting, so
+     *  that each conversion becomes a single array access.  Does nothing
+     *  if I am already compiled or my alphabet is larger than
+     *  MAX_COMPILED_SIZE.  Copies made afterwards share the tables.
+     *  Since copying reads the tables under the same lock, several
+     *  threads may compile and copy the same rotor at once. */
+    synchronized void compile() {
+        if (_forwardTable != null || _size > MAX_COMPILED_SIZE) {
+            return;
+        }
+        int[] forward = new int[_size * _size];
+        int[] backward = new int[_size * _size];
+        for (int s = 0; s < _size; ++s) {
+            for (int p = 0; p < _size; ++p) {
+                int k = s * _size + p;
+                forward[k] = _permutation.wrap(_permutation.permute(p + s) - s);
+                backward[k] = _permutation.wrap(_permutation.invert(p + s) - s);
+            }
+        }
+        _forwardTable = forward;
+        _backwardTable = backward;
+    }
+
+    /** Set FORWARD[(ROW + S) * size() + P] and BACKWARD[(ROW + S) * size()
+     *  + P] to my forward and backward conversions of P at setting S, and
+     *  NOTCHES[ROW + S] to whether I am at a notch at setting S, for every
+     *  setting S (only setting 0 if I reflect).  My own setting is not
+     *  changed. */
+    void tabulate(int[] forward, int[] backward, boolean[] notches,
+                  int row) {
+        Rotor probe = copy();
+        int settings = reflecting() ? 1 : _size;
+        for (int s = 0; s < settings; ++s) {
+            probe.set(s);
+            notches[row + s] = probe.atNotch();
+            for (int p = 0; p < _size; ++p) {
+                forward[(row + s) * _size + p] = probe.convertForward(p);
+                backward[(row + s) * _size + p] = probe.convertBackward(p);
+            }
+        }
+    }
+
+    /** Return true iff I have been compiled. */
+    boolean compiled() {
+        return _forwardTable != null;
+    }
+
     /** Advance me one position, if possible. By default, does nothing. */
     void advance() {
     }
 
+    /** Advance me K positions, if possible. By default, does nothing. */
+    void advance(int k) {
+    }
+
+    /** Return the number of advances needed to bring me to a notch (0 if
+     *  I am at one now), or -1 if that will never happen. */
+    int distanceToNotch() {
+        return -1;
+    }
+
     @Override
     public String toString() {
         return "Rotor " + _name;
@@ -102,7 +186,18 @@ class Rotor {
     /** The current setting of the rotor, default zero. */
     private int _setting;
 
-    /** Saves initial setting of Rotor within machine prior to next run. */
-    protected int _initial;
+    /** Size of my alphabet. */
+    private final int _size;
+
+    /** Largest alphabet for which compile() builds tables. */
+    static final int MAX_COMPILED_SIZE = 512;
+
+    /** When compiled, convertForward(P) at setting S is
+     *  _forwardTable[S * size() + P]; otherwise null. */
+    private int[] _forwardTable;
+
+    /** When compiled, convertBackward(E) at setting S is
+     *  _backwardTable[S * size() + E]; otherwise null. */
+    private int[] _backwardTable;
 
 }
@@ -0,0 +1,241 @@
+package enigma;
+
+import java.io.StringWriter;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+
+import static enigma.EnigmaException.*;
+
+/** Converts a sequence of message and settings lines by dividing it into
+ *  sections, each a settings line (one starting with '*') and the message
+ *  lines that follow it, and converting the sections concurrently.  The
+ *  settings lines are applied in order to one Machine, which is copied
+ *  for each section, so each section is converted by its own copy.  The
+ *  results are written in their original order.  A section is read into
+ *  memory whole only if it holds no more than SECTION_LIMIT characters;
+ *  a longer one is converted once the sections before it are written,
+ *  reading and writing it a piece at a time, as Main does without
+ *  --sections, so that its lines may be of any length.
+ *  @author Karl Meissner
+ */
+class Sections {
+
+    /** Default for the most characters of message a section may hold and
+     *  still be converted concurrently with others. */
+    static final int SECTION_LIMIT = 1 << 20;
+
+    /** A Sections that reads lines from INPUT and writes their
+     *  conversions to OUTPUT.  Each settings line is passed to SETTINGS,
+     *  which sets up MACHINE for the section it begins.  Sections are
+     *  converted on POOL, with at most PENDING of them in progress or
+     *  waiting to be written at any time. */
+    Sections(LineReader input, MessageWriter output, Machine machine,
+             Consumer<String> settings, ForkJoinPool pool, int pending) {
+        if (pending < 1) {
+            throw error("bad number of pending sections");
+        }
+        _input = input;
+        _output = output;
+        _machine = machine;
+        _settings = settings;
+        _pool = pool;
+        _pending = pending;
+        _limit = SECTION_LIMIT;
+        _segment = new char[LineReader.BUFFER_SIZE];
+    }
+
+    /** Convert sections holding more than CHARS characters of message
+     *  a piece at a time, rather than concurrently. */
+    void sectionLimit(int chars) {
+        _limit = chars;
+    }
+
+    /** Process all of my input, returning when it has all been written.
+     *  The first input line must be a settings line.  If a settings
+     *  line or the conversion of a section fails, the sections before it
+     *  are written and the exception is rethrown. */
+    void run() {
+        ArrayDeque<ForkJoinTask<Converted>> tasks = new ArrayDeque<>();
+        try {
+            while (_input.peek() >= 0) {
+                String settings = _input.readLine();
+                try {
+                    _settings.accept(settings);
+                } catch (RuntimeException excp) {
+                    finishAll(tasks);
+                    throw excp;
+                }
+                Machine section = _machine.copy();
+                StringBuilder text = new StringBuilder();
+                if (!readSection(text)) {
+                    finishAll(tasks);
+                    stream(section, text);
+                    continue;
+                }
+                if (tasks.size() >= _pending) {
+                    finish(tasks.remove());
+                }
+                String lines = text.toString();
+                tasks.add(_pool.submit(() -> convert(section, lines)));
+            }
+            finishAll(tasks);
+        } catch (RuntimeException | Error excp) {
+            for (ForkJoinTask<Converted> task : tasks) {
+                task.cancel(false);
+            }
+            throw excp;
+        }
+    }
+
+    /** Remove each of TASKS in order, writing its result as for
+     *  finish. */
+    private void finishAll(ArrayDeque<ForkJoinTask<Converted>> tasks) {
+        while (!tasks.isEmpty()) {
+            finish(tasks.remove());
+        }
+    }
+
+    /** Wait for TASK, which converts a section, and write its result.
+     *  If the conversion of one of its lines failed, the lines before it
+     *  are written, as Main writes them without --sections, and the
+     *  exception is rethrown. */
+    private void finish(ForkJoinTask<Converted> task) {
+        Converted result;
+        try {
+            result = task.get();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted while converting sections");
+        } catch (ExecutionException excp) {
+            Throwable cause = excp.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw error("could not convert section: %s", cause);
+        }
+        _output.writeLines(result.lines);
+        if (result.failure != null) {
+            throw result.failure;
+        }
+    }
+
+    /** Append the message lines that follow a settings line in my input
+     *  to TEXT, each ended by a newline, and return true.  If they hold
+     *  more than _limit characters, stop reading once TEXT holds more
+     *  than that (which may be in the middle of a line), and return
+     *  false. */
+    private boolean readSection(StringBuilder text) {
+        for (int c = _input.peek(); c >= 0 && c != '*'; c = _input.peek()) {
+            int n;
+            while ((n = _input.readSegment(_segment, 0, _segment.length))
+                   >= 0) {
+                text.append(_segment, 0, n);
+                if (text.length() > _limit) {
+                    return false;
+                }
+            }
+            text.append('\n');
+        }
+        return true;
+    }
+
+    /** Convert with MACHINE and write TEXT, the start of a section that
+     *  readSection found too long to hold, and then the rest of the
+     *  section, read from my input a piece at a time. */
+    private void stream(Machine machine, StringBuilder text) {
+        for (int start = 0; start < text.length(); ) {
+            int end = start;
+            while (end < text.length() && end - start < _segment.length
+                   && text.charAt(end) != '\n') {
+                end += 1;
+            }
+            text.getChars(start, end, _segment, 0);
+            _output.write(_segment,
+                          machine.convert(_segment, 0, end - start,
+                                          _segment));
+            if (end < text.length() && text.charAt(end) == '\n') {
+                _output.endLine();
+                end += 1;
+            }
+            start = end;
+        }
+        streamLine(machine);
+        for (int c = _input.peek(); c >= 0 && c != '*'; c = _input.peek()) {
+            streamLine(machine);
+        }
+    }
+
+    /** Convert the rest of the current line of my input with MACHINE and
+     *  write it, a piece at a time, ending the line of output. */
+    private void streamLine(Machine machine) {
+        int n;
+        while ((n = _input.readSegment(_segment, 0, _segment.length)) >= 0) {
+            _output.write(_segment,
+                          machine.convert(_segment, 0, n, _segment));
+        }
+        _output.endLine();
+    }
+
+    /** Return the conversions of the message LINES, each ended by a
+     *  newline, with MACHINE, divided into groups, one per line.  If a
+     *  line cannot be converted, the result holds the lines before it
+     *  and the exception that it raised. */
+    private static Converted convert(Machine machine, String lines) {
+        StringWriter result = new StringWriter();
+        MessageWriter out = new MessageWriter(result);
+        char[] text = lines.toCharArray();
+        char[] converted = new char[text.length];
+        try {
+            for (int start = 0, end; start < text.length; start = end + 1) {
+                for (end = start; text[end] != '\n'; end += 1) {
+                    continue;
+                }
+                out.write(converted,
+                          machine.convert(text, start, end, converted));
+                out.endLine();
+            }
+        } catch (RuntimeException excp) {
+            return new Converted(result.toString(), excp);
+        }
+        return new Converted(result.toString(), null);
+    }
+
+    /** The output of a section converted by convert. */
+    private static class Converted {
+        /** The converted LINES of a section, up to the one whose
+         *  conversion raised FAILURE, or all of them if FAILURE is
+         *  null. */
+        Converted(String lines, RuntimeException failure) {
+            this.lines = lines;
+            this.failure = failure;
+        }
+
+        /** The converted lines, each ended by a line separator. */
+        private final String lines;
+        /** The exception raised by the first line that failed, or
+         *  null. */
+        private final RuntimeException failure;
+    }
+
+    /** Source of input lines. */
+    private final LineReader _input;
+    /** Destination for converted lines. */
+    private final MessageWriter _output;
+    /** Machine set up by each settings line in turn. */
+    private final Machine _machine;
+    /** Receives settings lines. */
+    private final Consumer<String> _settings;
+    /** Pool on which sections are converted. */
+    private final ForkJoinPool _pool;
+    /** Most sections in progress or awaiting output at once. */
+    private final int _pending;
+    /** Most characters of message in a section converted concurrently. */
+    private int _limit;
+    /** Holds pieces of message lines as they are read. */
+    private final char[] _segment;
+}
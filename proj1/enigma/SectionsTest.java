@@ -0,0 +1,294 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.EnigmaException.*;
+
+/** The suite of all JUnit tests for the Sections class.
+ *  @author Karl Meissner
+ */
+public class SectionsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    private MachineTest builder = new MachineTest();
+    private Machine machine = builder.build();
+    private String[] rotors = {"Loren", "Paul", "Rachel", "Karl", "Anthony"};
+    private Permutation plug = new Permutation("(YF) (ZH)", new Alphabet());
+
+    /** A configuration for Main, with a reflector, fixed rotors and
+     *  moving rotors. */
+    private static final String CONFIG =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ\n 5 3\n"
+        + " I MQ (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+        + " III MV (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)\n"
+        + " IV MJ (AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)\n"
+        + " Beta N (ALBEVFCYODJWUGNMQTZSKPR) (HIX)\n"
+        + " B R (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)\n"
+        + "      (RX) (SZ) (TV)\n";
+
+    /** Return a LineReader reading TEXT. */
+    private LineReader reader(String text) {
+        return new LineReader(Channels.newChannel(
+            new ByteArrayInputStream(text.getBytes())));
+    }
+
+    /** Set up machine according to settings line LINE, which has the form
+     *  "* <positions>". */
+    private void settings(String line) {
+        String setting = line.substring(2);
+        if (setting.length() != rotors.length - 1) {
+            throw error("bad setting: %s", setting);
+        }
+        machine.insertRotors(rotors);
+        machine.setPlugboard(plug);
+        machine.setRotors(setting);
+    }
+
+    /** Run INPUT through Sections on a pool of THREADS threads, with at
+     *  most PENDING sections outstanding, writing the result to OUT. */
+    private void run(String input, StringWriter out, int threads,
+                     int pending) {
+        run(input, out, threads, pending, Sections.SECTION_LIMIT);
+    }
+
+    /** Run INPUT as for run(INPUT, OUT, THREADS, PENDING), converting
+     *  sections with more than LIMIT characters of message a piece at a
+     *  time. */
+    private void run(String input, StringWriter out, int threads,
+                     int pending, int limit) {
+        MessageWriter output = new MessageWriter(out);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            Sections sections =
+                new Sections(reader(input), output, machine, this::settings,
+                             pool, pending);
+            sections.sectionLimit(limit);
+            sections.run();
+        } finally {
+            pool.shutdownNow();
+            output.flush();
+        }
+    }
+
+    /** Return the result of converting each of LINES, which follow
+     *  settings line "* SETTING", one line at a time. */
+    private String expected(String setting, String... lines) {
+        settings("* " + setting);
+        StringWriter result = new StringWriter();
+        MessageWriter out = new MessageWriter(result);
+        for (String line : lines) {
+            char[] text = line.toCharArray();
+            out.write(text, machine.convert(text, 0, text.length, text));
+            out.endLine();
+        }
+        return result.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void sectionsTest() {
+        StringBuilder input = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        String[] settings = {"AXLE", "BVJQ", "QQQQ", "ZZAB"};
+        for (int k = 0; k < 40; k += 1) {
+            String setting = settings[k % settings.length];
+            String[] lines = new String[k % 3];
+            input.append("* ").append(setting).append("\n");
+            for (int i = 0; i < lines.length; i += 1) {
+                lines[i] =
+                    "HELLO WORLD THIS IS SECTION".substring(0, 5 + k % 20);
+                input.append(lines[i]).append("\n");
+            }
+            expected.append(expected(setting, lines));
+        }
+        for (int pending = 1; pending <= 8; pending *= 2) {
+            StringWriter out = new StringWriter();
+            run(input.toString(), out, 3, pending);
+            assertEquals(expected.toString(), out.toString());
+        }
+    }
+
+    @Test
+    public void sectionsErrorTest() {
+        String expected = expected("AXLE", "HELLO") + expected("BVJQ");
+        StringWriter out = new StringWriter();
+        try {
+            run("* AXLE\nHELLO\n* BVJQ\n* AX\nWORLD\n", out, 2, 4);
+            fail("error not reported");
+        } catch (EnigmaException excp) {
+            assertEquals("bad setting: AX", excp.getMessage());
+        }
+        assertEquals(expected, out.toString());
+    }
+
+    @Test
+    public void lineErrorTest() throws IOException {
+        String input =
+            "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)\n"
+            + "FROM HIS SHOULDER\n"
+            + "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)\n"
+            + "HELLO WORLD\n"
+            + "GOOD 1BYE\n"
+            + "NEVER CONVERTED\n";
+        Path config = Files.createTempFile("enigma", ".conf");
+        Path in = Files.createTempFile("enigma", ".in");
+        Path out = Files.createTempFile("enigma", ".out");
+        try {
+            Files.write(config, CONFIG.getBytes());
+            Files.write(in, input.getBytes());
+            String[] files = {config.toString(), in.toString(),
+                              out.toString()};
+            String expected = null;
+            for (String option : new String[] {null, "--sections",
+                                               "--pipeline"}) {
+                try {
+                    if (option == null) {
+                        Main.run(files);
+                    } else {
+                        Main.run(option, files[0], files[1], files[2]);
+                    }
+                    fail("bad character not reported");
+                } catch (EnigmaException excp) {
+                    assertEquals("Character not in Alphabet",
+                                 excp.getMessage());
+                }
+                String result = new String(Files.readAllBytes(out));
+                if (expected == null) {
+                    expected = result;
+                    assertEquals(2, expected.split("\n").length);
+                }
+                assertEquals(option, expected, result);
+            }
+        } finally {
+            Files.delete(config);
+            Files.delete(in);
+            Files.delete(out);
+        }
+    }
+
+    @Test
+    public void repeatedSettingsTest() throws IOException {
+        String[] plugs = {"(HQ) (EX) (IP) (TR) (BY)", "(AZ) (QW)"};
+        String bare = "* B Beta III IV I AXLE";
+        String[] inputs = {"", ""};
+        for (int k = 0; k < 4; k += 1) {
+            String own = plugs[k / 2];
+            inputs[0] += (k % 2 == 0 ? bare + " " + own : bare) + "\n";
+            inputs[1] += bare + "  " + own + "\n";
+            inputs[0] += "HELLO WORLD\n";
+            inputs[1] += "HELLO WORLD\n";
+        }
+        Path config = Files.createTempFile("enigma", ".conf");
+        Path in = Files.createTempFile("enigma", ".in");
+        Path out = Files.createTempFile("enigma", ".out");
+        try {
+            Files.write(config, CONFIG.getBytes());
+            String[] results = new String[inputs.length];
+            for (int k = 0; k < inputs.length; k += 1) {
+                Files.write(in, inputs[k].getBytes());
+                Main.run(config.toString(), in.toString(), out.toString());
+                results[k] = new String(Files.readAllBytes(out));
+            }
+            assertEquals(results[1], results[0]);
+            String[] lines = results[0].split("\n");
+            assertEquals(lines[0], lines[1]);
+            assertFalse(lines[1].equals(lines[3]));
+        } finally {
+            Files.delete(config);
+            Files.delete(in);
+            Files.delete(out);
+        }
+    }
+
+    @Test
+    public void longLineErrorTest() throws IOException {
+        StringBuilder input = new StringBuilder();
+        input.append("* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)\n");
+        for (int i = 0; i < 3 * LineReader.BUFFER_SIZE; i += 1) {
+            input.append((char) ('A' + i % 23));
+        }
+        input.append("1\nNEVER CONVERTED\n");
+        Path config = Files.createTempFile("enigma", ".conf");
+        Path in = Files.createTempFile("enigma", ".in");
+        Path out = Files.createTempFile("enigma", ".out");
+        try {
+            Files.write(config, CONFIG.getBytes());
+            Files.write(in, input.toString().getBytes());
+            String[] files = {config.toString(), in.toString(),
+                              out.toString()};
+            String expected = null;
+            for (String option : new String[] {null, "--pipeline"}) {
+                try {
+                    if (option == null) {
+                        Main.run(files);
+                    } else {
+                        Main.run(option, files[0], files[1], files[2]);
+                    }
+                    fail("bad character not reported");
+                } catch (EnigmaException excp) {
+                    assertEquals("Character not in Alphabet",
+                                 excp.getMessage());
+                }
+                String result = new String(Files.readAllBytes(out));
+                if (expected == null) {
+                    expected = result;
+                    assertTrue(expected.length() > LineReader.BUFFER_SIZE);
+                    assertEquals(expected.length() - 1,
+                                 expected.indexOf('\n'));
+                }
+                assertEquals(option, expected, result);
+            }
+        } finally {
+            Files.delete(config);
+            Files.delete(in);
+            Files.delete(out);
+        }
+    }
+
+    @Test
+    public void longSectionTest() {
+        StringBuilder input = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        StringBuilder longLine = new StringBuilder();
+        for (int i = 0; i < 3 * LineReader.BUFFER_SIZE; i += 1) {
+            longLine.append((char) ('A' + i % 23));
+        }
+        String[][] sections = {
+            {"HELLO"},
+            {"AB CD", longLine.toString(), "", "WORLD"},
+            {"THIS IS", "A SECTION"},
+            {longLine.toString()},
+        };
+        String[] settings = {"AXLE", "BVJQ", "QQQQ", "ZZAB"};
+        for (int k = 0; k < sections.length; k += 1) {
+            input.append("* ").append(settings[k]).append("\n");
+            for (String line : sections[k]) {
+                input.append(line).append("\n");
+            }
+            expected.append(expected(settings[k], sections[k]));
+        }
+        for (int limit : new int[] {0, 6, 100, Sections.SECTION_LIMIT}) {
+            StringWriter out = new StringWriter();
+            run(input.toString(), out, 3, 2, limit);
+            assertEquals(expected.toString(), out.toString());
+        }
+    }
+
+}
@@ -0,0 +1,340 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static enigma.EnigmaException.*;
+
+/** A long-running server that reads a configuration once and then
+ *  converts messages for any number of clients (see Client), so that a
+ *  series of small jobs pays for starting the JVM, reading the
+ *  configuration and warming up only once.  It listens on a loopback
+ *  TCP port or on a Unix-domain socket.  Each connection is a session
+ *  with a machine of its own, served on its own thread: a virtual thread
+ *  where the Java runtime has them, and otherwise a pooled platform
+ *  thread.
+ *
+ *  Requests and replies are frames: a type byte, a four-byte big-endian
+ *  length, and that many bytes of UTF-8 text.  A session answers each
+ *  request, in order, with one reply.  A SETTINGS request holds a
+ *  settings line, which sets the session's machine as Main would, and
+ *  is answered with OK.  A CONVERT request holds a line of message,
+ *  which the session's machine converts, ignoring whitespace; the reply
+ *  is a RESULT holding the converted letters.  A STATS request (whose
+ *  text is ignored) is answered with a RESULT holding report().  A
+ *  request that fails is answered with a FAIL holding the error message,
+ *  and the session continues, though after a failed SETTINGS request
+ *  it converts nothing until a later one succeeds.
+ *  @author Karl Meissner
+ */
+class Server {
+
+    /** Request type: a settings line. */
+    static final int SETTINGS = 'S';
+    /** Request type: a line of message to convert. */
+    static final int CONVERT = 'C';
+    /** Request type: a report on the server's activity. */
+    static final int STATS = 'T';
+    /** Reply type: a SETTINGS request succeeded. */
+    static final int OK = 'K';
+    /** Reply type: the result of a CONVERT or STATS request. */
+    static final int RESULT = 'R';
+    /** Reply type: a request failed; the text is the error message. */
+    static final int FAIL = 'F';
+
+    /** Longest text a frame may hold, in bytes. */
+    static final int MAX_FRAME = 1 << 24;
+
+    /** Size of the buffers on each side of a connection. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** A server listening at ADDRESS (see address) whose sessions each
+     *  use a machine with the configuration of BASE, a machine returned
+     *  by Main.readMachine. */
+    Server(Machine base, SocketAddress address) {
+        _base = base;
+        try {
+            if (address instanceof UnixDomainSocketAddress) {
+                _channel =
+                    ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            } else {
+                _channel = ServerSocketChannel.open();
+            }
+            _channel.bind(address);
+            _address = _channel.getLocalAddress();
+        } catch (IOException excp) {
+            throw error("could not listen on %s", address);
+        }
+        _sessions = sessionExecutor();
+    }
+
+    /** Return the address named by SPEC: a loopback TCP port if SPEC is
+     *  a number (0 meaning any free port), and otherwise the path of a
+     *  Unix-domain socket. */
+    static SocketAddress address(String spec) {
+        if (spec.matches("\\d+")) {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                         Integer.parseInt(spec));
+        }
+        return UnixDomainSocketAddress.of(spec);
+    }
+
+    /** Return the address I am listening on. */
+    SocketAddress address() {
+        return _address;
+    }
+
+    /** Accept connections and start a session for each, until close is
+     *  called. */
+    void serve() {
+        while (true) {
+            SocketChannel client;
+            try {
+                client = _channel.accept();
+            } catch (ClosedChannelException excp) {
+                return;
+            } catch (IOException excp) {
+                throw error("could not accept a connection on %s", _address);
+            }
+            _open.add(client);
+            try {
+                _sessions.execute(() -> session(client));
+            } catch (RejectedExecutionException excp) {
+                _open.remove(client);
+                try {
+                    client.close();
+                } catch (IOException closeExcp) {
+                    /* Ignore. */
+                }
+                return;
+            }
+        }
+    }
+
+    /** Stop accepting connections and end all sessions. */
+    void close() {
+        try {
+            _channel.close();
+            for (SocketChannel client : _open) {
+                client.close();
+            }
+            if (_address instanceof UnixDomainSocketAddress) {
+                Files.deleteIfExists(
+                    ((UnixDomainSocketAddress) _address).getPath());
+            }
+        } catch (IOException excp) {
+            throw error("could not close %s", _address);
+        } finally {
+            _sessions.shutdown();
+        }
+    }
+
+    /** Return a summary of my sessions, the requests they made, the
+     *  characters converted, and the latency of requests (from reading a
+     *  request to writing its reply) in microseconds. */
+    String report() {
+        double seconds = Math.max(1e-9, (System.nanoTime() - _start) / 1e9);
+        long requests = _latency.count();
+        return String.format("sessions: %d (%d open, on %s threads)%n"
+                             + "requests: %d (%d failed), %.1f per second%n"
+                             + "characters converted: %d, %.1f per second%n"
+                             + "latency (microseconds): %s%n",
+                             _sessionCount.get(), _open.size(),
+                             _sessions instanceof ThreadPoolExecutor
+                             ? "pooled" : "virtual",
+                             requests, _failures.get(), requests / seconds,
+                             _chars.get(), _chars.get() / seconds,
+                             _latency.summary());
+    }
+
+    /** Return an executor that runs each task on a new virtual thread,
+     *  if this Java runtime has them, and otherwise on a pooled platform
+     *  thread.  The runtime is asked by reflection, so that the server
+     *  also builds and runs under Java versions without them. */
+    static ExecutorService sessionExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException excp) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /** Serve the session on the connection CLIENT until the client
+     *  closes it, or the connection fails. */
+    private void session(SocketChannel client) {
+        _sessionCount.incrementAndGet();
+        Machine m = new Machine(_base.alphabet(), _base.numRotors(),
+                                _base.numPawls(), _base.availableRotors());
+        Consumer<String> configure = Main.configurer(m);
+        boolean configured = false;
+        char[] message = new char[0];
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(Channels.newInputStream(client),
+                                         BUFFER_SIZE));
+             DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(Channels.newOutputStream(client),
+                                          BUFFER_SIZE))) {
+            while (true) {
+                int type = in.read();
+                if (type < 0) {
+                    break;
+                }
+                String text = readText(in);
+                long start = System.nanoTime();
+                int reply = RESULT;
+                String result = "";
+                try {
+                    if (type == SETTINGS) {
+                        configure.accept(text);
+                        configured = true;
+                        reply = OK;
+                    } else if (type == CONVERT) {
+                        if (!configured) {
+                            throw error("Message without a configuration");
+                        }
+                        if (message.length < text.length()) {
+                            message = new char[text.length()];
+                        }
+                        text.getChars(0, text.length(), message, 0);
+                        int n = m.convert(message, 0, text.length(), message);
+                        _chars.addAndGet(n);
+                        result = new String(message, 0, n);
+                    } else if (type == STATS) {
+                        result = report();
+                    } else {
+                        throw error("unknown request type %d", type);
+                    }
+                } catch (EnigmaException excp) {
+                    if (type == SETTINGS) {
+                        configured = false;
+                    }
+                    _failures.incrementAndGet();
+                    reply = FAIL;
+                    result = excp.getMessage();
+                }
+                try {
+                    writeFrame(out, reply, result);
+                } catch (EnigmaException excp) {
+                    _failures.incrementAndGet();
+                    writeFrame(out, FAIL, excp.getMessage());
+                }
+                if (in.available() == 0) {
+                    out.flush();
+                }
+                _latency.record(System.nanoTime() - start);
+            }
+        } catch (IOException excp) {
+            /* The client is gone, or sent a bad frame: end the session. */
+        } finally {
+            _open.remove(client);
+            try {
+                client.close();
+            } catch (IOException excp) {
+                /* Ignore. */
+            }
+        }
+    }
+
+    /** Write a frame of type TYPE holding TEXT to OUT, without
+     *  flushing. */
+    static void writeFrame(DataOutputStream out, int type, String text)
+        throws IOException {
+        byte[] bytes = text.getBytes(UTF_8);
+        if (bytes.length > MAX_FRAME) {
+            throw error("message too long");
+        }
+        out.writeByte(type);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** Read the length and text of a frame from IN, whose type byte has
+     *  been read, and return the text. */
+    static String readText(DataInputStream in) throws IOException {
+        int len = in.readInt();
+        if (len < 0 || len > MAX_FRAME) {
+            throw new IOException("bad frame length");
+        }
+        byte[] bytes = new byte[len];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /** Serve conversions, as given by ARGS CONFIG ADDRESS.  CONFIG is a
+     *  configuration file, and ADDRESS a loopback TCP port or the path of
+     *  a Unix-domain socket (see address).  Runs until killed, then
+     *  prints report() to the standard error. */
+    public static void main(String... args) {
+        try {
+            if (args.length != 2) {
+                throw error("Usage: java enigma.Server CONFIG ADDRESS");
+            }
+            Server server = new Server(Main.readMachine(args[0]),
+                                       address(args[1]));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.close();
+                System.err.print(server.report());
+            }));
+            System.err.printf("Listening on %s%n", server.address());
+            server.serve();
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Machine whose configuration every session's machine shares. */
+    private final Machine _base;
+
+    /** Accepts connections. */
+    private final ServerSocketChannel _channel;
+
+    /** Address of _channel. */
+    private final SocketAddress _address;
+
+    /** Runs sessions. */
+    private final ExecutorService _sessions;
+
+    /** Connections of the sessions now running. */
+    private final Set<SocketChannel> _open = ConcurrentHashMap.newKeySet();
+
+    /** Times taken by requests. */
+    private final LatencyHistogram _latency = new LatencyHistogram();
+
+    /** Number of sessions started. */
+    private final AtomicLong _sessionCount = new AtomicLong();
+
+    /** Number of requests that failed. */
+    private final AtomicLong _failures = new AtomicLong();
+
+    /** Number of characters converted. */
+    private final AtomicLong _chars = new AtomicLong();
+
+    /** Time at which I was created, by System.nanoTime. */
+    private final long _start = System.nanoTime();
+
+}
@@ -0,0 +1,296 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Server, Client and
+ *  LatencyHistogram classes.
+ *  @author Karl Meissner
+ */
+public class ServerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Input in the format Main reads, for a machine built by
+     *  threeRotorMachine. */
+    private static final String INPUT =
+        "* Loren Karl Anthony XP (AQ) (EP)\n"
+        + "FROM HIS SHOULDER HIAWATHA\n"
+        + "\n"
+        + "TOOK THE CAMERA OF ROSEWOOD\n"
+        + "* Loren Rachel Karl MM\n"
+        + "MADE OF SLIDING FOLDING ROSEWOOD\n"
+        + "* Loren Anthony Rachel AB (BC)\n"
+        + "NEATLY PUT IT ALL TOGETHER\n";
+
+    /** Return a server for machines built by threeRotorMachine, listening
+     *  at ADDRESS and serving on a thread of its own. */
+    private Server start(String address) {
+        Server server = new Server(threeRotorMachine(),
+                                   Server.address(address));
+        Thread serving = new Thread(server::serve);
+        serving.setDaemon(true);
+        serving.start();
+        return server;
+    }
+
+    /** Return a LineReader reading TEXT. */
+    private LineReader reader(String text) {
+        return new LineReader(Channels.newChannel(
+            new ByteArrayInputStream(text.getBytes())));
+    }
+
+    /** Return what Main would write for INPUT, whose last line is not
+     *  empty, converting it with a machine built by threeRotorMachine. */
+    private String expected(String input) {
+        Machine m = threeRotorMachine();
+        Consumer<String> configure = Main.configurer(m);
+        StringWriter result = new StringWriter();
+        MessageWriter out = new MessageWriter(result);
+        for (String line : input.split("\n")) {
+            if (line.startsWith("*")) {
+                configure.accept(line);
+            } else {
+                char[] text = line.toCharArray();
+                out.write(text, m.convert(text, 0, text.length, text));
+                out.endLine();
+            }
+        }
+        out.flush();
+        return result.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void processTest() {
+        Server server = start("0");
+        try {
+            Client client = new Client(server.address());
+            StringWriter result = new StringWriter();
+            MessageWriter out = new MessageWriter(result);
+            client.process(reader(INPUT), out);
+            out.flush();
+            client.close();
+            assertEquals(expected(INPUT), result.toString());
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void pipelineTest() {
+        StringBuilder input = new StringBuilder("* Loren Karl Rachel QQ\n");
+        Random random = new Random(5);
+        for (int k = 0; k < 2000; ++k) {
+            for (int i = random.nextInt(60) + 1; i > 0; --i) {
+                input.append((char) ('A' + random.nextInt(26)));
+            }
+            input.append('\n');
+        }
+        Server server = start("0");
+        try {
+            Client client = new Client(server.address());
+            StringWriter result = new StringWriter();
+            MessageWriter out = new MessageWriter(result);
+            client.process(reader(input.toString()), out);
+            out.flush();
+            client.close();
+            assertEquals(expected(input.toString()), result.toString());
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void sessionsTest() {
+        Server server = start("0");
+        try {
+            Client one = new Client(server.address());
+            Client two = new Client(server.address());
+            Machine m1 = threeRotorMachine();
+            Machine m2 = threeRotorMachine();
+            one.settings("* Loren Karl Anthony XP (AQ) (EP)");
+            Main.applySettings(m1, "* Loren Karl Anthony XP (AQ) (EP)");
+            two.settings("* Loren Rachel Karl MM");
+            Main.applySettings(m2, "* Loren Rachel Karl MM");
+            for (String text : INPUT.split("\n")) {
+                if (text.startsWith("*")) {
+                    continue;
+                }
+                assertEquals(m1.convert(text), one.convert(text));
+                assertEquals(m2.convert(text), two.convert(text));
+            }
+            one.close();
+            two.close();
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void failureTest() {
+        Server server = start("0");
+        try {
+            Client client = new Client(server.address());
+            try {
+                client.convert("HELLO");
+                fail("converted without a configuration");
+            } catch (EnigmaException excp) {
+                assertEquals("Message without a configuration",
+                             excp.getMessage());
+            }
+            try {
+                client.settings("* Loren Karl Nobody XP");
+                fail("accepted a bad rotor");
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+            client.settings("* Loren Karl Anthony XP");
+            Machine m = threeRotorMachine();
+            Main.applySettings(m, "* Loren Karl Anthony XP");
+            assertEquals(m.convert("HELLO"), client.convert("HELLO"));
+            String stats = client.stats();
+            assertTrue(stats.contains("requests: 4 (2 failed)"));
+            assertTrue(stats.contains("characters converted: 5"));
+            client.close();
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void longReplyTest() {
+        char[] chars = new char[26];
+        StringBuilder reflect = new StringBuilder();
+        chars[0] = 'A';
+        for (int k = 1; k < chars.length; ++k) {
+            chars[k] = (char) ('\u4e00' + k);
+        }
+        for (int k = 0; k < chars.length; k += 2) {
+            reflect.append('(').append(chars[k]).append(chars[k + 1])
+                .append(')');
+        }
+        String letters = new String(chars);
+        Alphabet alpha = new Alphabet(letters);
+        List<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("R", new Permutation(reflect.toString(),
+                                                      alpha)));
+        rotors.add(new MovingRotor("M", new Permutation("(" + letters + ")",
+                                                        alpha), ""));
+        Server server = new Server(new Machine(alpha, 2, 1, rotors),
+                                   Server.address("0"));
+        Thread serving = new Thread(server::serve);
+        serving.setDaemon(true);
+        serving.start();
+        try {
+            Client client = new Client(server.address());
+            client.settings("* R M A");
+            char[] text = new char[Server.MAX_FRAME / 2];
+            Arrays.fill(text, 'A');
+            try {
+                client.convert(new String(text));
+                fail("sent a reply longer than a frame");
+            } catch (EnigmaException excp) {
+                assertEquals("message too long", excp.getMessage());
+            }
+            assertEquals(1, client.convert("A").length());
+            client.close();
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void badSettingsTest() {
+        Server server = start("0");
+        try {
+            Client client = new Client(server.address());
+            client.settings("* Loren Karl Anthony XP (AQ) (EP)");
+            try {
+                client.settings("* Loren Rachel Karl MM (ZZ)");
+                fail("accepted a bad plugboard");
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+            try {
+                client.convert("HELLO");
+                fail("converted after failed settings");
+            } catch (EnigmaException excp) {
+                assertEquals("Message without a configuration",
+                             excp.getMessage());
+            }
+            client.settings("* Loren Karl Anthony XP");
+            Machine m = threeRotorMachine();
+            Main.applySettings(m, "* Loren Karl Anthony XP (AQ) (EP)");
+            assertEquals(m.convert("HELLO"), client.convert("HELLO"));
+            client.close();
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void unixSocketTest() throws IOException {
+        Path dir = Files.createTempDirectory("server");
+        Path socket = dir.resolve("enigma.sock");
+        Server server = start(socket.toString());
+        try {
+            Client client = new Client(Server.address(socket.toString()));
+            client.settings("* Loren Karl Anthony XP (AQ) (EP)");
+            Machine m = threeRotorMachine();
+            Main.applySettings(m, "* Loren Karl Anthony XP (AQ) (EP)");
+            assertEquals(m.convert("HIAWATHA"), client.convert("HIAWATHA"));
+            client.close();
+        } finally {
+            server.close();
+        }
+        assertFalse(Files.exists(socket));
+        Files.delete(dir);
+    }
+
+    @Test
+    public void histogramTest() {
+        LatencyHistogram latency = new LatencyHistogram();
+        assertEquals(0, latency.percentile(50));
+        for (int t = 1000; t > 0; --t) {
+            latency.record(t);
+        }
+        assertEquals(1000, latency.count());
+        assertEquals(1000, latency.max());
+        long p50 = latency.percentile(50);
+        assertTrue(p50 >= 500 && p50 <= 500 * 9 / 8);
+        long p99 = latency.percentile(99);
+        assertTrue(p99 >= 990 && p99 <= 1000);
+        assertEquals(1000, latency.percentile(100));
+        Random random = new Random(3);
+        for (int k = 0; k < 1000; ++k) {
+            long t = random.nextLong() >>> (1 + random.nextInt(63));
+            int bucket = LatencyHistogram.bucket(t);
+            assertTrue(LatencyHistogram.upperBound(bucket) >= t);
+            assertTrue(bucket == 0
+                       || LatencyHistogram.upperBound(bucket - 1) < t);
+        }
+    }
+
+}
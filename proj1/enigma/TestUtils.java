@@ -1,6 +1,8 @@
 package enigma;
 
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 
 /** Utility definitions for use in unit tests.
  *  @author P. N. Hilfinger
@@ -18,6 +20,33 @@ class TestUtils {
         return testId + " (" + String.format(msgFormat, args) + ")";
     }
 
+    /** The wiring of the rotor Karl in threeRotorMachine(). */
+    static final String KARL_CYCLES = "(AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)";
+
+    /** Return a machine with three slots, two pawls, the reflector Loren,
+     *  and a choice of three moving rotors: Rachel, Karl and Anthony. */
+    static Machine threeRotorMachine() {
+        return threeRotorMachine(KARL_CYCLES);
+    }
+
+    /** Return a machine as for threeRotorMachine(), in which the rotor
+     *  Karl has wiring KARLCYCLES. */
+    static Machine threeRotorMachine(String karlCycles) {
+        Alphabet standard = new Alphabet();
+        Collection<Rotor> c = new HashSet<Rotor>();
+        c.add(new Reflector("Loren", new Permutation(
+            "(AE)(BN)(CK)(DQ)(FU)(GY)(HW)(IJ)(LO)(MP)(RX)(SZ)(TV)",
+            standard)));
+        c.add(new MovingRotor("Rachel", new Permutation(
+            "(ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)", standard), "V"));
+        c.add(new MovingRotor("Karl", new Permutation(karlCycles, standard),
+                              "J"));
+        c.add(new MovingRotor("Anthony", new Permutation(
+            "(AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)", standard),
+            "Q"));
+        return new Machine(standard, 3, 2, c);
+    }
+
     /** The naval rotors in the A (0) setting. */
     static final HashMap<String, String> NAVALA = new HashMap<>();
     static {
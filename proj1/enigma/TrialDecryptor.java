@@ -0,0 +1,261 @@
+package enigma;
+
+import java.util.function.LongConsumer;
+
+import static enigma.EnigmaException.*;
+
+/** Decrypts one short ciphertext under many candidate rotor positions,
+ *  LANES candidates at a time, and reports which of them satisfy a
+ *  Predicate.  The candidates share the rotors and plugboard of a
+ *  Machine and differ only in the positions of its rotors.  The state of
+ *  each candidate is a few small integers, and which candidates are
+ *  still in the running is a single long with one bit per candidate, so
+ *  a candidate costs nothing once it has been ruled out.
+ *
+ *  Candidate K puts the rotors in slots 1 and above at the digits of K
+ *  written in base size(), most significant digit first, so that there
+ *  are size() to the power numRotors()-1 candidates.  A TrialDecryptor
+ *  keeps the state of the candidates it is evaluating, so each thread
+ *  needs its own.
+ *  @author Karl Meissner
+ */
+class TrialDecryptor {
+
+    /** A test applied to the decryptions under LANES candidates, one
+     *  character at a time. */
+    interface Predicate {
+        /** Return the subset of ALIVE, a set of candidates represented by
+         *  the bits of a long, that remain possible now that PLAIN[L] is
+         *  known to be the character at position T of the decryption
+         *  under candidate L, for each L in ALIVE.  Earlier characters
+         *  will already have been tested. */
+        long test(int t, int[] plain, long alive);
+
+        /** Return the first position that test examines.  Characters
+         *  before it are not decrypted, though the rotors still step. */
+        default int start() {
+            return 0;
+        }
+
+        /** Return the position after the last one that test examines.
+         *  Decryption stops there. */
+        default int end() {
+            return Integer.MAX_VALUE;
+        }
+    }
+
+    /** Number of candidates decrypted together. */
+    static final int LANES = Long.SIZE;
+
+    /** A TrialDecryptor for CIPHERTEXT, decrypted with the rotors and
+     *  plugboard of MACHINE (whose own positions are ignored and not
+     *  changed).  Whitespace in CIPHERTEXT that the machine skips (see
+     *  Alphabet.skips) is ignored. */
+    TrialDecryptor(Machine machine, String ciphertext) {
+        Alphabet alpha = machine.alphabet();
+        _alphabet = alpha;
+        MachineSettings settings = machine.settings();
+        _size = alpha.size();
+        _numRotors = machine.numRotors();
+        _firstMoving = _numRotors - machine.numPawls();
+        _forward = new int[_numRotors][];
+        _backward = new int[_numRotors][];
+        _notches = new boolean[_numRotors][];
+        for (int i = 0; i < _numRotors; ++i) {
+            _forward[i] = new int[_size * _size];
+            _backward[i] = new int[_size * _size];
+            _notches[i] = new boolean[_size];
+            settings.rotor(i).tabulate(_forward[i], _backward[i],
+                                       _notches[i], 0);
+        }
+        _plug = new int[_size];
+        _plugInverse = new int[_size];
+        for (int c = 0; c < _size; ++c) {
+            _plug[c] = settings.plugboard().permute(c);
+            _plugInverse[c] = settings.plugboard().invert(c);
+        }
+        _cipher = alpha.indices(ciphertext);
+        long candidates = 1;
+        for (int i = 1; i < _numRotors; ++i) {
+            if (candidates > Long.MAX_VALUE / _size) {
+                throw error("too many candidate positions");
+            }
+            candidates *= _size;
+        }
+        _candidates = candidates;
+        _pos = new int[LANES * _numRotors];
+        _plain = new int[LANES];
+    }
+
+    /** Return the number of characters in my ciphertext. */
+    int length() {
+        return _cipher.length;
+    }
+
+    /** Return the number of candidates. */
+    long candidates() {
+        return _candidates;
+    }
+
+    /** Return the rotor positions of candidate K, as for
+     *  Machine.positions. */
+    int[] positions(long k) {
+        if (k < 0 || k >= _candidates) {
+            throw error("no such candidate: %d", k);
+        }
+        int[] result = new int[_numRotors - 1];
+        for (int i = result.length - 1; i >= 0; --i) {
+            result[i] = (int) (k % _size);
+            k /= _size;
+        }
+        return result;
+    }
+
+    /** Return the set of candidates FIRST + L, for 0 <= L < COUNT <= LANES,
+     *  that satisfy TEST, as a long in which bit L stands for candidate
+     *  FIRST + L.  Decryption stops as soon as no candidate remains. */
+    long evaluate(long first, int count, Predicate test) {
+        if (count < 0 || count > LANES || first < 0
+            || first > _candidates - count) {
+            throw error("bad range of candidates");
+        }
+        if (count == 0) {
+            return 0;
+        }
+        int[] digits = positions(first);
+        for (int l = 0; l < count; ++l) {
+            System.arraycopy(digits, 0, _pos, l * _numRotors + 1,
+                             digits.length);
+            for (int i = digits.length - 1; i >= 0; --i) {
+                digits[i] += 1;
+                if (digits[i] < _size) {
+                    break;
+                }
+                digits[i] = 0;
+            }
+        }
+        long alive = count == LANES ? -1L : (1L << count) - 1;
+        int start = Math.min(test.start(), _cipher.length);
+        for (int l = 0; l < count; ++l) {
+            for (int t = 0; t < start; ++t) {
+                step(l * _numRotors);
+            }
+        }
+        int end = Math.min(test.end(), _cipher.length);
+        for (int t = start; t < end && alive != 0; ++t) {
+            int c = _cipher[t];
+            for (long rest = alive; rest != 0; rest &= rest - 1) {
+                int l = Long.numberOfTrailingZeros(rest);
+                _plain[l] = decrypt(l * _numRotors, c);
+            }
+            alive = test.test(t, _plain, alive);
+        }
+        return alive;
+    }
+
+    /** Apply evaluate to each of the candidates FROM .. TO-1 in turn, and
+     *  pass each one that satisfies TEST to FOUND, in increasing order. */
+    void search(long from, long to, Predicate test, LongConsumer found) {
+        for (long first = from; first < to; first += LANES) {
+            int count = (int) Math.min(LANES, to - first);
+            for (long hits = evaluate(first, count, test); hits != 0;
+                 hits &= hits - 1) {
+                found.accept(first + Long.numberOfTrailingZeros(hits));
+            }
+        }
+    }
+
+    /** Return a Predicate that holds for decryptions in which the
+     *  characters starting at position OFFSET are CRIB, whose characters
+     *  are in my machine's alphabet.  CRIB must be non-empty and lie
+     *  wholly within my ciphertext.  Only the positions of CRIB are
+     *  decrypted. */
+    Predicate crib(String crib, int offset) {
+        if (offset < 0 || offset + crib.length() > length()
+            || crib.isEmpty()) {
+            throw error("crib does not fit in ciphertext");
+        }
+        int[] want = new int[crib.length()];
+        for (int i = 0; i < want.length; ++i) {
+            want[i] = _alphabet.toInt(crib.charAt(i));
+        }
+        return new Predicate() {
+            @Override
+            public long test(int t, int[] plain, long alive) {
+                int w = want[t - offset];
+                long result = alive;
+                for (long rest = alive; rest != 0; rest &= rest - 1) {
+                    int l = Long.numberOfTrailingZeros(rest);
+                    if (plain[l] != w) {
+                        result &= ~(1L << l);
+                    }
+                }
+                return result;
+            }
+
+            @Override
+            public int start() {
+                return offset;
+            }
+
+            @Override
+            public int end() {
+                return offset + want.length;
+            }
+        };
+    }
+
+    /** Step the rotors whose positions start at _pos[B], as
+     *  Machine.convert(int) does, and return the conversion of C at their
+     *  new positions. */
+    private int decrypt(int b, int c) {
+        step(b);
+        int last = _numRotors - 1;
+        c = _plug[c];
+        for (int i = last; i >= 0; --i) {
+            c = _forward[i][_pos[b + i] * _size + c];
+        }
+        for (int i = 1; i <= last; ++i) {
+            c = _backward[i][_pos[b + i] * _size + c];
+        }
+        return _plugInverse[c];
+    }
+
+    /** Step the rotors whose positions start at _pos[B], as
+     *  Machine.convert(int) does before converting a character. */
+    private void step(int b) {
+        Machine.stepPositions(_pos, b, _notches, _firstMoving, _size);
+    }
+
+    /** The alphabet of the machine. */
+    private final Alphabet _alphabet;
+    /** Size of the alphabet. */
+    private final int _size;
+    /** Number of slots. */
+    private final int _numRotors;
+    /** Leftmost slot holding a moving rotor. */
+    private final int _firstMoving;
+    /** Number of candidates. */
+    private final long _candidates;
+    /** _forward[I][S * size + P] is the forward conversion of P by the
+     *  rotor in slot I at setting S. */
+    private final int[][] _forward;
+    /** _backward[I][S * size + E] is the backward conversion of E by the
+     *  rotor in slot I at setting S. */
+    private final int[][] _backward;
+    /** _notches[I][S] is true iff the rotor in slot I has a notch at
+     *  setting S. */
+    private final boolean[][] _notches;
+    /** The plugboard, tabulated. */
+    private final int[] _plug;
+    /** The inverse of the plugboard, tabulated. */
+    private final int[] _plugInverse;
+    /** The ciphertext, as alphabet indices. */
+    private final int[] _cipher;
+    /** _pos[L * numRotors + I] is the current setting of the rotor in
+     *  slot I under the Lth candidate being evaluated. */
+    private final int[] _pos;
+    /** _plain[L] is the latest character decrypted under the Lth
+     *  candidate being evaluated. */
+    private final int[] _plain;
+}
@@ -0,0 +1,109 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** The suite of all JUnit tests for the TrialDecryptor class.
+ *  @author Karl Meissner
+ */
+public class TrialDecryptorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    private MachineTest builder = new MachineTest();
+    private Machine machine = builder.build();
+    private String[] rotors = {"Loren", "Paul", "Rachel", "Karl", "Anthony"};
+    private Permutation plug = new Permutation("(YF) (ZH)", new Alphabet());
+    private Alphabet alpha = new Alphabet();
+
+    /** Return the index of the candidate with positions POSNS. */
+    private long candidate(int[] posns) {
+        long k = 0;
+        for (int p : posns) {
+            k = k * alpha.size() + p;
+        }
+        return k;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void evaluateTest() {
+        machine.insertRotors(rotors);
+        machine.setPlugboard(plug);
+        String cipher = "QWERTYUIOPASDFGHJKLZXCVBNM";
+        TrialDecryptor trials = new TrialDecryptor(machine, cipher);
+        assertEquals(26L * 26 * 26 * 26, trials.candidates());
+        long first = 400000;
+        List<String> plains = new ArrayList<>();
+        for (int l = 0; l < TrialDecryptor.LANES; ++l) {
+            machine.restorePositions(trials.positions(first + l));
+            plains.add(machine.convert(cipher));
+        }
+        int[] seen = new int[TrialDecryptor.LANES];
+        long all = trials.evaluate(first, TrialDecryptor.LANES,
+            (t, plain, alive) -> {
+                for (int l = 0; l < TrialDecryptor.LANES; ++l) {
+                    assertEquals(plains.get(l).charAt(t),
+                                 alpha.toChar(plain[l]));
+                    seen[l] += 1;
+                }
+                return alive;
+            });
+        assertEquals(-1L, all);
+        for (int n : seen) {
+            assertEquals(cipher.length(), n);
+        }
+        assertEquals(0x1fL, trials.evaluate(first, 5, (t, p, a) -> a));
+    }
+
+    @Test
+    public void cribSearchTest() {
+        machine.insertRotors(rotors);
+        machine.setPlugboard(plug);
+        machine.setRotors("QEVJ");
+        long key = candidate(machine.positions());
+        String cipher = machine.convert("WEATHERREPORTNOTHINGTOREPORT");
+        TrialDecryptor trials = new TrialDecryptor(machine, cipher);
+        TrialDecryptor.Predicate crib = trials.crib("REPORTNOTHING", 7);
+        List<Long> found = new ArrayList<>();
+        trials.search(key - 5000, key + 5000, crib, found::add);
+        assertTrue(found.contains(key));
+        for (long k : found) {
+            machine.restorePositions(trials.positions(k));
+            assertEquals("REPORTNOTHING",
+                         machine.convert(cipher).substring(7, 20));
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void negativeOffsetTest() {
+        machine.insertRotors(rotors);
+        new TrialDecryptor(machine, "QWERTYUIOP").crib("REPORT", -1);
+    }
+
+    @Test
+    public void cribPastEndTest() {
+        machine.insertRotors(rotors);
+        TrialDecryptor trials = new TrialDecryptor(machine, "QWERTY UIOP");
+        for (int offset : new int[] {5, 10, 30}) {
+            try {
+                trials.crib("REPORT", offset);
+                fail("accepted a crib overhanging the end at " + offset);
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        }
+        trials.crib("REPORT", 4);
+    }
+
+}
@@ -13,7 +13,23 @@ public class UnitTest {
         System.exit(textui.runClasses(AlphabetTest.class,
                 PermutationTest.class,
                 MovingRotorTest.class,
-                MachineTest.class));
+                MachineTest.class,
+                CompositionTreeTest.class,
+                CodebookTest.class,
+                LineReaderTest.class,
+                PipelineTest.class,
+                SectionsTest.class,
+                TrialDecryptorTest.class,
+                BombeTest.class,
+                HillClimberTest.class,
+                NgramFitnessTest.class,
+                PartitionedSearchTest.class,
+                WiringSolverTest.class,
+                ByteCipherTest.class,
+                EnigmaStreamTest.class,
+                MachinePoolTest.class,
+                ServerTest.class,
+                ConfigSnapshotTest.class));
     }
 
 }
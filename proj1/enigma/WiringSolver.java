@@ -0,0 +1,472 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static enigma.EnigmaException.*;
+
+/** A recovery of the wiring of one rotor from messages whose plaintext,
+ *  ciphertext and settings are known, when the wiring of every other
+ *  rotor is known.
+ *
+ *  Write W for the unknown wiring, s for its rotor's setting when a
+ *  character is converted, and i and j for the contacts at which the
+ *  signals for the plaintext and ciphertext characters reach it from the
+ *  right (through the plugboard and the rotors to its right, all known).
+ *  Everything to its left, through the reflector and back, is a known
+ *  involution L, and the machine's symmetry gives
+ *  <pre>
+ *      W(j + s) = L(W(i + s) - s) + s,
+ *  </pre>
+ *  a constraint between two values of W through a known involution.  So
+ *  each choice of one value of W determines the values of all the
+ *  contacts linked to it by constraints, and those in turn determine
+ *  others, until either every value is known or some value is found to
+ *  have two images, or two contacts one image, and the choice fails.
+ *  The search guesses a value for the contact with the most constraints,
+ *  propagates it, and guesses again only if propagation stops short,
+ *  backtracking on failure.  The guesses for the first contact are tried
+ *  in parallel.
+ *  @author Karl Meissner
+ */
+class WiringSolver {
+
+    /** A solver for the wiring of the rotor named ROTOR among the rotors
+     *  of MACHINE (whose own wiring for ROTOR is ignored), which must not
+     *  be a reflector.  The rotor's notches must be right, since they
+     *  affect how the machine steps.  MACHINE is set up and stepped as
+     *  the messages are added. */
+    WiringSolver(Machine machine, String rotor) {
+        _machine = machine;
+        _alphabet = machine.alphabet();
+        _size = _alphabet.size();
+        for (Rotor r : machine.availableRotors()) {
+            _rotors.put(r.name(), r);
+        }
+        Rotor unknown = _rotors.get(rotor);
+        if (unknown == null) {
+            throw error("no rotor named %s", rotor);
+        }
+        if (unknown.reflecting()) {
+            throw error("cannot solve for the wiring of a reflector");
+        }
+        _rotor = rotor;
+        _plugs = "";
+    }
+
+    /** Set my machine according to the settings line LINE, in the form
+     *  Main reads.  As for Main, a line with no plugboard keeps the
+     *  plugboard of the line before it. */
+    void settings(String line) {
+        String[] tokens = line.trim().split("\\s+");
+        int numRotors = _machine.numRotors();
+        if (tokens.length < numRotors + 2 || !tokens[0].equals("*")) {
+            throw error("bad settings line: %s", line);
+        }
+        String[] order = Arrays.copyOfRange(tokens, 1, numRotors + 1);
+        StringBuilder plugs = new StringBuilder();
+        for (int i = numRotors + 2; i < tokens.length; ++i) {
+            plugs.append(tokens[i]);
+        }
+        if (plugs.length() > 0) {
+            _plugs = plugs.toString();
+        }
+        if (tokens[numRotors + 1].length() != numRotors - 1) {
+            throw error("Wheel settings wrong");
+        }
+        _machine.insertRotors(order);
+        _machine.setRotors(tokens[numRotors + 1]);
+        _plugboard = new Permutation(_plugs, _alphabet);
+        _slot = -1;
+        _probes = new Rotor[numRotors];
+        for (int k = 0; k < numRotors; ++k) {
+            _probes[k] = _rotors.get(order[k]).copy();
+            if (order[k].equals(_rotor)) {
+                _slot = k;
+            }
+        }
+        _involutions = _tables.computeIfAbsent(
+            String.join(" ", Arrays.copyOf(order, Math.max(_slot, 0))),
+            k -> new HashMap<>());
+    }
+
+    /** Add the constraints given by the message PLAIN, which my machine
+     *  converts, from its current settings, to CIPHER.  Whitespace in
+     *  both is ignored.  Does nothing (but advance the machine) if the
+     *  current settings do not use the rotor being solved for. */
+    void add(String plain, String cipher) {
+        if (_plugboard == null) {
+            throw error("message without a configuration");
+        }
+        plain = plain.replaceAll("\\s+", "");
+        cipher = cipher.replaceAll("\\s+", "");
+        if (plain.length() != cipher.length()) {
+            throw error("plaintext and ciphertext differ in length");
+        }
+        if (_slot < 0) {
+            _machine.advanceBy(plain.length());
+            return;
+        }
+        for (int t = 0; t < plain.length(); ++t) {
+            _machine.advanceBy(1);
+            int[] posns = _machine.positions();
+            for (int k = 1; k < _probes.length; ++k) {
+                _probes[k].set(posns[k - 1]);
+            }
+            int s = posns[_slot - 1];
+            int i = wrap(entry(_alphabet.toInt(plain.charAt(t))) + s);
+            int j = wrap(entry(_alphabet.toInt(cipher.charAt(t))) + s);
+            addConstraint(i, j, involution(posns, s));
+        }
+    }
+
+    /** Return the number of constraints added so far. */
+    int constraints() {
+        return _count;
+    }
+
+    /** Return up to LIMIT wirings of the rotor that satisfy every
+     *  constraint added, searching on POOL.  If fewer than LIMIT are
+     *  returned, they are all the wirings there are. */
+    List<Permutation> solve(ForkJoinPool pool, int limit) {
+        int[] order = contactsByDegree();
+        List<int[]> found = new ArrayList<>();
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int v = 0; v < _size; ++v) {
+            int value = v;
+            tasks.add(pool.submit(() -> {
+                Search search = new Search(order);
+                if (search.assign(order[0], value)) {
+                    search.run(found, limit);
+                }
+            }));
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+        List<Permutation> result = new ArrayList<>();
+        for (int[] wiring : found.subList(0, Math.min(limit, found.size()))) {
+            result.add(new Permutation(Permutation.cycles(wiring, _alphabet),
+                                       _alphabet));
+        }
+        return result;
+    }
+
+    /** Return CONFIG, the text of a configuration file, with the cycles
+     *  describing the rotor named ROTOR replaced by those of WIRING. */
+    static String rewrite(String config, String rotor, Permutation wiring) {
+        Pattern description =
+            Pattern.compile("(^|\\s)(" + Pattern.quote(rotor)
+                            + "\\s+[MNR]\\S*)((\\s*\\([^()\\s]*\\))*)");
+        Matcher m = description.matcher(config);
+        if (!m.find()) {
+            throw error("no rotor named %s in configuration", rotor);
+        }
+        String cycles = wiring.cycles();
+        return config.substring(0, m.end(2))
+            + (cycles.isEmpty() ? "" : " " + cycles)
+            + config.substring(m.end(3));
+    }
+
+    /** Print the configuration file CONFIG with the wiring of the rotor
+     *  named ROTOR recovered from the messages in the file INPUT (in the
+     *  form Main reads) and their conversions in the file OUTPUT (as Main
+     *  writes them), as given by ARGS CONFIG ROTOR INPUT OUTPUT.  In
+     *  CONFIG, ROTOR needs only its name, type and notches.  Fails if
+     *  the messages do not determine the wiring. */
+    public static void main(String... args) {
+        try {
+            if (args.length != 4) {
+                throw error("Usage: java enigma.WiringSolver CONFIG ROTOR"
+                            + " INPUT OUTPUT");
+            }
+            WiringSolver solver =
+                new WiringSolver(Main.readMachine(args[0]), args[1]);
+            solver.read(Paths.get(args[2]), Paths.get(args[3]));
+            ForkJoinPool pool = new ForkJoinPool();
+            List<Permutation> wirings;
+            try {
+                wirings = solver.solve(pool, 2);
+            } finally {
+                pool.shutdown();
+            }
+            if (wirings.isEmpty()) {
+                throw error("no wiring of %s fits the messages", args[1]);
+            } else if (wirings.size() > 1) {
+                throw error("the messages do not determine the wiring of %s",
+                            args[1]);
+            }
+            String config = new String(Files.readAllBytes(Paths.get(args[0])),
+                                       StandardCharsets.UTF_8);
+            System.out.print(rewrite(config, args[1], wirings.get(0)));
+            return;
+        } catch (IOException excp) {
+            System.err.printf("Error: could not read %s%n", args[0]);
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Add the constraints given by the messages in the file INPUT, in the
+     *  form Main reads, and their conversions in the file OUTPUT, one line
+     *  for each message line of INPUT. */
+    void read(Path input, Path output) {
+        try (BufferedReader in = Files.newBufferedReader(input);
+             BufferedReader out = Files.newBufferedReader(output)) {
+            for (String line = in.readLine(); line != null;
+                 line = in.readLine()) {
+                if (line.startsWith("*")) {
+                    settings(line);
+                    continue;
+                }
+                String converted = out.readLine();
+                if (converted == null) {
+                    throw error("%s has fewer lines than %s", output, input);
+                }
+                add(line, converted);
+            }
+        } catch (IOException excp) {
+            throw error("could not read %s or %s", input, output);
+        }
+    }
+
+    /** Return the contact at which the signal for character C reaches the
+     *  rotor being solved for, at the current settings of _probes. */
+    private int entry(int c) {
+        c = _plugboard.permute(c);
+        for (int k = _probes.length - 1; k > _slot; --k) {
+            c = _probes[k].convertForward(c);
+        }
+        return c;
+    }
+
+    /** Return the index in _involution of the map U -> L(U - S) + S,
+     *  where L is the conversion by the rotors to the left of the unknown
+     *  rotor, at positions POSNS (as from Machine.positions) and the
+     *  reflector, and S is the unknown rotor's setting. */
+    private int involution(int[] posns, int s) {
+        long key = s;
+        for (int k = 1; k < _slot; ++k) {
+            key = key * _size + posns[k - 1];
+        }
+        Integer known = _involutions.get(key);
+        if (known != null) {
+            return known;
+        }
+        int[] map = new int[_size];
+        for (int u = 0; u < _size; ++u) {
+            int c = wrap(u - s);
+            for (int k = _slot - 1; k > 0; --k) {
+                c = _probes[k].convertForward(c);
+            }
+            c = _probes[0].convertForward(c);
+            for (int k = 1; k < _slot; ++k) {
+                c = _probes[k].convertBackward(c);
+            }
+            map[u] = wrap(c + s);
+        }
+        _involution.add(map);
+        _involutions.put(key, _involution.size() - 1);
+        return _involution.size() - 1;
+    }
+
+    /** Record that W(J) = _involution[MAP](W(I)). */
+    private void addConstraint(int i, int j, int map) {
+        if (_count == _from.length) {
+            _from = Arrays.copyOf(_from, 2 * _count);
+            _to = Arrays.copyOf(_to, 2 * _count);
+            _map = Arrays.copyOf(_map, 2 * _count);
+        }
+        _from[_count] = i;
+        _to[_count] = j;
+        _map[_count] = map;
+        _count += 1;
+    }
+
+    /** Return the contacts in decreasing order of their number of
+     *  constraints, having filled _first and _edges so that the
+     *  constraints on contact C are _edges[_first[C] .. _first[C+1]-1]. */
+    private int[] contactsByDegree() {
+        int[] degree = new int[_size];
+        for (int e = 0; e < _count; ++e) {
+            degree[_from[e]] += 1;
+            degree[_to[e]] += 1;
+        }
+        _first = new int[_size + 1];
+        for (int c = 0; c < _size; ++c) {
+            _first[c + 1] = _first[c] + degree[c];
+        }
+        _edges = new int[_first[_size]];
+        int[] filled = Arrays.copyOf(_first, _size);
+        for (int e = 0; e < _count; ++e) {
+            _edges[filled[_from[e]]++] = e;
+            _edges[filled[_to[e]]++] = e;
+        }
+        Integer[] order = new Integer[_size];
+        for (int c = 0; c < _size; ++c) {
+            order[c] = c;
+        }
+        Arrays.sort(order, (a, b) -> degree[b] - degree[a]);
+        int[] result = new int[_size];
+        for (int c = 0; c < _size; ++c) {
+            result[c] = order[c];
+        }
+        return result;
+    }
+
+    /** Return P modulo the alphabet size. */
+    private int wrap(int p) {
+        return Math.floorMod(p, _size);
+    }
+
+    /** The backtracking search below one guess, by one thread. */
+    private class Search {
+
+        /** A search that guesses contacts in the order ORDER. */
+        Search(int[] order) {
+            _order = order;
+            _wiring = new int[_size];
+            _inverse = new int[_size];
+            Arrays.fill(_wiring, -1);
+            Arrays.fill(_inverse, -1);
+            _trail = new int[_size];
+        }
+
+        /** Set W(C) = V and propagate its consequences, returning false
+         *  (with the assignments undone) if they are contradictory. */
+        boolean assign(int c, int v) {
+            int mark = _assigned;
+            if (!set(c, v)) {
+                undo(mark);
+                return false;
+            }
+            for (int n = mark; n < _assigned; ++n) {
+                int d = _trail[n], w = _wiring[d];
+                for (int k = _first[d]; k < _first[d + 1]; ++k) {
+                    int e = _edges[k];
+                    int other = _from[e] == d ? _to[e] : _from[e];
+                    if (!set(other, _involution.get(_map[e])[w])) {
+                        undo(mark);
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /** Add each complete wiring consistent with my assignments to
+         *  FOUND, until FOUND has LIMIT entries. */
+        void run(List<int[]> found, int limit) {
+            int c = -1;
+            for (int k : _order) {
+                if (_wiring[k] < 0) {
+                    c = k;
+                    break;
+                }
+            }
+            synchronized (found) {
+                if (found.size() >= limit) {
+                    return;
+                }
+                if (c < 0) {
+                    found.add(_wiring.clone());
+                    return;
+                }
+            }
+            for (int v = 0; v < _size; ++v) {
+                if (_inverse[v] < 0) {
+                    int mark = _assigned;
+                    if (assign(c, v)) {
+                        run(found, limit);
+                        undo(mark);
+                    }
+                }
+            }
+        }
+
+        /** Set W(C) = V, returning false if C or V already has another
+         *  partner. */
+        private boolean set(int c, int v) {
+            if (_wiring[c] == v) {
+                return true;
+            }
+            if (_wiring[c] >= 0 || _inverse[v] >= 0) {
+                return false;
+            }
+            _wiring[c] = v;
+            _inverse[v] = c;
+            _trail[_assigned++] = c;
+            return true;
+        }
+
+        /** Undo the assignments made since _assigned was MARK. */
+        private void undo(int mark) {
+            while (_assigned > mark) {
+                int c = _trail[--_assigned];
+                _inverse[_wiring[c]] = -1;
+                _wiring[c] = -1;
+            }
+        }
+
+        /** The order in which contacts are guessed. */
+        private final int[] _order;
+        /** W, with -1 for contacts not yet assigned. */
+        private final int[] _wiring;
+        /** The inverse of W, with -1 for values not yet used. */
+        private final int[] _inverse;
+        /** The contacts assigned, in order of assignment. */
+        private final int[] _trail;
+        /** The number of contacts assigned. */
+        private int _assigned;
+    }
+
+    /** The machine that steps as the messages are read. */
+    private final Machine _machine;
+    /** Its alphabet. */
+    private final Alphabet _alphabet;
+    /** The size of its alphabet. */
+    private final int _size;
+    /** Its rotors, by name. */
+    private final Map<String, Rotor> _rotors = new HashMap<>();
+    /** The name of the rotor being solved for. */
+    private final String _rotor;
+    /** Copies of the rotors in the machine's slots, used to follow
+     *  signals to and from the unknown rotor. */
+    private Rotor[] _probes;
+    /** The slot of the unknown rotor in the current settings, or -1. */
+    private int _slot;
+    /** The current plugboard, and its cycles. */
+    private Permutation _plugboard;
+    /** The cycles of _plugboard. */
+    private String _plugs;
+
+    /** The maps of _involution, by the rotors to the left of the unknown
+     *  rotor, and then by its setting and theirs. */
+    private final Map<String, Map<Long, Integer>> _tables = new HashMap<>();
+    /** The entry of _tables for the current rotors. */
+    private Map<Long, Integer> _involutions;
+    /** The distinct maps L(U - S) + S of the constraints. */
+    private final List<int[]> _involution = new ArrayList<>();
+
+    /** Constraint E says W(_to[E]) = _involution[_map[E]](W(_from[E])). */
+    private int[] _from = new int[16], _to = new int[16], _map = new int[16];
+    /** The number of constraints. */
+    private int _count;
+    /** The constraints on contact C are _edges[_first[C] ..
+     *  _first[C + 1] - 1]. */
+    private int[] _first, _edges;
+}
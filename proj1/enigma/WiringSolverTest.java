@@ -0,0 +1,118 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the WiringSolver class.
+ *  @author Karl Meissner
+ */
+public class WiringSolverTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Settings lines of the test messages. */
+    private static final String[] SETTINGS = {
+        "* Loren Rachel Karl AX (AQ) (EP)",
+        "* Loren Karl Anthony QZ",
+        "* Loren Anthony Rachel MM (BC)",
+        "* Loren Karl Rachel IV (HT) (LM)",
+    };
+
+    /** Plaintext of the test messages. */
+    private static final String PLAIN =
+        "WEATHERREPORTNOTHINGTOREPORTFROMTHEFRONTTHEENEMYISQUIETTODAY";
+
+    /** Return a solver for Karl given the first N test messages. */
+    private WiringSolver solver(int n) {
+        Machine real = threeRotorMachine(KARL_CYCLES);
+        WiringSolver solver = new WiringSolver(threeRotorMachine(""), "Karl");
+        for (int k = 0; k < n; ++k) {
+            String[] tokens = SETTINGS[k].split(" ");
+            real.insertRotors(new String[] {tokens[1], tokens[2], tokens[3]});
+            real.setRotors(tokens[4]);
+            StringBuilder plugs = new StringBuilder();
+            for (int i = 5; i < tokens.length; ++i) {
+                plugs.append(tokens[i]);
+            }
+            if (plugs.length() > 0) {
+                real.setPlugboard(new Permutation(plugs.toString(),
+                                                  new Alphabet()));
+            }
+            solver.settings(SETTINGS[k]);
+            solver.add(PLAIN, real.convert(PLAIN));
+        }
+        return solver;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void solveTest() {
+        WiringSolver solver = solver(SETTINGS.length);
+        assertEquals(3 * PLAIN.length(), solver.constraints());
+        ForkJoinPool pool = new ForkJoinPool(3);
+        List<Permutation> found = solver.solve(pool, 2);
+        pool.shutdown();
+        assertEquals(1, found.size());
+        Permutation karl = new Permutation(KARL_CYCLES, new Alphabet());
+        assertEquals(karl.cycles(), found.get(0).cycles());
+    }
+
+    @Test
+    public void underdeterminedTest() {
+        Machine real = threeRotorMachine(KARL_CYCLES);
+        real.insertRotors(new String[] {"Loren", "Rachel", "Karl"});
+        real.setRotors("AA");
+        WiringSolver solver = new WiringSolver(threeRotorMachine(""), "Karl");
+        solver.settings("* Loren Rachel Karl AA");
+        solver.add("WEATHER", real.convert("WEATHER"));
+        ForkJoinPool pool = new ForkJoinPool(2);
+        List<Permutation> found = solver.solve(pool, 3);
+        pool.shutdown();
+        assertEquals(3, found.size());
+    }
+
+    @Test
+    public void inconsistentTest() {
+        WiringSolver solver = new WiringSolver(threeRotorMachine(""), "Karl");
+        solver.settings("* Loren Rachel Karl AA");
+        solver.add("AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA",
+                   "BBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBB");
+        ForkJoinPool pool = new ForkJoinPool(2);
+        assertTrue(solver.solve(pool, 2).isEmpty());
+        pool.shutdown();
+    }
+
+    @Test
+    public void rewriteTest() {
+        String config = "ABCDEFGHIJKLMNOPQRSTUVWXYZ\n 3 2\n"
+            + " II ME (FIXVYOMW)\n I MQ\n III MV (ABDHPEJT)\n"
+            + "          (CFLVMZOYQIRWUKXSG)\n";
+        Permutation wiring = new Permutation("(AB) (CD)", new Alphabet());
+        assertEquals("ABCDEFGHIJKLMNOPQRSTUVWXYZ\n 3 2\n"
+                     + " II ME (FIXVYOMW)\n I MQ (AB) (CD)\n"
+                     + " III MV (ABDHPEJT)\n"
+                     + "          (CFLVMZOYQIRWUKXSG)\n",
+                     WiringSolver.rewrite(config, "I", wiring));
+        assertEquals("ABCDEFGHIJKLMNOPQRSTUVWXYZ\n 3 2\n"
+                     + " II ME (FIXVYOMW)\n I MQ\n III MV (AB) (CD)\n",
+                     WiringSolver.rewrite(config, "III", wiring));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void reflectorTest() {
+        new WiringSolver(threeRotorMachine(KARL_CYCLES), "Loren");
+    }
+
+}